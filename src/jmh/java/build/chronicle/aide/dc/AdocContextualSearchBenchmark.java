@@ -0,0 +1,40 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AdocContextualSearch#searchFile(List)} on a generated source file,
+ * for a pattern with many matches and one with none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocContextualSearchBenchmark {
+
+    @Param({"1000"})
+    public int lines;
+
+    @Param({"buffer", "noSuchIdentifier"})
+    public String pattern;
+
+    private List<String> content;
+    private AdocContextualSearch search;
+
+    @Setup
+    public void setUp() {
+        content = SyntheticTree.javaLines(2, lines);
+        search = new AdocContextualSearch(pattern, 2);
+    }
+
+    @Benchmark
+    public List<int[]> searchFile() {
+        return search.searchFile(content);
+    }
+}
@@ -0,0 +1,66 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full {@link AdocDocumentEngine#execute()} run, end to end, over synthetic trees
+ * of configurable size. Each invocation writes a fresh context file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AdocDocumentEngineBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path root;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = SyntheticTree.create(Files.createTempDirectory("aide-jmh"), files);
+        output = Files.createTempDirectory("aide-jmh-out");
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticTree.delete(root);
+        SyntheticTree.delete(output);
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteContext() throws IOException {
+        Files.deleteIfExists(output.resolve("context.asciidoc"));
+    }
+
+    @Benchmark
+    public long execute() throws IOException {
+        AdocFileFilter filter = new AdocFileFilter(root.resolve("aide.ignore"), 128 << 10, false);
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(filter, new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(output.resolve("context.asciidoc").toString());
+        engine.setIncrementalAsciidoc(output.resolve("increment.asciidoc").toString());
+        engine.setThreads(threads);
+        engine.addInputPath(root.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return stats.getTotalTokens();
+    }
+}
@@ -0,0 +1,68 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AdocDocumentStats#updateStats(String)} as the engine calls it, once per line,
+ * against counting the same content as one section, per line and in batching mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocDocumentStatsBenchmark {
+
+    @Param({"200"})
+    public int lines;
+
+    private List<String> content;
+    private String section;
+
+    @Setup
+    public void setUp() {
+        content = SyntheticTree.javaLines(1, lines).stream().map(line -> line + "\n").toList();
+        section = String.join("", content);
+    }
+
+    @Benchmark
+    public long updateStatsPerLine() {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        for (String line : content) {
+            stats.updateStats(line);
+        }
+        return stats.getTotalTokens();
+    }
+
+    @Benchmark
+    public long updateSectionStatsPerLine() {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.updateSectionStats(section);
+        return stats.getTotalTokens();
+    }
+
+    @Benchmark
+    public long updateSectionStatsBatched() {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.setSectionBatching(true);
+        stats.updateSectionStats(section);
+        return stats.getTotalTokens();
+    }
+
+    @Benchmark
+    public long updateStatsInBatchedSection() {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.setSectionBatching(true);
+        stats.beginSection();
+        for (String line : content) {
+            stats.updateStats(line);
+        }
+        stats.endSection();
+        return stats.getTotalTokens();
+    }
+}
@@ -0,0 +1,70 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the {@link java.io.PrintWriter} based {@link AdocDocumentWriter} with
+ * the {@link AdocChannelDocumentWriter}, writing one line at a time as the engine does.
+ * Token counting is disabled so only the writing is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocDocumentWriterBenchmark {
+
+    @Param({"print", "nio"})
+    public String writer;
+
+    @Param({"10000"})
+    public int lines;
+
+    private List<String> content;
+    private Path output;
+    private AdocDocumentWriter documentWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = SyntheticTree.javaLines(4, lines).stream().map(line -> line + "\n").toList();
+        output = Files.createTempFile("aide-jmh", ".asciidoc");
+        AdocDocumentStats stats = new NoTokenStats();
+        documentWriter = "nio".equals(writer) ? new AdocChannelDocumentWriter(stats) : new AdocDocumentWriter(stats);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Writes the whole content as one file section; the score is files written per second.
+     */
+    @Benchmark
+    public void writeFile() throws IOException {
+        documentWriter.open(output.toString(), false);
+        for (String line : content) {
+            documentWriter.write(line);
+        }
+        documentWriter.endSection();
+        documentWriter.close();
+    }
+
+    static final class NoTokenStats extends AdocDocumentStats {
+        @Override
+        public void updateStats(String text) {
+        }
+
+        @Override
+        public void updateSectionStats(String content) {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AdocFileFilter#include(Path)} over every file of a synthetic tree,
+ * including the file system calls it makes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocFileFilterBenchmark {
+
+    @Param({"1000"})
+    public int files;
+
+    private Path root;
+    private AdocFileFilter filter;
+    private List<Path> paths;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = SyntheticTree.create(Files.createTempDirectory("aide-jmh"), files);
+        filter = new AdocFileFilter(root.resolve("aide.ignore"), 128 << 10, false);
+        paths = SyntheticTree.listFiles(root);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticTree.delete(root);
+    }
+
+    @Benchmark
+    public int include() {
+        int included = 0;
+        for (Path path : paths) {
+            if (filter.include(path)) {
+                included++;
+            }
+        }
+        return included;
+    }
+}
@@ -0,0 +1,43 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AdocFileProcessor#maybeRemoveCopyright(List)} on files with and without a
+ * copyright header.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocFileProcessorBenchmark {
+
+    @Param({"200"})
+    public int lines;
+
+    private final AdocFileProcessor processor = new AdocFileProcessor();
+    private List<String> withCopyright;
+    private List<String> withoutCopyright;
+
+    @Setup
+    public void setUp() {
+        withCopyright = SyntheticTree.javaLines(3, lines);
+        withoutCopyright = processor.maybeRemoveCopyright(withCopyright);
+    }
+
+    @Benchmark
+    public List<String> removeCopyright() {
+        return processor.maybeRemoveCopyright(withCopyright);
+    }
+
+    @Benchmark
+    public List<String> noCopyright() {
+        return processor.maybeRemoveCopyright(withoutCopyright);
+    }
+}
@@ -0,0 +1,52 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link AdocTokenEstimator} estimates against an exact count of the same section
+ * with the encoder, as used by {@link AdocDocumentStats}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdocTokenEstimatorBenchmark {
+
+    @Param({"200"})
+    public int lines;
+
+    private String section;
+    private AdocTokenEstimator estimator;
+
+    @Setup
+    public void setUp() {
+        section = String.join("\n", SyntheticTree.javaLines(1, lines)) + "\n";
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.updateSectionStats(section);
+        estimator = new AdocTokenEstimator();
+        estimator.observe(".java", section, stats.getTotalTokens());
+    }
+
+    @Benchmark
+    public long exactCount() {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.setSectionBatching(true);
+        stats.updateSectionStats(section);
+        return stats.getTotalTokens();
+    }
+
+    @Benchmark
+    public long estimateFromText() {
+        return estimator.estimate(".java", section);
+    }
+
+    @Benchmark
+    public long estimateFromSize() {
+        return estimator.estimate(".java", section.length());
+    }
+}
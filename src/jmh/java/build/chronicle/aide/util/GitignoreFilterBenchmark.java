@@ -0,0 +1,51 @@
+package build.chronicle.aide.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GitignoreFilter#isExcluded(Path, boolean)} over every file of a synthetic tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitignoreFilterBenchmark {
+
+    @Param({"1000"})
+    public int files;
+
+    private Path root;
+    private GitignoreFilter filter;
+    private List<Path> paths;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = SyntheticTree.create(Files.createTempDirectory("aide-jmh"), files);
+        filter = new GitignoreFilter(root.resolve("aide.ignore"));
+        paths = SyntheticTree.listFiles(root);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticTree.delete(root);
+    }
+
+    @Benchmark
+    public int isExcluded() {
+        int ignored = 0;
+        for (Path path : paths) {
+            if (filter.isExcluded(path, false) == GitignoreFilter.MatchResult.IGNORED) {
+                ignored++;
+            }
+        }
+        return ignored;
+    }
+}
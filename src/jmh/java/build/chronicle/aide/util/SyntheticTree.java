@@ -0,0 +1,136 @@
+package build.chronicle.aide.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates a deterministic, repository-like directory tree for benchmarks.
+ *
+ * <p>The tree holds Java sources with copyright headers spread over modules and packages,
+ * plus the noise a real checkout has: an aide.ignore file, ignored {@code target/} output,
+ * a hidden {@code .git} directory, log files and binary files.</p>
+ */
+public final class SyntheticTree {
+
+    private static final String[] WORDS = {
+            "count", "index", "buffer", "value", "result", "engine", "filter", "writer",
+            "stats", "token", "line", "path", "search", "context", "summary", "queue"
+    };
+
+    private SyntheticTree() {
+    }
+
+    /**
+     * Creates a tree under {@code root} with roughly {@code files} eligible source files
+     * and a further 25% of files that the filter should reject.
+     *
+     * @param root  the directory to populate
+     * @param files the number of eligible source files
+     * @return the root directory
+     */
+    public static Path create(Path root, int files) throws IOException {
+        Random random = new Random(files);
+        Files.createDirectories(root);
+        Files.write(root.resolve("aide.ignore"), List.of("target/", "*.log", "generated/"));
+        int perPackage = 25;
+        for (int i = 0; i < files; i++) {
+            int pkg = i / perPackage;
+            Path dir = root.resolve("module" + pkg % 8).resolve("src/main/java/pkg" + pkg);
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("Class" + i + ".java"), javaSource(random, "pkg" + pkg, "Class" + i, 40 + random.nextInt(160)));
+            if (i % 8 == 0) {
+                Path target = root.resolve("module" + pkg % 8).resolve("target/classes/pkg" + pkg);
+                Files.createDirectories(target);
+                Files.write(target.resolve("Class" + i + ".class"), binary(random, 512));
+                Files.writeString(target.resolve("Class" + i + ".txt"), "generated " + i + "\n");
+            }
+            if (i % 16 == 0) {
+                Path git = root.resolve(".git/objects/" + (i % 256));
+                Files.createDirectories(git);
+                Files.write(git.resolve("object" + i), binary(random, 256));
+                Files.writeString(dir.resolve("build" + i + ".log"), "log line " + i + "\n");
+                Files.write(dir.resolve("data" + i + ".dat"), binary(random, 128));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Generates a Java source file with a copyright header.
+     */
+    public static String javaSource(Random random, String pkg, String name, int lines) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/*\n * Copyright (c) 2025 Example Ltd.\n *\n * Licensed under the Apache License, Version 2.0\n */\n");
+        sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("public class ").append(name).append(" {\n");
+        for (int i = 0; i < lines; i++) {
+            if (i % 10 == 0) {
+                sb.append('\n');
+            }
+            String a = WORDS[random.nextInt(WORDS.length)];
+            String b = WORDS[random.nextInt(WORDS.length)];
+            sb.append("    private long ").append(a).append(i).append(" = ").append(b).append("(").append(random.nextInt(1000)).append(");\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @return the lines of a generated Java source file
+     */
+    public static List<String> javaLines(long seed, int lines) {
+        return List.of(javaSource(new Random(seed), "pkg", "Example", lines).split("\n"));
+    }
+
+    /**
+     * Lists every regular file in the tree in walk order.
+     */
+    public static List<Path> listFiles(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Deletes the tree.
+     */
+    public static void delete(Path root) {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] binary(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        bytes[0] = 0;
+        return bytes;
+    }
+}
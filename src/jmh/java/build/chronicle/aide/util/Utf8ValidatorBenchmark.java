@@ -0,0 +1,48 @@
+package build.chronicle.aide.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Utf8Validator} on a source file against decoding it with a
+ * {@link CharsetDecoder}, which also detects malformed UTF-8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8ValidatorBenchmark {
+
+    @Param({"2000"})
+    public int lines;
+
+    private byte[] content;
+    private CharsetDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        content = String.join("\n", SyntheticTree.javaLines(1, lines)).getBytes(StandardCharsets.UTF_8);
+        decoder = StandardCharsets.UTF_8.newDecoder();
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return Utf8Validator.isText(content, 0, content.length);
+    }
+
+    @Benchmark
+    public boolean decode() {
+        try {
+            return decoder.decode(ByteBuffer.wrap(content)).length() > 0;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package build.chronicle.aide.dc;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses which files to write so the context file fits a token budget.
+ *
+ * <p>The engine first turns every eligible file into a {@link Candidate} with an estimated token
+ * cost and a priority, without rendering it: the cost is estimated by an {@link AdocTokenEstimator}
+ * from the file size, or from the matched lines when searching. {@link #select(List)} then takes candidates in order of priority
+ * while they fit the budget; the rest are reported as dropped.</p>
+ *
+ * <p>A candidate's priority is its weight multiplied by {@code 1 + density + recency + depth}, each
+ * factor being between 0 and 1 and scaled by a coefficient set with {@link #setPriority(String)}:</p>
+ * <ul>
+ *   <li><b>density</b> - search hits per thousand tokens, {@code d / (1 + d)}; 0 when not searching</li>
+ *   <li><b>recency</b> - {@code 1 / (1 + days since modified / 30)}</li>
+ *   <li><b>depth</b> - {@code 1 / number of path elements}, favouring top-level files</li>
+ * </ul>
+ *
+ * <p>Weights come from an optional file in the style of {@code aide.ignore} (see {@link #loadWeights(Path)}).
+ * A weight of 0 always drops a file.</p>
+ */
+public class AdocBudgetPlanner {
+
+    /**
+     * Tokens for the heading, delimiters and line count around each file.
+     */
+    static final int FILE_OVERHEAD_TOKENS = 16;
+    /**
+     * Tokens for the {@code .lines} marker and delimiters around each search match.
+     */
+    static final int MATCH_OVERHEAD_TOKENS = 10;
+
+    private final long maxTokens;
+    private AdocTokenEstimator tokenEstimator = new AdocTokenEstimator();
+    private final List<Weight> weights = new ArrayList<>();
+    private double densityCoefficient = 1.0;
+    private double recencyCoefficient = 1.0;
+    private double depthCoefficient = 1.0;
+
+    /**
+     * Creates a planner for the given budget.
+     *
+     * @param maxTokens the most tokens the file sections may use
+     */
+    public AdocBudgetPlanner(long maxTokens) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens must be positive, was " + maxTokens);
+        }
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * @return the most tokens the file sections may use
+     */
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Sets the estimator used for the cost of each file, e.g. one calibrated by earlier runs.
+     *
+     * @param tokenEstimator the estimator
+     */
+    public void setTokenEstimator(AdocTokenEstimator tokenEstimator) {
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * @return the estimator used for the cost of each file
+     */
+    public AdocTokenEstimator getTokenEstimator() {
+        return tokenEstimator;
+    }
+
+    /**
+     * Sets the coefficients of the priority factors, e.g. {@code density:2,recency:1,depth:0}.
+     * Factors not mentioned keep their coefficient, which defaults to 1.
+     *
+     * @param spec comma-separated {@code factor:coefficient} pairs
+     * @throws IllegalArgumentException if a factor is unknown or a coefficient is not a number
+     */
+    public void setPriority(String spec) {
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            String[] pair = part.split(":", 2);
+            double coefficient = pair.length == 2 ? Double.parseDouble(pair[1].trim()) : 1.0;
+            switch (pair[0].trim()) {
+                case "density":
+                    densityCoefficient = coefficient;
+                    break;
+                case "recency":
+                    recencyCoefficient = coefficient;
+                    break;
+                case "depth":
+                    depthCoefficient = coefficient;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown priority factor: " + pair[0]);
+            }
+        }
+    }
+
+    /**
+     * Loads weights from a file of {@code <glob> <weight>} lines, such as {@code src/main/** 2} or
+     * {@code *.adoc 0.5}. Globs are matched against paths relative to the file's directory, or against
+     * the file name if the glob has no {@code /}. Blank lines and lines starting with {@code #} are ignored.
+     * The last matching line wins; files matching no line have a weight of 1.
+     *
+     * @param file the weights file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public void loadWeights(Path file) throws IOException {
+        Path baseDir = file.toAbsolutePath().normalize().getParent();
+        for (String line : Files.readAllLines(file)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int space = trimmed.lastIndexOf(' ');
+            if (space < 0) {
+                throw new IllegalArgumentException("Expected '<glob> <weight>' in " + file + ": " + line);
+            }
+            String glob = trimmed.substring(0, space).trim();
+            double weight = Double.parseDouble(trimmed.substring(space + 1));
+            weights.add(new Weight(baseDir, glob.contains("/"),
+                    FileSystems.getDefault().getPathMatcher("glob:" + glob), weight));
+        }
+    }
+
+    /**
+     * Creates a candidate for a file, computing its priority.
+     *
+     * @param path   the absolute path of the file
+     * @param attrs  the attributes of the file, or null if unknown
+     * @param tokens the estimated cost of the file's section
+     * @param hits   the number of search hits in the file, 0 when not searching
+     * @return the candidate
+     */
+    Candidate candidate(Path path, BasicFileAttributes attrs, long tokens, int hits) {
+        double weight = weightOf(path);
+        double density = 0;
+        if (hits > 0) {
+            double perThousand = hits * 1000.0 / Math.max(1, tokens);
+            density = perThousand / (1 + perThousand);
+        }
+        double recency = 0;
+        if (attrs != null) {
+            long ageMillis = Math.max(0, System.currentTimeMillis() - attrs.lastModifiedTime().toMillis());
+            recency = 1 / (1 + ageMillis / (double) TimeUnit.DAYS.toMillis(30));
+        }
+        Path relative = Paths.get(".").toAbsolutePath().normalize().relativize(path);
+        double depth = 1.0 / Math.max(1, relative.getNameCount());
+        double priority = weight * (1 + densityCoefficient * density + recencyCoefficient * recency + depthCoefficient * depth);
+        return new Candidate(path, tokens, priority);
+    }
+
+    /**
+     * Selects the highest priority candidates that fit the budget together.
+     *
+     * @param candidates the candidates in walk order
+     * @return the selection
+     */
+    Selection select(List<Candidate> candidates) {
+        List<Candidate> ranked = new ArrayList<>(candidates);
+        // stable, so equal priorities keep walk order
+        ranked.sort(Comparator.comparingDouble(Candidate::priority).reversed());
+        Set<Path> selected = new HashSet<>();
+        List<Candidate> dropped = new ArrayList<>();
+        long used = 0;
+        for (Candidate candidate : ranked) {
+            if (candidate.priority() > 0 && used + candidate.tokens() <= maxTokens) {
+                selected.add(candidate.path());
+                used += candidate.tokens();
+            } else {
+                dropped.add(candidate);
+            }
+        }
+        dropped.sort(Comparator.comparing(Candidate::path));
+        return new Selection(selected, dropped, used);
+    }
+
+    private double weightOf(Path path) {
+        double weight = 1.0;
+        for (Weight w : weights) {
+            if (w.matches(path)) {
+                weight = w.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * A file that may be written, with its estimated cost and priority.
+     */
+    static final class Candidate {
+        private final Path path;
+        private final long tokens;
+        private final double priority;
+
+        Candidate(Path path, long tokens, double priority) {
+            this.path = path;
+            this.tokens = tokens;
+            this.priority = priority;
+        }
+
+        Path path() {
+            return path;
+        }
+
+        long tokens() {
+            return tokens;
+        }
+
+        double priority() {
+            return priority;
+        }
+    }
+
+    /**
+     * The outcome of {@link #select(List)}.
+     */
+    static final class Selection {
+        private final Set<Path> selected;
+        private final List<Candidate> dropped;
+        private final long estimatedTokens;
+
+        Selection(Set<Path> selected, List<Candidate> dropped, long estimatedTokens) {
+            this.selected = selected;
+            this.dropped = dropped;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        Set<Path> selected() {
+            return selected;
+        }
+
+        /**
+         * @return the candidates that did not fit, sorted by path
+         */
+        List<Candidate> dropped() {
+            return dropped;
+        }
+
+        long estimatedTokens() {
+            return estimatedTokens;
+        }
+    }
+
+    private static final class Weight {
+        private final Path baseDir;
+        private final boolean matchPath;
+        private final PathMatcher matcher;
+        private final double weight;
+
+        Weight(Path baseDir, boolean matchPath, PathMatcher matcher, double weight) {
+            this.baseDir = baseDir;
+            this.matchPath = matchPath;
+            this.matcher = matcher;
+            this.weight = weight;
+        }
+
+        boolean matches(Path path) {
+            if (!matchPath) {
+                return matcher.matches(path.getFileName());
+            }
+            return path.startsWith(baseDir) && matcher.matches(baseDir.relativize(path));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package build.chronicle.aide.dc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A high-throughput {@link AdocDocumentWriter} that encodes text as UTF-8 straight into a
+ * large, reusable direct buffer and writes it to a {@link FileChannel}.
+ *
+ * <p>Unlike the {@link java.io.PrintWriter} based writer, the platform charset is never used and
+ * the buffer is only written out at a section boundary once it is at least half full, when it
+ * overflows, or on close. The many small per-line writes made by the engine therefore become a
+ * few large channel writes.</p>
+ *
+ * <p>As with {@link java.io.PrintWriter}, unencodable characters (e.g. lone surrogates) are replaced.
+ * I/O errors are thrown as {@link UncheckedIOException}.</p>
+ *
+ * <p>A section transferred from a {@link FileChannel} is copied with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, after the
+ * buffer is written out, so the bytes go from file to file without being decoded or encoded,
+ * and where the platform supports it, without being copied through the heap.</p>
+ */
+public class AdocChannelDocumentWriter extends AdocDocumentWriter {
+
+    /**
+     * The default buffer size of 1 MiB.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private FileChannel channel;
+
+    /**
+     * Constructs a writer with the default buffer size.
+     *
+     * @param stats the statistics instance to update
+     */
+    public AdocChannelDocumentWriter(AdocDocumentStats stats) {
+        this(stats, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a writer with the given buffer size.
+     *
+     * @param stats      the statistics instance to update
+     * @param bufferSize the size of the direct buffer in bytes
+     */
+    public AdocChannelDocumentWriter(AdocDocumentStats stats, int bufferSize) {
+        super(stats);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void open(String outputFile, boolean append) throws IOException {
+        if (channel != null) {
+            // close any existing channel first
+            close();
+        }
+        channel = append
+                ? FileChannel.open(Path.of(outputFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(Path.of(outputFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffer out if it is at least half full.
+     */
+    @Override
+    public void endSection() {
+        if (channel != null && buffer.position() >= buffer.capacity() / 2) {
+            drain();
+        }
+    }
+
+    @Override
+    protected void append(String text) {
+        if (channel == null) {
+            throw new IllegalStateException("No file is open for writing.");
+        }
+        CharBuffer in = CharBuffer.wrap(text);
+        encoder.reset();
+        while (encoder.encode(in, buffer, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    /**
+     * @return true, as sections are copied with {@link FileChannel#transferTo}.
+     */
+    @Override
+    public boolean canTransfer() {
+        return true;
+    }
+
+    /**
+     * Writes out the buffer, then copies the source channel to the output channel.
+     */
+    @Override
+    protected void transfer(FileChannel source, byte[] content) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("No file is open for writing.");
+        }
+        drain(channel);
+        long position = 0;
+        while (position < content.length) {
+            long copied = source.transferTo(position, content.length - position, channel);
+            if (copied <= 0) {
+                throw new IOException("File shorter than the " + content.length + " bytes read; it changed while being copied");
+            }
+            position += copied;
+        }
+    }
+
+    /**
+     * Writes out any buffered bytes and closes the channel.
+     */
+    @Override
+    public void close() {
+        if (channel != null) {
+            try (FileChannel toClose = channel) {
+                channel = null;
+                drain(toClose);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    private void drain() {
+        try {
+            drain(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain(FileChannel out) throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package build.chronicle.aide.dc;
 
-import java.io.IOException;
+import build.chronicle.aide.util.AhoCorasick;
+
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,9 +17,25 @@ import java.util.regex.Pattern;
  * content is returned as a match. Otherwise, the file is processed line‐by‐line, and any
  * lines that match the pattern are returned with a configurable number of context lines
  * before and after the match.</p>
+ *
+ * <p>Several patterns can be searched for at once; a line matches if any of them matches.
+ * Patterns without regular expression metacharacters are plain literals and are all found
+ * in a single pass with an {@link AhoCorasick} automaton; only the remaining patterns are
+ * compiled as regular expressions. All patterns are case-insensitive. The number of hits of
+ * each pattern can be collected with {@link #searchFile(List, int[])}; literals and regular
+ * expressions alike count the occurrences successive {@link Matcher#find()} calls would find,
+ * which do not overlap.</p>
  */
 public class AdocContextualSearch {
-    private final Pattern searchPattern;
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final List<String> patterns;
+    // Literal patterns and, in the same order, their indices in patterns.
+    private final AhoCorasick literals;
+    private final int[] literalIndices;
+    // Regular expression patterns and their indices in patterns.
+    private final List<Pattern> regexes;
+    private final int[] regexIndices;
     private final int linesOfContext;
 
     /**
@@ -28,11 +45,59 @@ public class AdocContextualSearch {
      * @param linesOfContext the number of context lines to include before and after each match
      */
     public AdocContextualSearch(String pattern, int linesOfContext) {
-        this.searchPattern = pattern == null ? null :
-                Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+        this(pattern == null ? List.of() : List.of(pattern), linesOfContext);
+    }
+
+    /**
+     * Constructs a contextual search for any of several patterns.
+     *
+     * @param patterns       the search patterns; literals or regular expressions
+     * @param linesOfContext the number of context lines to include before and after each match
+     */
+    public AdocContextualSearch(List<String> patterns, int linesOfContext) {
+        this.patterns = List.copyOf(patterns);
+        List<String> literalList = new ArrayList<>();
+        List<Integer> literalIndexList = new ArrayList<>();
+        this.regexes = new ArrayList<>();
+        List<Integer> regexIndexList = new ArrayList<>();
+        for (int i = 0; i < this.patterns.size(); i++) {
+            String pattern = this.patterns.get(i);
+            if (isLiteral(pattern)) {
+                literalList.add(pattern);
+                literalIndexList.add(i);
+            } else {
+                regexes.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+                regexIndexList.add(i);
+            }
+        }
+        this.literals = literalList.isEmpty() ? null : new AhoCorasick(literalList);
+        this.literalIndices = literalIndexList.stream().mapToInt(Integer::intValue).toArray();
+        this.regexIndices = regexIndexList.stream().mapToInt(Integer::intValue).toArray();
         this.linesOfContext = linesOfContext;
     }
 
+    /**
+     * @return the search patterns, in the order hit counts are reported
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * A pattern is treated as a literal if it is non-empty and has no regular expression metacharacters.
+     */
+    static boolean isLiteral(String pattern) {
+        if (pattern.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean isNonTrivial(List<String> lines, int index) {
         return lines.get(index).trim().length() > 1;
     }
@@ -44,8 +109,7 @@ public class AdocContextualSearch {
      * @return true if the path matches the search pattern
      */
     public boolean matches(Path path) {
-        return searchPattern == null ||
-                searchPattern.matcher(path.toString()).find();
+        return patterns.isEmpty() || lineMatches(path.toString(), null, null);
     }
 
     /**
@@ -59,13 +123,26 @@ public class AdocContextualSearch {
      * @return a list of matches found in the file, 0 indexed
      */
     public List<int[]> searchFile(List<String> lines) {
+        return searchFile(lines, null);
+    }
+
+    /**
+     * Searches the lines for any of the patterns, as {@link #searchFile(List)} does, also counting
+     * the occurrences of each pattern.
+     *
+     * @param lines     the lines of the file to search
+     * @param hitCounts incremented by the number of occurrences of each pattern, indexed as {@link #getPatterns()};
+     *                  may be null
+     * @return a list of matches found in the file, 0 indexed
+     */
+    public List<int[]> searchFile(List<String> lines, int[] hitCounts) {
         List<int[]> matches = new ArrayList<>();
         int index = 0;
         int prevStart = -1, prevEnd = -1;
+        int[] literalHits = hitCounts == null || literals == null ? null : new int[literals.size()];
         for (; index < lines.size(); index++) {
             String line = lines.get(index);
-            Matcher matcher = searchPattern.matcher(line);
-            if (matcher.find()) {
+            if (lineMatches(line, literalHits, hitCounts)) {
                 int start = findStart(lines, index);
                 int end = findEnd(lines, index);
                 if (prevStart == -1) {
@@ -80,9 +157,39 @@ public class AdocContextualSearch {
         if (prevStart != -1) {
             matches.add(new int[]{prevStart, prevEnd});
         }
+        if (literalHits != null) {
+            for (int i = 0; i < literalHits.length; i++) {
+                hitCounts[literalIndices[i]] += literalHits[i];
+            }
+        }
         return matches;
     }
 
+    /**
+     * Checks whether any pattern occurs in the line. Without hit counts this stops at the first match;
+     * otherwise every occurrence is counted, literal hits into {@code literalHits}.
+     */
+    private boolean lineMatches(String line, int[] literalHits, int[] hitCounts) {
+        boolean found = literals != null && literals.scan(line, literalHits);
+        if (found && hitCounts == null) {
+            return true;
+        }
+        for (int i = 0; i < regexes.size(); i++) {
+            Matcher matcher = regexes.get(i).matcher(line);
+            if (hitCounts == null) {
+                if (matcher.find()) {
+                    return true;
+                }
+                continue;
+            }
+            while (matcher.find()) {
+                found = true;
+                hitCounts[regexIndices[i]]++;
+            }
+        }
+        return found;
+    }
+
     private int findStart(List<String> lines, int index) {
         int nonTrivialLines = linesOfContext;
         do {
@@ -0,0 +1,53 @@
+package build.chronicle.aide.dc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * Flight Recorder event for a decision of {@link AdocFileFilter}, or of {@link AdocDocumentEngine} to
+ * leave out a file the filter included, e.g. one found to be binary or without search matches: the file
+ * or directory, whether it was included, and the rule that decided.
+ *
+ * <p>Emitted as an instant event; when recording is off, {@link #emit(Path, boolean, String)} costs
+ * no more than the check of {@link #isEnabled()}.</p>
+ */
+@Name("build.chronicle.aide.FileDecision")
+@Label("File Decision")
+@Category({"AIDE", "Filter"})
+@Description("A file or directory included or left out, and the rule that decided")
+@StackTrace(false)
+final class AdocDecisionEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Included")
+    boolean included;
+
+    @Label("Rule")
+    @Description("The rule that decided, INCLUDED, EXPLICITLY_INCLUDED or an AdocJournal.Decision")
+    String rule;
+
+    /**
+     * Commits a decision if the event is enabled.
+     *
+     * @param path     the file or directory
+     * @param included true if it was included
+     * @param rule     the rule that decided
+     */
+    static void emit(Path path, boolean included, String rule) {
+        AdocDecisionEvent event = new AdocDecisionEvent();
+        if (event.isEnabled()) {
+            event.path = path.toString();
+            event.included = included;
+            event.rule = rule;
+            event.commit();
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package build.chronicle.aide.dc;
 
+import build.chronicle.aide.util.GitignoreHierarchy;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * AdocDocumentApp is the entry point for generating a consolidated,
@@ -20,6 +28,32 @@ public class AdocDocumentApp {
     public static final String PROP_INCREMENT = "increment";
     public static final String PROP_REMOVE_COPYRIGHT = "disableRemoveCopyrightMessage";
     public static final String PROP_SEARCH_PATTERN = "searchPattern";
+    public static final String PROP_SEARCH_PATTERNS = "searchPatterns";
+    public static final String PROP_TRIGRAM_INDEX = "trigramIndex";
+    public static final String PROP_MAX_TOKENS = "maxTokens";
+    public static final String PROP_BUDGET_PRIORITY = "budgetPriority";
+    public static final String PROP_BUDGET_WEIGHTS = "budgetWeights";
+    public static final String PROP_MAX_FILE_TOKENS = "maxFileTokens";
+    public static final String PROP_TOKEN_CALIBRATION = "tokenCalibration";
+    public static final String PROP_THREADS = "threads";
+    public static final String PROP_TOKEN_CACHE = "tokenCache";
+    public static final String PROP_MANIFEST = "manifest";
+    public static final String PROP_WRITER = "writer";
+    public static final String PROP_STREAMING = "streaming";
+    public static final String PROP_BATCH_TOKENS = "batchTokens";
+    public static final String PROP_WATCH = "watch";
+    public static final String PROP_NESTED_IGNORES = "nestedIgnores";
+    public static final String PROP_BINARY_CHECK = "binaryCheck";
+    public static final String PROP_JOURNAL = "journal";
+    public static final String PROP_METRICS = "metrics";
+    public static final String PROP_METRICS_JSON = "metricsJson";
+    public static final String PROP_SHARD_TOKENS = "shardTokens";
+    public static final String PROP_GIT_INCREMENTAL = "gitIncremental";
+    public static final String PROP_GIT_SINCE = "gitSince";
+    public static final String PROP_GIT_FILES = "gitFiles";
+    public static final String PROP_GIT_REVISION = "gitRevision";
+    public static final String PROP_GIT_DIFF = "gitDiff";
+    public static final String PROP_DIFF_CONTEXT = "diffContext";
 
     /**
      * Main entry point for the AsciiDoc document generation application.
@@ -42,10 +76,20 @@ public class AdocDocumentApp {
             System.out.println("VERBOSE: Disable remove copyright: " + disableRemoveCopyright);
         }
 
-        // Optional search pattern.
+        // Optional search pattern, and/or a list of patterns searched for in one pass, one per line,
+        // as a comma may appear in a regular expression, e.g. \d{1,3}.
+        List<String> searchPatterns = new ArrayList<>();
         String searchPattern = System.getProperty(PROP_SEARCH_PATTERN, "").trim();
+        if (!searchPattern.isEmpty()) {
+            searchPatterns.add(searchPattern);
+        }
+        for (String pattern : System.getProperty(PROP_SEARCH_PATTERNS, "").split("\\R")) {
+            if (!pattern.trim().isEmpty()) {
+                searchPatterns.add(pattern.trim());
+            }
+        }
         if (verbose) {
-            System.out.println("VERBOSE: Search pattern: " + (searchPattern.isEmpty() ? "none" : searchPattern));
+            System.out.println("VERBOSE: Search patterns: " + (searchPatterns.isEmpty() ? "none" : searchPatterns));
         }
 
         // If no arguments are provided, default to current directory.
@@ -77,34 +121,281 @@ public class AdocDocumentApp {
             System.out.println("VERBOSE: Max file size: " + (maxSizeBytes / 1024) + " KiB");
         }
 
-        AdocFileFilter fileFilter = new AdocFileFilter(ignoreFile, maxSizeBytes, verbose);
-        AdocDocumentStats stats = new AdocDocumentStats();
-        AdocDocumentWriter writer = new AdocDocumentWriter(stats);
-        AdocDocumentEngine engine = new AdocDocumentEngine(fileFilter, writer, stats);
+        int threads = Integer.getInteger(PROP_THREADS, 1);
+        if (verbose) {
+            System.out.println("VERBOSE: Worker threads: " + threads);
+        }
+
+        // Token estimator for quick decisions, optionally calibrated by earlier runs.
+        AdocTokenEstimator tokenEstimator = new AdocTokenEstimator();
+        String calibrationFile = System.getProperty(PROP_TOKEN_CALIBRATION, "").trim();
+        if (!calibrationFile.isEmpty()) {
+            tokenEstimator.load(Path.of(calibrationFile));
+        }
+        long maxFileTokens = Long.getLong(PROP_MAX_FILE_TOKENS, 0L);
+        if (verbose) {
+            System.out.println("VERBOSE: Token calibration: " + (calibrationFile.isEmpty() ? "none" : calibrationFile)
+                    + ", max file tokens: " + (maxFileTokens > 0 ? maxFileTokens : "none"));
+        }
+        // -DnestedIgnores applies every .gitignore/aide.ignore in the working tree, plus .git/info/exclude
+        // and the global excludes file, rather than the single ignore file selected above.
+        boolean nestedIgnores = getBooleanProperty(PROP_NESTED_IGNORES);
+        Path ignoreRoot = firstArgDir;
+        // -DbinaryCheck=utf8 validates whole files as UTF-8 rather than sampling the first 1 KiB.
+        AdocFileFilter.BinaryCheck binaryCheck = getBinaryCheck();
+        // Optional Chronicle Queue journal of why each file was left out and what writing each cost.
+        String journalDir = System.getProperty(PROP_JOURNAL, "").trim();
+        if (verbose) {
+            System.out.println("VERBOSE: Journal: " + (journalDir.isEmpty() ? "none" : journalDir));
+        }
+        AdocJournal journal = journalDir.isEmpty() ? null : AdocJournal.persistedTo(Path.of(journalDir));
+        // Optional time per stage and throughput, as a Performance section (-Dmetrics) and/or a JSON file.
+        boolean performanceSection = getBooleanProperty(PROP_METRICS);
+        String metricsJson = System.getProperty(PROP_METRICS_JSON, "").trim();
+        AdocMetrics metrics = performanceSection || !metricsJson.isEmpty() ? new AdocMetrics() : null;
+        if (verbose) {
+            System.out.println("VERBOSE: Metrics: " + (metrics == null ? "none"
+                    : (performanceSection ? "section " : "") + (metricsJson.isEmpty() ? "" : metricsJson)));
+        }
+        Supplier<AdocFileFilter> filterFactory = () -> {
+            AdocFileFilter filter = new AdocFileFilter(nestedIgnores ? null : ignoreFile, maxSizeBytes, verbose);
+            filter.setBinaryCheck(binaryCheck);
+            filter.setJournal(journal);
+            filter.setMetrics(metrics);
+            if (nestedIgnores) {
+                try {
+                    GitignoreHierarchy hierarchy = GitignoreHierarchy.forDirectory(ignoreRoot);
+                    if (verbose) {
+                        System.out.println("VERBOSE: Nested ignore files under: " + hierarchy.getRoot());
+                    }
+                    filter.setIgnoreRules(hierarchy);
+                } catch (IOException e) {
+                    System.err.println("[WARN] Failed to read ignore files under " + ignoreRoot + " (" + e.getMessage() + ")");
+                }
+            }
+            filter.setMaxFileTokens(maxFileTokens, tokenEstimator);
+            return filter;
+        };
+
+        AdocFileFilter fileFilter = filterFactory.get();
+        // Optional persistent token-count cache.
+        String tokenCacheFile = System.getProperty(PROP_TOKEN_CACHE, "").trim();
+        if (verbose) {
+            System.out.println("VERBOSE: Token cache: " + (tokenCacheFile.isEmpty() ? "none" : tokenCacheFile));
+        }
+        // -DgitRevision=<rev> writes the files as of a commit, branch or tag, read from git without a checkout.
+        String gitRevision = System.getProperty(PROP_GIT_REVISION, "").trim();
+        // -DgitDiff=<from>..<to> writes only the hunks changed between two revisions, as git diff -U<diffContext>;
+        // -DgitDiff=<from> compares with the working tree, and an empty <to> means HEAD, as in git.
+        String gitDiff = System.getProperty(PROP_GIT_DIFF, "").trim();
+        if (!gitRevision.isEmpty() && !gitDiff.isEmpty()) {
+            throw new IllegalArgumentException("-D" + PROP_GIT_REVISION + " and -D" + PROP_GIT_DIFF + " cannot be combined; use -D"
+                    + PROP_GIT_DIFF + "=<from>.." + gitRevision + " to compare with the revision");
+        }
+        boolean requestedWatch = getBooleanProperty(PROP_WATCH);
+        if (requestedWatch && (!gitRevision.isEmpty() || !gitDiff.isEmpty())) {
+            System.err.println("[WARN] Watch mode is not supported with " + PROP_GIT_REVISION + " or " + PROP_GIT_DIFF + "; running once");
+        }
+        boolean watch = requestedWatch && gitRevision.isEmpty() && gitDiff.isEmpty();
+        // In watch mode, keep an in-memory cache when there is no persistent one, so unchanged files are not tokenized again.
+        AdocTokenCache tokenCache = !tokenCacheFile.isEmpty() ? AdocTokenCache.persistedTo(Path.of(tokenCacheFile))
+                : watch ? new AdocTokenCache(new ConcurrentHashMap<>())
+                : null;
 
-        // Set verbose flag in the engine based on system property.
-        engine.setVerbose(verbose);
+        // Optional manifest of the files in the context file, used by incremental mode instead of modification times.
+        String manifestFile = System.getProperty(PROP_MANIFEST, "").trim();
+        if (verbose) {
+            System.out.println("VERBOSE: Manifest file: " + (manifestFile.isEmpty() ? "none" : manifestFile));
+        }
+        AdocManifest manifest = manifestFile.isEmpty() ? null : AdocManifest.persistedTo(Path.of(manifestFile));
 
-        // Always run in chat mode: set the context file (no incremental mode).
-        engine.setContextAsciidoc(contextFile);
-        engine.setIncrementalAsciidoc(incrementFile);
-        engine.setRemoveCopyright(!disableRemoveCopyright);
+        // Optional trigram index, used to skip files that cannot match the search.
+        String trigramIndexFile = System.getProperty(PROP_TRIGRAM_INDEX, "").trim();
+        if (verbose) {
+            System.out.println("VERBOSE: Trigram index: " + (trigramIndexFile.isEmpty() ? "none" : trigramIndexFile));
+        }
+        AdocTrigramIndex trigramIndex = trigramIndexFile.isEmpty() || searchPatterns.isEmpty()
+                ? null : AdocTrigramIndex.persistedTo(Path.of(trigramIndexFile));
 
-        // Configure the engine with a search pattern if provided.
-        if (!searchPattern.isEmpty()) {
-            int linesOfContext = Integer.getInteger("linesOfContext", 2);
-            engine.setSearchPattern(searchPattern, linesOfContext);
+        // Optional token budget, with priorities and aide.weights style weights.
+        AdocBudgetPlanner budgetPlanner = null;
+        long maxTokens = Long.getLong(PROP_MAX_TOKENS, 0L);
+        if (maxTokens > 0) {
+            budgetPlanner = new AdocBudgetPlanner(maxTokens);
+            budgetPlanner.setTokenEstimator(tokenEstimator);
+            budgetPlanner.setPriority(System.getProperty(PROP_BUDGET_PRIORITY, ""));
+            String weightsFile = System.getProperty(PROP_BUDGET_WEIGHTS, "").trim();
+            Path weightsPath = weightsFile.isEmpty()
+                    ? findFirst(firstArgDir.resolve("aide.weights"), Path.of(".", "aide.weights"))
+                    : Path.of(weightsFile);
+            if (weightsPath != null) {
+                System.out.println("Using weights file: " + weightsPath);
+                budgetPlanner.loadWeights(weightsPath);
+            }
+            if (verbose) {
+                System.out.println("VERBOSE: Token budget: " + maxTokens + ", weights: " + (weightsPath == null ? "none" : weightsPath));
+            }
         }
+        AdocBudgetPlanner planner = budgetPlanner;
+        boolean calibrate = !calibrationFile.isEmpty() || maxFileTokens > 0 || maxTokens > 0;
 
-        for (String pathStr : args) {
-            engine.addInputPath(pathStr);
+        boolean batchTokens = getBooleanProperty(PROP_BATCH_TOKENS);
+        // -Dwriter=nio selects the FileChannel based writer.
+        String writerType = System.getProperty(PROP_WRITER, "print").trim();
+        if (verbose) {
+            System.out.println("VERBOSE: Writer: " + writerType);
+        }
+        // -DshardTokens=N splits the output into parts of at most N tokens, with an index of the files in each.
+        long requestedShardTokens = Long.getLong(PROP_SHARD_TOKENS, 0L);
+        if (requestedShardTokens > 0 && watch) {
+            System.err.println("[WARN] Sharded output is not supported in watch mode; writing a single file");
+        }
+        long shardTokens = watch ? 0 : requestedShardTokens;
+        if (verbose) {
+            System.out.println("VERBOSE: Shard tokens: " + (shardTokens > 0 ? shardTokens : "none"));
+        }
+        boolean streaming = getBooleanProperty(PROP_STREAMING);
+        int linesOfContext = Integer.getInteger("linesOfContext", 2);
+        // -DgitIncremental asks git which files changed since the last full run; -DgitSince=<rev> since a given revision.
+        String gitSince = System.getProperty(PROP_GIT_SINCE, "").trim();
+        // -DgitFiles=tracked lists the input files from the git index instead of walking them; =all adds untracked files.
+        String gitFiles = System.getProperty(PROP_GIT_FILES, "").trim().toLowerCase(Locale.ROOT);
+        if (!gitFiles.isEmpty() && !gitFiles.equals("tracked") && !gitFiles.equals("all")) {
+            System.err.println("[WARN] Unknown " + PROP_GIT_FILES + " mode: " + gitFiles + "; walking the input paths instead");
+            gitFiles = "";
+        }
+        boolean gitTrackedFiles = !gitFiles.isEmpty();
+        boolean gitUntrackedFiles = gitFiles.equals("all");
+        boolean gitIncremental = getBooleanProperty(PROP_GIT_INCREMENTAL) || !gitSince.isEmpty();
+        AdocGitRepository openedRepository = null;
+        int dots = gitDiff.indexOf("..");
+        String diffFrom = dots < 0 ? gitDiff : orHead(gitDiff.substring(0, dots));
+        String diffTo = dots < 0 ? null : orHead(gitDiff.substring(dots + 2));
+        int diffContext = Integer.getInteger(PROP_DIFF_CONTEXT, 3);
+        if (gitIncremental || gitTrackedFiles || !gitRevision.isEmpty()
+                || !gitDiff.isEmpty()) {
+            try {
+                openedRepository = AdocGitRepository.forDirectory(firstArgDir);
+                if (verbose) {
+                    System.out.println("VERBOSE: Git working tree: " + openedRepository.getWorkTree()
+                            + ", since: " + (gitSince.isEmpty() ? "last full run" : gitSince)
+                            + ", revision: " + (gitRevision.isEmpty() ? "working tree" : gitRevision));
+                }
+            } catch (IOException e) {
+                System.err.println("[WARN] " + e.getMessage() + "; walking the input paths instead");
+            }
         }
+        AdocGitRepository gitRepository = openedRepository;
+        Function<AdocFileFilter, AdocDocumentEngine> engineFactory = filter -> {
+            AdocDocumentStats stats = new AdocDocumentStats();
+            stats.setTokenCache(tokenCache);
+            stats.setSectionBatching(batchTokens);
+            stats.setMetrics(metrics);
+            AdocDocumentWriter writer = shardTokens > 0 ? new AdocShardedDocumentWriter(stats, shardTokens)
+                    : "nio".equalsIgnoreCase(writerType) ? new AdocChannelDocumentWriter(stats)
+                    : new AdocDocumentWriter(stats);
+            writer.setMetrics(metrics);
+            AdocDocumentEngine engine = new AdocDocumentEngine(filter, writer, stats);
+
+            // Set verbose flag in the engine based on system property.
+            engine.setVerbose(verbose);
+
+            // Always run in chat mode: set the context file (no incremental mode).
+            engine.setContextAsciidoc(contextFile);
+            engine.setIncrementalAsciidoc(incrementFile);
+            engine.setRemoveCopyright(!disableRemoveCopyright);
+            engine.setThreads(threads);
+            engine.setStreaming(streaming);
+            engine.setTrigramIndex(trigramIndex);
+            engine.setBudgetPlanner(planner);
+            engine.setJournal(journal);
+            engine.setMetrics(metrics);
+            engine.setPerformanceSection(performanceSection);
+            engine.setMetricsJson(metricsJson.isEmpty() ? null : Path.of(metricsJson));
+            if (calibrate) {
+                engine.setTokenEstimator(tokenEstimator);
+            }
+            engine.setGitRepository(gitRepository);
+            engine.setGitIncremental(gitIncremental);
+            engine.setGitSince(gitSince.isEmpty() ? null : gitSince);
+            engine.setGitFiles(gitTrackedFiles, gitUntrackedFiles);
+            engine.setGitRevision(gitRevision.isEmpty() ? null : gitRevision);
+            engine.setGitDiff(diffFrom.isEmpty() ? null : diffFrom, diffTo, diffContext);
+
+            // Configure the engine with a search pattern if provided.
+            if (!searchPatterns.isEmpty()) {
+                engine.setSearchPatterns(searchPatterns, linesOfContext);
+            }
+            return engine;
+        };
 
         try {
-            engine.execute();
-            engine.printSummary();
+            if (watch) {
+                watch(args, filterFactory, engineFactory, contextFile,
+                        List.of(tokenCacheFile, manifestFile, trigramIndexFile, calibrationFile, journalDir, metricsJson), manifest, verbose);
+                return;
+            }
+            AdocDocumentEngine engine = engineFactory.apply(fileFilter);
+            engine.setManifest(manifest);
+            for (String pathStr : args) {
+                engine.addInputPath(pathStr);
+            }
+
+            try {
+                engine.execute();
+                engine.printSummary();
+            } finally {
+                engine.close();
+            }
         } finally {
-            engine.close();
+            if (tokenCache != null) {
+                tokenCache.close();
+            }
+            if (manifest != null) {
+                manifest.close();
+            }
+            if (trigramIndex != null) {
+                trigramIndex.close();
+            }
+            if (!calibrationFile.isEmpty()) {
+                tokenEstimator.save(Path.of(calibrationFile));
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (gitRepository != null) {
+                gitRepository.close();
+            }
+        }
+    }
+
+    /**
+     * Runs in watch mode, regenerating the context file after every change until the process is stopped.
+     */
+    private static void watch(String[] args,
+                              Supplier<AdocFileFilter> filterFactory,
+                              Function<AdocFileFilter, AdocDocumentEngine> engineFactory,
+                              String contextFile,
+                              List<String> ownFiles,
+                              AdocManifest manifest,
+                              boolean verbose) throws IOException {
+        // The context file is rewritten in full on every change, so a manifest of an earlier full run would go stale;
+        // a later incremental run compares modification times instead.
+        if (manifest != null) {
+            manifest.clear();
+        }
+        try (AdocDocumentWatcher watcher = new AdocDocumentWatcher(filterFactory, engineFactory, Path.of(contextFile))) {
+            watcher.setVerbose(verbose);
+            for (String ownFile : ownFiles) {
+                if (!ownFile.isEmpty()) {
+                    watcher.ignorePath(Path.of(ownFile));
+                }
+            }
+            for (String pathStr : args) {
+                watcher.addInputPath(pathStr);
+            }
+            System.out.println("Watching for changes; press Ctrl-C to stop.");
+            watcher.run();
         }
     }
 
@@ -118,11 +409,40 @@ public class AdocDocumentApp {
         return hasVerbose && !"false".equalsIgnoreCase(System.getProperty(property));
     }
 
+    private static AdocFileFilter.BinaryCheck getBinaryCheck() {
+        String mode = System.getProperty(PROP_BINARY_CHECK, "sample").trim();
+        try {
+            return AdocFileFilter.BinaryCheck.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            List<String> modes = new ArrayList<>();
+            for (AdocFileFilter.BinaryCheck check : AdocFileFilter.BinaryCheck.values()) {
+                modes.add(check.name().toLowerCase(Locale.ROOT));
+            }
+            System.err.println("[WARN] Unknown " + PROP_BINARY_CHECK + " mode: " + mode + "; expected one of "
+                    + String.join(", ", modes) + ", sampling the start of each file instead");
+            return AdocFileFilter.BinaryCheck.SAMPLE;
+        }
+    }
+
     private static Path getIgnorePath(Path[] ignorePaths) {
-        for (Path ignorePath : ignorePaths) {
-            if (Files.exists(ignorePath)) {
-                System.out.println("Using ignore file: " + ignorePath);
-                return ignorePath;
+        Path ignorePath = findFirst(ignorePaths);
+        if (ignorePath != null) {
+            System.out.println("Using ignore file: " + ignorePath);
+        }
+        return ignorePath;
+    }
+
+    /**
+     * An empty side of a {@code <from>..<to>} range means HEAD, as in git.
+     */
+    private static String orHead(String revision) {
+        return revision.isEmpty() ? "HEAD" : revision;
+    }
+
+    private static Path findFirst(Path... paths) {
+        for (Path path : paths) {
+            if (Files.exists(path)) {
+                return path;
             }
         }
         return null;
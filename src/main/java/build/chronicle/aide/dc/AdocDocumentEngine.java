@@ -1,10 +1,36 @@
 package build.chronicle.aide.dc;
 
+import build.chronicle.aide.util.ContentHash;
+import org.eclipse.jgit.diff.DiffEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 public class AdocDocumentEngine {
 
@@ -19,11 +45,66 @@ public class AdocDocumentEngine {
     private boolean removeCopyright;
     private long contextFileLastModified;
     private boolean incrementalMode;
+    // Manifest of the files in the context file; used instead of mtimes when populated.
+    private AdocManifest manifest;
+    private boolean manifestIncremental;
+    private List<String> deletedFiles;
     private boolean engineExecuted;
+    // File system calls made by the filter before this run, when it is shared between runs
+    private long fileSystemCallsAtStart;
     // New fields for contextual search.
-    private String searchPattern;
+    private List<String> searchPatterns;
     private int linesOfContext;
+    // Total hits of each search pattern, when there is more than one.
+    private long[] totalHits;
     private boolean verbose;
+    // Parallel processing: number of worker threads, 1 for sequential.
+    private int threads;
+    private ForkJoinPool workerPool;
+    private final Deque<Future<AdocFileSection>> pendingSections;
+    private boolean streaming;
+    // Trigram index used to skip files that cannot match the search, and the trigrams it requires.
+    private AdocTrigramIndex trigramIndex;
+    private AdocTrigramIndex.Query trigramQuery;
+    // Token budget: the planner, and the files it selected, or null to write every file.
+    private AdocBudgetPlanner budgetPlanner;
+    private AdocBudgetPlanner.Selection budgetSelection;
+    // Sections read and searched when planning the budget, kept for the selected files until written
+    private final Map<Path, AdocFileSection> plannedSections = new ConcurrentHashMap<>();
+    // Rendered sections kept between runs by the watcher, or null.
+    private AdocSectionCache sectionCache;
+    // Calibrated with the exact count of every section written
+    private AdocTokenEstimator tokenEstimator;
+    // Records why files were left out and what writing each cost, or null.
+    private AdocJournal journal;
+    // Time per stage and throughput, or null; written as a Performance section and/or a JSON file.
+    private AdocMetrics metrics;
+    private long filesWritten;
+    private boolean performanceSection;
+    private Path metricsJson;
+    // Git repository of the input paths, or null; with git incremental mode on, an incremental run asks
+    // git for the files changed since a commit, once that commit is known.
+    private AdocGitRepository gitRepository;
+    private boolean gitIncrementalEnabled;
+    private String gitSince;
+    private String gitSinceId;
+    private Path gitHeadFile;
+    private boolean gitIncremental;
+    private int gitChanged;
+    // List the input files from the git index instead of walking them, optionally with untracked files.
+    private boolean gitFiles;
+    private boolean gitUntracked;
+    // Whether each directory reached from the git index would be walked
+    private final Map<Path, Boolean> walkedDirectories = new HashMap<>();
+    // Write the files as of a commit, branch or tag, read from the object database; and the commit it resolved to.
+    private String gitRevision;
+    private String gitRevisionId;
+    // Write only the hunks changed between two revisions, or a revision and the working tree, with context lines.
+    private String gitDiffFrom;
+    private String gitDiffTo;
+    private int gitDiffContext;
+    private int gitDiffFiles;
+    private int gitDiffHunks;
 
     /**
      * Constructs an engine with required collaborators.
@@ -47,9 +128,12 @@ public class AdocDocumentEngine {
         this.incrementalMode = false;
         this.engineExecuted = false;
         this.skippedFiles = new ArrayList<>();
+        this.deletedFiles = List.of();
         this.verbose = false;
-        this.searchPattern = null;
+        this.searchPatterns = List.of();
         this.linesOfContext = 2;
+        this.threads = 1;
+        this.pendingSections = new ArrayDeque<>();
     }
 
     // Setters
@@ -69,6 +153,224 @@ public class AdocDocumentEngine {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the manifest recording the files written in full mode. In incremental mode a
+     * populated manifest is used to find added, modified and deleted files by size,
+     * modification time and content hash, instead of comparing each file's modification
+     * time with the context file's.
+     *
+     * @param manifest the manifest, or null to compare modification times only
+     */
+    public void setManifest(AdocManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Enables streaming of files straight from the reader to the writer, holding only a
+     * bounded look-ahead window for copyright detection in memory. Streaming applies to
+     * sequential runs without a search pattern; otherwise files are read in full.
+     *
+     * @param streaming true to stream files
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Sets a trigram index used while searching to skip files that cannot contain a match
+     * without reading them. The index is updated with every file read. If a search pattern
+     * requires no trigrams, e.g. {@code a.*b}, every file is scanned as usual.
+     *
+     * @param trigramIndex the index, or null to scan every file
+     */
+    public void setTrigramIndex(AdocTrigramIndex trigramIndex) {
+        this.trigramIndex = trigramIndex;
+    }
+
+    /**
+     * Sets a token budget for the file sections. Before anything is written, every eligible file is
+     * given an estimated cost and priority without being rendered, and only the highest priority
+     * files that fit the budget are written; the rest are listed as dropped in the summary.
+     *
+     * @param budgetPlanner the planner, or null to write every file
+     */
+    public void setBudgetPlanner(AdocBudgetPlanner budgetPlanner) {
+        this.budgetPlanner = budgetPlanner;
+    }
+
+    /**
+     * Sets a token estimator to calibrate with the exact token count of each file section written.
+     * The calibration and observed error per extension are reported in the summary.
+     *
+     * @param tokenEstimator the estimator, or null
+     */
+    public void setTokenEstimator(AdocTokenEstimator tokenEstimator) {
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * Sets a journal to record why each file was left out, e.g. unchanged in incremental mode or
+     * without search matches, and the bytes, lines, tokens and time per stage of each file written.
+     * The rule of the filter excluding a file is recorded by the filter, see
+     * {@link AdocFileFilter#setJournal(AdocJournal)}.
+     *
+     * @param journal the journal, or null
+     */
+    public void setJournal(AdocJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets metrics to record the time spent walking, reading, removing copyright and searching, and
+     * the files and bytes written. The filter, stats and writer record their own stages when given
+     * the same metrics.
+     *
+     * @param metrics the metrics, or null
+     */
+    public void setMetrics(AdocMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Writes the metrics as a {@code == Performance} section after the summary.
+     *
+     * @param performanceSection true to write the section
+     */
+    public void setPerformanceSection(boolean performanceSection) {
+        this.performanceSection = performanceSection;
+    }
+
+    /**
+     * Writes the metrics to a JSON file with the summary.
+     *
+     * @param metricsJson the file, or null
+     */
+    public void setMetricsJson(Path metricsJson) {
+        this.metricsJson = metricsJson;
+    }
+
+    /**
+     * Sets the git repository holding the input paths, used by the git modes of the engine.
+     * A full run records HEAD in {@code <context file>.head}.
+     *
+     * @param gitRepository the repository, or null to walk the input paths
+     */
+    public void setGitRepository(AdocGitRepository gitRepository) {
+        this.gitRepository = gitRepository;
+    }
+
+    /**
+     * Sets where a full run records HEAD, for a context file written under another name and moved into place.
+     *
+     * @param gitHeadFile the file, or null for {@code <context file>.head}
+     */
+    public void setGitHeadFile(Path gitHeadFile) {
+        this.gitHeadFile = gitHeadFile;
+    }
+
+    /**
+     * Selects git incremental mode: an incremental run with the repository set with
+     * {@link #setGitRepository(AdocGitRepository)} writes the files git reports as changed since the
+     * commit recorded by the last full run, rather than walking the input paths and comparing
+     * modification times or the manifest. If no commit was recorded, or it no longer resolves,
+     * the run warns and compares with the manifest or modification times instead.
+     *
+     * @param gitIncremental true to ask git what changed
+     */
+    public void setGitIncremental(boolean gitIncremental) {
+        this.gitIncrementalEnabled = gitIncremental;
+    }
+
+    /**
+     * Sets the revision, e.g. a commit, branch or tag, a git incremental run compares with,
+     * instead of the commit recorded by the last full run.
+     *
+     * @param gitSince the revision, or null
+     */
+    public void setGitSince(String gitSince) {
+        this.gitSince = gitSince;
+    }
+
+    /**
+     * Lists the files under the input paths from the index of the repository set with
+     * {@link #setGitRepository(AdocGitRepository)} instead of walking them. The files are filtered and
+     * written in index order; directories git tracks files in are still skipped if a walk would skip them.
+     *
+     * @param gitFiles  true to list files from the index
+     * @param untracked true to also list untracked files that are not ignored
+     */
+    public void setGitFiles(boolean gitFiles, boolean untracked) {
+        this.gitFiles = gitFiles;
+        this.gitUntracked = untracked;
+    }
+
+    /**
+     * Writes the files under the input paths as of a commit, branch or tag of the repository set with
+     * {@link #setGitRepository(AdocGitRepository)}, read from the object database without a checkout.
+     * The files are filtered, stripped of copyright notices and searched as files on disk are, and
+     * written in tree order. The run is always a full run, and records the commit so a later
+     * incremental run with the repository writes the changes since it.
+     *
+     * @param gitRevision the revision, or null to read the input paths from disk
+     */
+    public void setGitRevision(String gitRevision) {
+        this.gitRevision = gitRevision;
+    }
+
+    /**
+     * Writes only what changed between two revisions of the repository set with
+     * {@link #setGitRepository(AdocGitRepository)}, or between a revision and the working tree: for each
+     * changed file under the input paths that the filter accepts, the hunks of a unified diff with some
+     * unchanged lines around each change, as {@code .lines [a, b]} blocks numbered by the lines of the
+     * file after the change. Each hunk is followed by its line and token counts. The run is always a full run.
+     * A diff cannot be combined with {@link #setGitRevision(String)}; {@link #execute()} fails if both are set.
+     *
+     * @param from    the revision to compare from, or null to write whole files
+     * @param to      the revision to compare to, or null for the working tree
+     * @param context the number of unchanged lines shown before and after each change
+     */
+    public void setGitDiff(String from, String to, int context) {
+        this.gitDiffFrom = from;
+        this.gitDiffTo = to;
+        this.gitDiffContext = context;
+    }
+
+    /**
+     * Returns the number of file system calls the filter made during this run, such as reading
+     * attributes, listing directories for companion {@code .ad} files and opening files to check
+     * for binary content. Files found by walking a directory need none of their own.
+     *
+     * @return the number of calls
+     */
+    public long getFileSystemCalls() {
+        return fileFilter.getFileSystemCalls() - fileSystemCallsAtStart;
+    }
+
+    /**
+     * Sets a cache of rendered sections shared between runs, so files unchanged since an
+     * earlier run are not read again. Streaming is not used while a cache is set.
+     *
+     * @param sectionCache the cache, or null
+     */
+    void setSectionCache(AdocSectionCache sectionCache) {
+        this.sectionCache = sectionCache;
+    }
+
+    /**
+     * Sets the number of worker threads used to filter, read and search files.
+     * With more than one thread, files are rendered concurrently while a single
+     * writer stage consumes the results in walk order, so the output is identical
+     * to a sequential run.
+     *
+     * @param threads the number of worker threads; 1 (the default) processes files sequentially
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+    }
+
     /**
      * Configures the engine to run a contextual search with the specified pattern and options.
      * When set, each eligible file will be processed by searching for matches instead of
@@ -78,8 +380,21 @@ public class AdocDocumentEngine {
      * @param linesOfContext the number of context lines to include before and after each match
      */
     public void setSearchPattern(String pattern, int linesOfContext) {
-        this.searchPattern = pattern;
+        setSearchPatterns(pattern == null || pattern.isEmpty() ? List.of() : List.of(pattern), linesOfContext);
+    }
+
+    /**
+     * Configures the engine to search for any of several patterns in a single pass over each file.
+     * Literal patterns are matched together; the rest are treated as regular expressions. With more
+     * than one pattern, the hits of each pattern are reported per file and in the summary.
+     *
+     * @param patterns       the literals or regular expressions to search for
+     * @param linesOfContext the number of context lines to include before and after each match
+     */
+    public void setSearchPatterns(List<String> patterns, int linesOfContext) {
+        this.searchPatterns = List.copyOf(patterns);
         this.linesOfContext = linesOfContext;
+        this.totalHits = patterns.size() > 1 ? new long[patterns.size()] : null;
     }
 
     public void addInputPath(String pathStr) {
@@ -104,20 +419,51 @@ public class AdocDocumentEngine {
         if (engineExecuted) {
             throw new IllegalStateException("This AdocDocumentEngine has already executed. Use a new instance for another run.");
         }
+        if (gitRevision != null && gitDiffFrom != null) {
+            throw new IllegalStateException("Either a git revision or a git diff can be written, not both.");
+        }
         engineExecuted = true;
+        fileSystemCallsAtStart = fileFilter.getFileSystemCalls();
+        AdocRunEvent runEvent = new AdocRunEvent();
+        runEvent.begin();
+        if (metrics != null) {
+            metrics.start();
+        }
 
         // Check if context.asciidoc exists => set incremental mode.
         Path contextPath = Paths.get(contextAsciidoc).toAbsolutePath();
-        if (Files.exists(contextPath)) {
+        boolean diffing = gitDiffFrom != null && gitRepository != null;
+        boolean fromRevision = gitRevision != null && gitRepository != null;
+        if (fromRevision) {
+            // fails before any output is opened if the revision is unknown
+            gitRevisionId = gitRepository.resolveCommit(gitRevision);
+        }
+        if (!fromRevision && !diffing && Files.exists(contextPath)) {
             incrementalMode = true;
             contextFileLastModified = Files.getLastModifiedTime(contextPath).toMillis();
             if (verbose) {
                 System.out.println("VERBOSE: Existing context file found; switching to incremental mode.");
             }
+            manifestIncremental = manifest != null && !manifest.isEmpty();
+            if (verbose && manifest != null && !manifestIncremental) {
+                System.out.println("VERBOSE: Manifest is empty; comparing modification times instead.");
+            }
         } else {
             if (verbose) {
                 System.out.println("VERBOSE: No existing context file; running in full mode.");
             }
+            if (manifest != null) {
+                manifest.clear();
+            }
+        }
+
+        if (incrementalMode && gitIncrementalEnabled && gitRepository != null) {
+            gitSinceId = resolveGitSince();
+            if (gitSinceId != null) {
+                // git knows which files changed; the manifest and modification times are not needed
+                gitIncremental = true;
+                manifestIncremental = false;
+            }
         }
 
         // Open the correct output file.
@@ -131,9 +477,70 @@ public class AdocDocumentEngine {
             writer.write("= Directory Content\n\n");
         }
 
+        if (trigramIndex != null && isSearching()) {
+            trigramQuery = AdocTrigramIndex.Query.forPatterns(searchPatterns);
+            if (verbose && trigramQuery == null) {
+                System.out.println("VERBOSE: Search patterns require no trigrams; scanning every file.");
+            }
+        }
+
         // Process each path.
-        for (Path inputPath : inputPaths) {
-            processPath(inputPath);
+        if (threads > 1) {
+            workerPool = new ForkJoinPool(threads);
+            if (verbose) {
+                System.out.println("VERBOSE: Processing files with " + threads + " worker threads.");
+            }
+        }
+        try {
+            // the files git lists are listed once, so a token budget is planned over the files written
+            List<Path> gitListed = null;
+            if (diffing || fromRevision) {
+                if (budgetPlanner != null) {
+                    System.err.println("[WARN] A token budget is not supported when reading from git; writing every file");
+                }
+            } else if (gitIncremental) {
+                gitListed = listGitChanges();
+            } else if (gitFiles && gitRepository != null) {
+                gitListed = listGitFiles();
+            }
+            if (budgetPlanner != null && !diffing && !fromRevision) {
+                planBudget(gitListed);
+            }
+            if (diffing) {
+                processGitDiff();
+            } else if (fromRevision) {
+                processGitRevision();
+            } else if (gitListed != null) {
+                processGitFiles(gitListed);
+            } else {
+                for (Path inputPath : inputPaths) {
+                    processPath(inputPath);
+                }
+            }
+            drainSections(0);
+            if (manifestIncremental) {
+                deletedFiles = manifest.getDeleted(inputPaths);
+            }
+            if (gitRepository != null && !incrementalMode && !diffing) {
+                recordGitHead(fromRevision ? gitRevisionId : gitRepository.getHead());
+            }
+        } finally {
+            if (workerPool != null) {
+                workerPool.shutdownNow();
+                workerPool = null;
+            }
+            if (metrics != null) {
+                metrics.stop();
+            }
+            if (runEvent.shouldCommit()) {
+                runEvent.output = incrementalMode ? incrementalAsciidoc : contextAsciidoc;
+                runEvent.incremental = incrementalMode;
+                runEvent.files = filesWritten;
+                runEvent.skipped = skippedFiles.size();
+                runEvent.lines = stats.getTotalLines();
+                runEvent.tokens = stats.getTotalTokens();
+                runEvent.commit();
+            }
         }
     }
 
@@ -154,9 +561,93 @@ public class AdocDocumentEngine {
         double tokensPerLine = (stats.getTotalLines() == 0) ? 0.0 : (double) stats.getTotalTokens() / stats.getTotalLines();
         writer.write(String.format("Tokens/Line: %.1f\n", tokensPerLine));
 
-        if (!skippedFiles.isEmpty()) {
-            writer.write("\nSkipped Files:\n\n");
-            for (String sf : skippedFiles) {
+        AdocTokenCache tokenCache = stats.getTokenCache();
+        if (tokenCache != null) {
+            writer.write("Token cache: hits " + tokenCache.getHits() + ", misses " + tokenCache.getMisses() + "\n");
+        }
+
+        if (verbose) {
+            // depends on what earlier runs sharing the filter have cached, so only reported when diagnosing
+            writer.write("Filter file system calls: " + getFileSystemCalls() + "\n");
+        }
+
+        if (trigramQuery != null) {
+            writer.write("Trigram index: skipped " + trigramIndex.getSkipped() + " of "
+                    + (trigramIndex.getSkipped() + trigramIndex.getCandidates()) + " files\n");
+        }
+
+        if (budgetSelection != null) {
+            writer.write("Token budget: " + budgetPlanner.getMaxTokens() + ", estimated "
+                    + budgetSelection.estimatedTokens() + " for " + budgetSelection.selected().size() + " of "
+                    + (budgetSelection.selected().size() + budgetSelection.dropped().size()) + " files\n");
+        }
+
+        if (tokenEstimator != null) {
+            for (String line : tokenEstimator.report()) {
+                writer.write("Token estimator " + line + "\n");
+            }
+        }
+
+        if (gitRevisionId != null) {
+            writer.write("Git revision: " + gitRevision + " (" + gitRevisionId + ")\n");
+        }
+        if (gitDiffFrom != null && gitRepository != null) {
+            writer.write("Git diff: " + gitDiffFrom + ".." + (gitDiffTo == null ? "working tree" : gitDiffTo)
+                    + ", " + gitDiffFiles + " files, " + gitDiffHunks + " hunks\n");
+        }
+        if (gitIncremental) {
+            writer.write("Git changes: " + gitChanged + " changed, " + deletedFiles.size() + " deleted\n");
+            writeFileList("Deleted Files", deletedFiles);
+        }
+        if (manifestIncremental) {
+            writeFileList("Added Files", manifest.getAdded());
+            writeFileList("Modified Files", manifest.getModified());
+            writeFileList("Deleted Files", deletedFiles);
+        }
+        if (totalHits != null) {
+            writer.write("\nSearch Hits:\n\n");
+            for (int i = 0; i < totalHits.length; i++) {
+                writer.write(" - " + searchPatterns.get(i) + ": " + totalHits[i] + "\n");
+            }
+        }
+        if (budgetSelection != null) {
+            List<String> dropped = new ArrayList<>();
+            for (AdocBudgetPlanner.Candidate candidate : budgetSelection.dropped()) {
+                dropped.add(candidate.path() + " (~" + candidate.tokens() + " tokens)");
+            }
+            writeFileList("Dropped Files", dropped);
+        }
+        writeFileList("Skipped Files", skippedFiles);
+        if (metrics != null) {
+            writeMetrics();
+        }
+    }
+
+    /**
+     * Writes the metrics of this run as a Performance section and/or JSON file.
+     */
+    private void writeMetrics() {
+        if (performanceSection) {
+            // taken before writing, as the section's own writes are recorded too
+            List<String> lines = metrics.report();
+            writer.write("\n== Performance\n\n");
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        }
+        if (metricsJson != null) {
+            try {
+                metrics.writeJson(metricsJson);
+            } catch (IOException e) {
+                System.err.println("[WARN] Failed to write metrics to " + metricsJson + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    private void writeFileList(String title, List<String> files) {
+        if (!files.isEmpty()) {
+            writer.write("\n" + title + ":\n\n");
+            for (String sf : files) {
                 writer.write(" - " + sf + "\n");
             }
         }
@@ -174,7 +665,7 @@ public class AdocDocumentEngine {
     // ------------------------------------------------------------------------
 
     private void processPath(Path path) {
-        AdocContextualSearch contextualSearch = new AdocContextualSearch(searchPattern, linesOfContext);
+        AdocContextualSearch contextualSearch = new AdocContextualSearch(searchPatterns, linesOfContext);
         try {
             if (!Files.exists(path)) {
                 if (verbose) {
@@ -187,23 +678,44 @@ public class AdocDocumentEngine {
                     System.out.println("VERBOSE: Recursing into directory: " + path);
                 }
                 Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    // when the last callback returned; the time until the next is spent walking
+                    private long walkStart = System.nanoTime();
+
                     @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                        processSingleFile(file, contextualSearch);
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        walked();
+                        FileVisitResult result = skipDirectory(path, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                        walkStart = System.nanoTime();
+                        return result;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        walked();
+                        processSingleFile(file, attrs, contextualSearch);
+                        walkStart = System.nanoTime();
                         return FileVisitResult.CONTINUE;
                     }
 
                     @Override
-                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                        walked();
                         if (verbose) {
                             System.out.println("VERBOSE: Failed to process file: " + file + " (" + exc.getMessage() + ")");
                         }
-                        skippedFiles.add(file.toString());
+                        submitSection(CompletableFuture.completedFuture(AdocFileSection.skipped(file)));
+                        walkStart = System.nanoTime();
                         return FileVisitResult.CONTINUE;
                     }
+
+                    private void walked() {
+                        if (metrics != null) {
+                            metrics.recordSince(AdocMetrics.Stage.WALK, walkStart);
+                        }
+                    }
                 });
             } else {
-                processSingleFile(path, contextualSearch);
+                processSingleFile(path, null, contextualSearch);
             }
         } catch (IOException e) {
             if (verbose) {
@@ -213,75 +725,937 @@ public class AdocDocumentEngine {
         }
     }
 
-    private void processSingleFile(Path path, AdocContextualSearch contextualSearch) {
+    /**
+     * Lists the files git reports as changed under the input paths, in path order, and records
+     * those deleted.
+     */
+    private List<Path> listGitChanges() throws IOException {
+        if (verbose) {
+            System.out.println("VERBOSE: Listing changes since " + gitSinceId + " with git");
+        }
+        AdocGitRepository.Changes changes = gitRepository.changesSince(gitSinceId, inputPaths);
+        gitChanged = changes.changed().size();
+        deletedFiles = changes.deleted().stream().map(Path::toString).collect(Collectors.toList());
+        return changes.changed();
+    }
+
+    /**
+     * Lists the files in the git index under the input paths, in index order.
+     */
+    private List<Path> listGitFiles() throws IOException {
+        List<Path> files = gitRepository.listFiles(inputPaths, gitUntracked);
+        if (verbose) {
+            System.out.println("VERBOSE: Listed " + files.size() + " files from the git index"
+                    + (gitUntracked ? " and untracked files" : ""));
+        }
+        return files;
+    }
+
+    /**
+     * Writes the files listed by git in order, applying the same directory and file checks as a walk would.
+     */
+    private void processGitFiles(List<Path> files) throws IOException {
+        AdocContextualSearch contextualSearch = new AdocContextualSearch(searchPatterns, linesOfContext);
+        for (Path file : files) {
+            processGitFile(file, contextualSearch);
+        }
+    }
+
+    /**
+     * Writes the files under the input paths as of the git revision, read from the object database,
+     * in tree order. Companion {@code .ad} files are found in the commit rather than on disk.
+     */
+    private void processGitRevision() throws IOException {
+        List<AdocGitRepository.Blob> blobs = gitRepository.listBlobs(gitRevisionId, inputPaths);
+        if (verbose) {
+            System.out.println("VERBOSE: Listed " + blobs.size() + " files from " + gitRevision + " (" + gitRevisionId + ")");
+        }
+        Map<Path, Set<String>> companions = new HashMap<>();
+        for (AdocGitRepository.Blob blob : blobs) {
+            Set<String> names = companions.computeIfAbsent(blob.path().getParent(), dir -> new HashSet<>());
+            String name = blob.path().getFileName().toString();
+            if (name.endsWith(".ad")) {
+                names.add(name);
+            }
+        }
+        companions.forEach(fileFilter::setDirectoryListing);
         try {
-            if (!fileFilter.include(path)) {
-                if (verbose) {
-                    System.out.println("VERBOSE: Skipping file (filtered out): " + path);
+            AdocContextualSearch contextualSearch = new AdocContextualSearch(searchPatterns, linesOfContext);
+            for (AdocGitRepository.Blob blob : blobs) {
+                if (!isWalked(blob.path())) {
+                    continue;
+                }
+                if (workerPool != null) {
+                    submitSection(workerPool.submit(() -> renderBlob(blob, contextualSearch)));
+                } else {
+                    writeSection(renderBlob(blob, contextualSearch));
                 }
-                return;
             }
+            drainSections(0);
+        } finally {
+            // the listings describe the commit, not the disk
+            fileFilter.clearDirectoryListings();
+        }
+    }
 
-            if (incrementalMode) {
-                long fileLastMod = Files.getLastModifiedTime(path).toMillis();
-                if (fileLastMod <= contextFileLastModified) {
-                    if (verbose) {
-                        System.out.println("VERBOSE: Skipping unmodified file in incremental mode: " + path);
-                    }
-                    return;
+    /**
+     * Writes the hunks changed in each file under the input paths, in path order, for the files the
+     * filter accepts by name and size. Binary files are left out, as git finds no lines in them;
+     * copyright notices and search patterns are not applied to hunks.
+     */
+    private void processGitDiff() throws IOException {
+        if (isSearching()) {
+            System.err.println("[WARN] Search patterns are not applied to a git diff; writing every hunk");
+        }
+        List<AdocGitRepository.FileDiff> diffs = gitRepository.diff(gitDiffFrom, gitDiffTo, inputPaths, gitDiffContext);
+        if (verbose) {
+            System.out.println("VERBOSE: " + diffs.size() + " files changed between " + gitDiffFrom + " and "
+                    + (gitDiffTo == null ? "the working tree" : gitDiffTo));
+        }
+        for (AdocGitRepository.FileDiff diff : diffs) {
+            Path path = diff.path();
+            if (!isWalked(path) || !fileFilter.include(path, diff.attributes())) {
+                continue;
+            }
+            if (diff.isBinary()) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Skipping binary file: " + path);
                 }
+                journal(path, AdocJournal.Decision.BINARY);
+                continue;
+            }
+            if (diff.hunks().isEmpty() && diff.oldPath() == null) {
+                // only the file mode changed
+                continue;
             }
+            writeDiff(diff);
+        }
+    }
 
-            // Default behavior: include the entire file.
-            List<String> lines = Files.readAllLines(path);
-            int firstLine = 1;
-            if (removeCopyright) {
-                List<String> lines2 = fileProcessor.maybeRemoveCopyright(lines);
-                firstLine += lines.size() - lines2.size();
-                lines = lines2;
+    /**
+     * Writes the hunks of a changed file as a file section, each hunk followed by its line and token counts.
+     */
+    private void writeDiff(AdocGitRepository.FileDiff diff) {
+        AdocFileWriteEvent writeEvent = new AdocFileWriteEvent();
+        writeEvent.begin();
+        long start = System.nanoTime();
+        Path currentPath = Paths.get(".").toAbsolutePath().normalize();
+        String relativePath = currentPath.relativize(diff.path()).toString();
+        writer.snapshotStats();
+        writer.beginSection(relativePath);
+        writer.write("== File: " + relativePath + "\n");
+        if (diff.oldPath() != null) {
+            Path oldPath = gitRepository.getWorkTree().resolve(diff.oldPath()).normalize();
+            writer.write("\n" + (diff.changeType() == DiffEntry.ChangeType.RENAME ? "Renamed" : "Copied")
+                    + " from " + currentPath.relativize(oldPath) + "\n");
+        } else if (diff.changeType() != DiffEntry.ChangeType.MODIFY) {
+            writer.write("\n" + (diff.changeType() == DiffEntry.ChangeType.ADD ? "Added" : "Deleted") + "\n");
+        }
+        long bytes = 0;
+        for (AdocGitRepository.Hunk hunk : diff.hunks()) {
+            writer.write("\n.lines [" + hunk.firstLine() + ", " + hunk.lastLine() + "]\n");
+            writer.write("....\n");
+            StringBuilder content = new StringBuilder();
+            for (String line : hunk.lines()) {
+                content.append(line).append('\n');
             }
+            long linesBefore = stats.getTotalLines();
+            long tokensBefore = stats.getTotalTokens();
+            writer.writeSection(content.toString());
+            long hunkLines = stats.getTotalLines() - linesBefore;
+            long hunkTokens = stats.getTotalTokens() - tokensBefore;
+            writer.write("....\n");
+            writer.write("Hunk Lines " + hunkLines + ", Tokens " + hunkTokens + "\n");
+            bytes += content.toString().getBytes(StandardCharsets.UTF_8).length;
+            gitDiffHunks++;
+        }
+        gitDiffFiles++;
+        writeFileStats(diff.path(), bytes, 0, 0, start, writeEvent);
+        writer.endSection();
+    }
 
-            // If a search pattern is configured, perform a contextual search.
-            List<int[]> matches;
-            if (searchPattern != null && !searchPattern.isEmpty()) {
-                matches = contextualSearch.searchFile(lines);
-                if (matches.isEmpty()) {
-                    if (verbose) {
-                        System.out.println("VERBOSE: No matches found in file: " + path);
-                    }
-                    return;
+    /**
+     * Renders a file of the git revision as {@link #readSection} renders a file on disk, with the
+     * blob standing in for the attributes from a walk. Safe to call from worker threads.
+     */
+    private AdocFileSection renderBlob(AdocGitRepository.Blob blob, AdocContextualSearch contextualSearch) {
+        Path path = blob.path();
+        try {
+            if (!accept(path, blob)) {
+                return AdocFileSection.filtered(path);
+            }
+            if (trigramQuery != null && !trigramIndex.mayMatch(path, blob, trigramQuery)) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Skipping file without the required trigrams: " + path);
                 }
+                journal(path, AdocJournal.Decision.NO_TRIGRAMS);
+                return AdocFileSection.filtered(path);
+            }
+            AdocFileReadEvent readEvent = new AdocFileReadEvent();
+            readEvent.begin();
+            long readStart = System.nanoTime();
+            byte[] bytes = gitRepository.read(blob);
+            return renderBytes(path, blob, blob, bytes, readStart, readEvent, contextualSearch);
+        } catch (IOException e) {
+            if (verbose) {
+                System.out.println("VERBOSE: Error processing file " + blob + " (" + e.getMessage() + ")");
+            }
+            return AdocFileSection.skipped(path);
+        }
+    }
+
+    /**
+     * Processes a file listed by git, if a walk of the input path containing it would reach it.
+     */
+    private void processGitFile(Path file, AdocContextualSearch contextualSearch) throws IOException {
+        if (!isWalked(file)) {
+            return;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            if (verbose) {
+                System.out.println("VERBOSE: Skipping file missing from the working tree: " + file);
+            }
+            return;
+        }
+        processSingleFile(file, attrs, contextualSearch);
+    }
+
+    /**
+     * Checks that a walk of the input path containing a file listed by git would reach it.
+     */
+    private boolean isWalked(Path file) {
+        for (Path root : inputPaths) {
+            if (file.startsWith(root)) {
+                return inWalkedDirectory(root, file);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that a walk from the root would reach a file, i.e. no directory between them is skipped.
+     * Each directory is only checked once.
+     */
+    private boolean inWalkedDirectory(Path root, Path file) {
+        Path parent = file.getParent();
+        if (file.equals(root) || parent.equals(root)) {
+            return true;
+        }
+        Path dir = root;
+        for (Path name : root.relativize(parent)) {
+            dir = dir.resolve(name);
+            if (!walkedDirectories.computeIfAbsent(dir, fileFilter::includeDirectory)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path gitHeadFile() {
+        return gitHeadFile != null ? gitHeadFile : Path.of(contextAsciidoc + ".head");
+    }
+
+    /**
+     * Resolves the commit a git incremental run compares with: the revision given, or else the one
+     * recorded by the last full run. Comparing with HEAD instead would miss every commit made since
+     * that run, so without a commit the run compares with the manifest or modification times.
+     *
+     * @return the commit id, or null if there is none
+     */
+    private String resolveGitSince() throws IOException {
+        String since = gitSince != null ? gitSince : readGitHead();
+        if (since == null) {
+            System.err.println("[WARN] No git commit recorded in " + gitHeadFile()
+                    + "; comparing with the manifest or modification times instead");
+            return null;
+        }
+        try {
+            return gitRepository.resolveCommit(since);
+        } catch (IOException e) {
+            System.err.println("[WARN] " + e.getMessage() + "; comparing with the manifest or modification times instead");
+            return null;
+        }
+    }
+
+    private String readGitHead() throws IOException {
+        Path headFile = gitHeadFile();
+        return Files.exists(headFile) ? Files.readString(headFile).trim() : null;
+    }
+
+    /**
+     * Records the commit a full run was made from, so a later incremental run can ask git what changed since.
+     *
+     * @param head the commit id, or null if there is none
+     */
+    private void recordGitHead(String head) {
+        try {
+            if (head == null) {
+                Files.deleteIfExists(gitHeadFile());
             } else {
-                matches = List.of(new int[]{0, lines.size() - 1});
-            }
-            Path currentPath = Paths.get(".").toAbsolutePath().normalize();
-            Path relativePath = currentPath.relativize(path);
-            writer.write("== File: " + relativePath + "\n");
-            for (int[] match : matches) {
-                if (match[0] != 0 || match[1] != lines.size() - 1) {
-                    writer.write("\n.lines [" + (match[0] + firstLine) + ", " + (match[1] + firstLine) + "]\n");
+                Files.writeString(gitHeadFile(), head + "\n");
+            }
+        } catch (IOException e) {
+            System.err.println("[WARN] Failed to record the git HEAD in " + gitHeadFile() + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Decides whether a directory below the walk root can be skipped as a whole, so the files
+     * in ignored and hidden directories are never visited.
+     */
+    private boolean skipDirectory(Path root, Path dir) {
+        return !dir.equals(root) && !fileFilter.includeDirectory(dir);
+    }
+
+    /**
+     * Renders a file and writes it; with worker threads the rendering is queued
+     * and the write happens once all earlier files have been written.
+     *
+     * @param attrs the attributes supplied by the walk, or null if not known
+     */
+    private void processSingleFile(Path path, BasicFileAttributes attrs, AdocContextualSearch contextualSearch) throws IOException {
+        if (workerPool != null) {
+            submitSection(workerPool.submit(() -> renderFile(path, attrs, contextualSearch)));
+        } else if (streaming && sectionCache == null && !isSearching()) {
+            streamFile(path, attrs);
+        } else if (writer.canTransfer() && sectionCache == null && !isSearching() && tokenEstimator == null) {
+            transferFile(path, attrs);
+        } else {
+            writeSection(renderFile(path, attrs, contextualSearch));
+        }
+    }
+
+    private void record(AdocMetrics.Stage stage, long start) {
+        if (metrics != null) {
+            metrics.recordSince(stage, start);
+        }
+    }
+
+    private void journal(Path path, AdocJournal.Decision decision) {
+        if (journal != null) {
+            journal.decision(path, decision);
+        }
+        AdocDecisionEvent.emit(path, false, decision.name());
+    }
+
+    private boolean isSearching() {
+        return !searchPatterns.isEmpty();
+    }
+
+    /**
+     * Queues a section for the writer stage, writing completed sections once
+     * enough are in flight to keep every worker busy.
+     */
+    private void submitSection(Future<AdocFileSection> section) throws IOException {
+        pendingSections.add(section);
+        drainSections(workerPool == null ? 0 : threads * 4);
+    }
+
+    /**
+     * Writes queued sections in submission order until at most {@code maxPending} remain.
+     */
+    private void drainSections(int maxPending) throws IOException {
+        while (pendingSections.size() > maxPending) {
+            Future<AdocFileSection> next = pendingSections.poll();
+            try {
+                writeSection(next.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + next);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
                 }
-                writer.write("....\n");
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Applies the filter, reads the file, removes any copyright block and runs the
+     * contextual search, or reuses the cached section if the file is unchanged.
+     * Safe to call from worker threads as it only reads shared state.
+     */
+    private AdocFileSection renderFile(Path path, BasicFileAttributes walkAttrs, AdocContextualSearch contextualSearch) {
+        if (budgetSelection != null && !budgetSelection.selected().contains(path)) {
+            // dropped to fit the token budget; checked before the cache, which may hold it from an earlier run
+            return AdocFileSection.filtered(path);
+        }
+        AdocFileSection planned = plannedSections.remove(path);
+        if (planned != null) {
+            // read and searched when planning the budget
+            return planned;
+        }
+        if (sectionCache == null) {
+            return readSection(path, walkAttrs, contextualSearch);
+        }
+        BasicFileAttributes attrs = walkAttrs;
+        if (attrs == null) {
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return readSection(path, null, contextualSearch);
+            }
+        }
+        AdocFileSection section = sectionCache.get(path, attrs);
+        if (section == null) {
+            section = readSection(path, attrs, contextualSearch);
+            sectionCache.put(path, attrs, section);
+        } else if (verbose) {
+            System.out.println("VERBOSE: Reusing cached section for unchanged file: " + path);
+        }
+        return section;
+    }
+
+    /**
+     * Renders a file without consulting the section cache.
+     */
+    private AdocFileSection readSection(Path path, BasicFileAttributes walkAttrs, AdocContextualSearch contextualSearch) {
+        try {
+            if (!accept(path, walkAttrs)) {
+                return AdocFileSection.filtered(path);
+            }
+            return readAccepted(path, walkAttrs, walkAttrs, contextualSearch);
+        } catch (IOException e) {
+            if (verbose) {
+                System.out.println("VERBOSE: Error processing file " + path + " (" + e.getMessage() + ")");
+            }
+            return AdocFileSection.skipped(path);
+        }
+    }
+
+    /**
+     * Reads and renders a file the filter has accepted, unless the trigram index shows it cannot match the search.
+     *
+     * @param attrs the attributes supplied by the walk or read since, or null if not known
+     */
+    private AdocFileSection readAccepted(Path path, BasicFileAttributes walkAttrs, BasicFileAttributes attrs,
+                                         AdocContextualSearch contextualSearch) throws IOException {
+        if (trigramQuery != null) {
+            if (attrs == null) {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            }
+            if (!trigramIndex.mayMatch(path, attrs, trigramQuery)) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Skipping file without the required trigrams: " + path);
+                }
+                journal(path, AdocJournal.Decision.NO_TRIGRAMS);
+                return AdocFileSection.filtered(path);
+            }
+        }
+
+        // Default behavior: include the entire file.
+        AdocFileReadEvent readEvent = new AdocFileReadEvent();
+        readEvent.begin();
+        long readStart = System.nanoTime();
+        byte[] bytes = Files.readAllBytes(path);
+        return renderBytes(path, walkAttrs, attrs, bytes, readStart, readEvent, contextualSearch);
+    }
+
+    /**
+     * Renders the content of a file read in full, once the filter has accepted it.
+     *
+     * @param attrs     the attributes supplied by the walk or read since, or null if not known
+     * @param readStart the {@link System#nanoTime()} reading the file started
+     */
+    private AdocFileSection renderBytes(Path path, BasicFileAttributes walkAttrs, BasicFileAttributes attrs, byte[] bytes,
+                                        long readStart, AdocFileReadEvent readEvent,
+                                        AdocContextualSearch contextualSearch) throws IOException {
+        long processStart = System.nanoTime();
+        if (isDeferredBinary(path, walkAttrs, bytes, bytes.length, true)) {
+            return AdocFileSection.filtered(path);
+        }
+        if (manifest != null && !incrementalMode) {
+            manifest.record(path, attrs != null ? attrs : Files.readAttributes(path, BasicFileAttributes.class), bytes);
+        }
+        long decodeStart = System.nanoTime();
+        List<String> lines = fileProcessor.readFileLines(bytes);
+        if (metrics != null) {
+            // reading and decoding, without the binary check and manifest in between
+            metrics.record(AdocMetrics.Stage.READ, processStart - readStart + System.nanoTime() - decodeStart);
+        }
+        if (trigramQuery != null) {
+            trigramIndex.update(path, attrs, bytes, lines);
+        }
+        int firstLine = 1;
+        if (removeCopyright) {
+            long copyrightStart = System.nanoTime();
+            List<String> lines2 = fileProcessor.maybeRemoveCopyright(lines);
+            record(AdocMetrics.Stage.COPYRIGHT, copyrightStart);
+            firstLine += lines.size() - lines2.size();
+            lines = lines2;
+        }
+
+        // If a search pattern is configured, perform a contextual search.
+        List<int[]> matches;
+        int[] hitCounts = null;
+        if (isSearching()) {
+            hitCounts = new int[searchPatterns.size()];
+            long searchStart = System.nanoTime();
+            matches = contextualSearch.searchFile(lines, hitCounts);
+            record(AdocMetrics.Stage.SEARCH, searchStart);
+            if (matches.isEmpty()) {
+                if (verbose) {
+                    System.out.println("VERBOSE: No matches found in file: " + path);
+                }
+                journal(path, AdocJournal.Decision.NO_MATCHES);
+                return AdocFileSection.filtered(path);
+            }
+        } else {
+            matches = List.of(new int[]{0, lines.size() - 1});
+        }
+        Path currentPath = Paths.get(".").toAbsolutePath().normalize();
+        Path relativePath = currentPath.relativize(path);
+        if (readEvent.shouldCommit()) {
+            readEvent.path = path.toString();
+            readEvent.bytes = bytes.length;
+            readEvent.commit();
+        }
+        return AdocFileSection.content(path, relativePath.toString(), lines, firstLine, matches, hitCounts,
+                bytes.length, processStart - readStart, System.nanoTime() - processStart);
+    }
+
+    /**
+     * Estimates the cost and priority of every eligible file and selects those to write.
+     * Files are only read when searching, to find their matches and hits; the sections rendered
+     * are kept for the files selected, so they are not read and searched again when written.
+     *
+     * @param gitListed the files listed by git that the run writes, or null to walk the input paths
+     */
+    private void planBudget(List<Path> gitListed) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (gitListed != null) {
+            for (Path file : gitListed) {
+                if (isWalked(file) && Files.exists(file)) {
+                    files.add(file);
+                }
+            }
+        } else {
+            for (Path inputPath : inputPaths) {
+                collectFiles(inputPath, files);
+            }
+        }
+        AdocContextualSearch contextualSearch = new AdocContextualSearch(searchPatterns, linesOfContext);
+        List<AdocBudgetPlanner.Candidate> candidates;
+        if (workerPool == null) {
+            candidates = files.stream()
+                    .map(file -> toCandidate(file, contextualSearch))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } else {
+            try {
+                candidates = workerPool.submit(() -> files.parallelStream()
+                        .map(file -> toCandidate(file, contextualSearch))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList())).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted planning the token budget");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        budgetSelection = budgetPlanner.select(candidates);
+        plannedSections.keySet().retainAll(budgetSelection.selected());
+        if (journal != null) {
+            for (AdocBudgetPlanner.Candidate candidate : budgetSelection.dropped()) {
+                journal.decision(candidate.path(), AdocJournal.Decision.BUDGET);
+            }
+        }
+        if (verbose) {
+            System.out.println("VERBOSE: Token budget selected " + budgetSelection.selected().size() + " of "
+                    + candidates.size() + " files, estimated " + budgetSelection.estimatedTokens() + " tokens.");
+        }
+    }
+
+    private void collectFiles(Path path, List<Path> files) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return skipDirectory(path, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // reported when the files are written
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Applies the filter and estimates the cost of a file; null if it is filtered out or
+     * has no search matches. When searching, the file is rendered as it will be written, after
+     * the trigram index has ruled out files that cannot match. A file that cannot be read costs
+     * nothing, so it is selected and then reported as skipped.
+     */
+    private AdocBudgetPlanner.Candidate toCandidate(Path path, AdocContextualSearch contextualSearch) {
+        BasicFileAttributes attrs = null;
+        try {
+            if (!accept(path, null)) {
+                return null;
+            }
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!isSearching()) {
+                long tokens = budgetPlanner.getTokenEstimator().estimate(AdocTokenEstimator.extensionOf(path), attrs.size())
+                        + AdocBudgetPlanner.FILE_OVERHEAD_TOKENS;
+                return budgetPlanner.candidate(path, attrs, tokens, 0);
+            }
+            AdocFileSection section;
+            try {
+                section = readAccepted(path, null, attrs, contextualSearch);
+            } catch (IOException e) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Error processing file " + path + " (" + e.getMessage() + ")");
+                }
+                section = AdocFileSection.skipped(path);
+            }
+            if (section.isSkipped()) {
+                plannedSections.put(path, section);
+                return budgetPlanner.candidate(path, attrs, 0, 0);
+            }
+            if (!section.hasContent()) {
+                // no required trigrams or no matches
+                return null;
+            }
+            plannedSections.put(path, section);
+            List<String> lines = section.lines();
+            StringBuilder text = new StringBuilder();
+            for (int[] match : section.matches()) {
                 for (int i = match[0]; i <= match[1]; i++) {
-                    writer.write(lines.get(i) + "\n");
+                    text.append(lines.get(i)).append('\n');
                 }
-                writer.write("....\n");
             }
+            long tokens = budgetPlanner.getTokenEstimator().estimate(AdocTokenEstimator.extensionOf(path), text)
+                    + AdocBudgetPlanner.FILE_OVERHEAD_TOKENS
+                    + (long) section.matches().size() * AdocBudgetPlanner.MATCH_OVERHEAD_TOKENS;
+            return budgetPlanner.candidate(path, attrs, tokens, Arrays.stream(section.hitCounts()).sum());
+        } catch (IOException e) {
+            return budgetPlanner.candidate(path, attrs, 0, 0);
+        }
+    }
 
-            // Summarize new lines, tokens
-            long dLines = stats.getDeltaLines();
-            long dTokens = stats.getDeltaTokens();
+    /**
+     * Applies the filter and, in incremental mode, the change check, or once a token
+     * budget has been planned, checks the file was selected.
+     */
+    private boolean accept(Path path, BasicFileAttributes walkAttrs) throws IOException {
+        if (budgetSelection != null) {
+            // already filtered when planning
+            return budgetSelection.selected().contains(path);
+        }
+        if (!(walkAttrs == null ? fileFilter.include(path) : fileFilter.include(path, walkAttrs))) {
+            if (verbose) {
+                System.out.println("VERBOSE: Skipping file (filtered out): " + path);
+            }
+            return false;
+        }
+        if (incrementalMode && !gitIncremental && !isModified(path, walkAttrs)) {
+            if (verbose) {
+                System.out.println("VERBOSE: Skipping unmodified file in incremental mode: " + path);
+            }
+            journal(path, AdocJournal.Decision.UNMODIFIED);
+            return false;
+        }
+        return true;
+    }
 
-            writer.write(String.format("Lines %d, Tokens %d\n\n", dLines, dTokens));
+    /**
+     * Streams a whole file from its reader to the writer; the output is the same as
+     * {@link #renderFile} followed by {@link #writeSection} without a search pattern.
+     * The file is read once, so it is only known to be valid UTF-8 once streamed: the decoder reports
+     * malformed input, and if the file turns out to be malformed or unreadable part way through, the
+     * block is closed after the lines already written and the file is listed as skipped, where a
+     * rendered file would be left out.
+     */
+    private void streamFile(Path path, BasicFileAttributes walkAttrs) {
+        boolean started = false;
+        try {
+            if (!accept(path, walkAttrs)) {
+                return;
+            }
+            boolean record = manifest != null && !incrementalMode;
+            AdocFileWriteEvent writeEvent = new AdocFileWriteEvent();
+            writeEvent.begin();
+            writeEvent.streamed = true;
+            long writeStart = System.nanoTime();
+            long size = journal == null && metrics == null && !writeEvent.isEnabled() ? 0
+                    : walkAttrs != null ? walkAttrs.size() : Files.size(path);
+            try (BufferedInputStream file = new BufferedInputStream(Files.newInputStream(path));
+                 DigestInputStream in = new DigestInputStream(file, ContentHash.digest());
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()))) {
+                // peek at the start of the file for the binary check, before anything is written
+                file.mark(AdocFileFilter.BINARY_CHECK_BYTES);
+                byte[] start = file.readNBytes(AdocFileFilter.BINARY_CHECK_BYTES);
+                file.reset();
+                // fewer bytes than asked for only at the end of the file
+                if (isDeferredBinary(path, walkAttrs, start, start.length, start.length < AdocFileFilter.BINARY_CHECK_BYTES)) {
+                    return;
+                }
+                in.on(record);
+                Path relativePath = Paths.get(".").toAbsolutePath().normalize().relativize(path);
+                writer.snapshotStats();
+                writer.beginSection(relativePath.toString());
+                writer.write("== File: " + relativePath + "\n");
+                writer.write("....\n");
+                started = true;
+                stats.beginSection();
+                fileProcessor.streamWithoutCopyright(reader, removeCopyright, line -> writer.write(line + "\n"));
+                stats.endSection();
+                writer.write("....\n");
+                started = false;
+                if (record) {
+                    BasicFileAttributes attrs = walkAttrs != null ? walkAttrs : Files.readAttributes(path, BasicFileAttributes.class);
+                    manifest.record(path, attrs, ContentHash.toHex(in.getMessageDigest().digest()));
+                }
+            }
+            // read, processed and written a line at a time, so the time is all in the write stage
+            writeFileStats(path, size, 0, 0, writeStart, writeEvent);
+            writer.endSection();
+        } catch (IOException e) {
             if (verbose) {
-                System.out.println("VERBOSE: Finished processing file: " + path +
-                        " (+" + dLines + " lines, +" + dTokens + " tokens)");
+                String reason = e instanceof CharacterCodingException ? "Input is not valid UTF-8" : e.getMessage();
+                System.out.println("VERBOSE: Error processing file " + path + " (" + reason + ")");
+            }
+            if (started) {
+                stats.endSection();
+                writer.write("....\n\n");
+                writer.endSection();
+            }
+            journal(path, AdocJournal.Decision.ERROR);
+            skippedFiles.add(path.toString());
+        }
+    }
+
+    /**
+     * Copies a file needing no transformation straight to the writer; the output is the same as
+     * {@link #renderFile} followed by {@link #writeSection} without a search pattern. The file is
+     * read once, to check it is verbatim and to look up its counts in the token cache, then copied
+     * from its channel with {@link AdocDocumentWriter#transferSection}. Any other file is rendered
+     * from the bytes already read.
+     */
+    private void transferFile(Path path, BasicFileAttributes walkAttrs) {
+        boolean started = false;
+        try {
+            if (!accept(path, walkAttrs)) {
+                return;
+            }
+            AdocFileReadEvent readEvent = new AdocFileReadEvent();
+            readEvent.begin();
+            long readStart = System.nanoTime();
+            try (FileChannel in = FileChannel.open(path)) {
+                byte[] bytes = readFully(in);
+                if (!fileProcessor.isVerbatim(bytes, removeCopyright)) {
+                    writeSection(renderBytes(path, walkAttrs, walkAttrs, bytes, readStart, readEvent, null));
+                    return;
+                }
+                long processStart = System.nanoTime();
+                if (isDeferredBinary(path, walkAttrs, bytes, bytes.length, true)) {
+                    return;
+                }
+                if (manifest != null && !incrementalMode) {
+                    manifest.record(path, walkAttrs != null ? walkAttrs : Files.readAttributes(path, BasicFileAttributes.class), bytes);
+                }
+                if (metrics != null) {
+                    // reading and the verbatim check, which replaces decoding
+                    metrics.record(AdocMetrics.Stage.READ, System.nanoTime() - readStart);
+                }
+                if (readEvent.shouldCommit()) {
+                    readEvent.path = path.toString();
+                    readEvent.bytes = bytes.length;
+                    readEvent.commit();
+                }
+                AdocFileWriteEvent writeEvent = new AdocFileWriteEvent();
+                writeEvent.begin();
+                long writeStart = System.nanoTime();
+                Path relativePath = Paths.get(".").toAbsolutePath().normalize().relativize(path);
+                writer.snapshotStats();
+                writer.beginSection(relativePath.toString());
+                writer.write("== File: " + relativePath + "\n");
+                writer.write("....\n");
+                started = true;
+                writer.transferSection(in, bytes);
+                writer.write("....\n");
+                started = false;
+                writeFileStats(path, bytes.length, processStart - readStart, writeStart - processStart, writeStart, writeEvent);
+                writer.endSection();
             }
         } catch (IOException e) {
             if (verbose) {
                 System.out.println("VERBOSE: Error processing file " + path + " (" + e.getMessage() + ")");
             }
+            if (started) {
+                writer.write("....\n\n");
+                writer.endSection();
+            }
+            journal(path, AdocJournal.Decision.ERROR);
             skippedFiles.add(path.toString());
         }
     }
+
+    /**
+     * Reads the whole of a channel from its current position.
+     */
+    private static byte[] readFully(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large to read: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+            // until full or the file ends early
+        }
+        return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Decides whether a file has changed since the context file was written, using the
+     * manifest when it is populated and the context file's modification time otherwise.
+     */
+    private boolean isModified(Path path, BasicFileAttributes walkAttrs) throws IOException {
+        if (manifestIncremental) {
+            BasicFileAttributes attrs = walkAttrs != null ? walkAttrs : Files.readAttributes(path, BasicFileAttributes.class);
+            AdocManifest.Change change = manifest.compare(path, attrs);
+            if (verbose && change != AdocManifest.Change.UNCHANGED) {
+                System.out.println("VERBOSE: " + change + " file in incremental mode: " + path);
+            }
+            return change != AdocManifest.Change.UNCHANGED;
+        }
+        long fileLastMod = walkAttrs != null ? walkAttrs.lastModifiedTime().toMillis() : Files.getLastModifiedTime(path).toMillis();
+        return fileLastMod > contextFileLastModified;
+    }
+
+    /**
+     * Makes the binary check left to the reader when the file was filtered with the attributes
+     * from the walk, using the bytes already read.
+     *
+     * @param walkAttrs the attributes supplied by the walk, or null if the filter has made the check
+     * @param whole     true if the bytes are the whole file rather than its start
+     */
+    private boolean isDeferredBinary(Path path, BasicFileAttributes walkAttrs, byte[] start, int length, boolean whole) {
+        if (walkAttrs == null || budgetSelection != null || fileFilter.isExplicitlyIncluded(path.toAbsolutePath().normalize())
+                || !fileFilter.isBinary(start, length, whole)) {
+            return false;
+        }
+        if (verbose) {
+            System.out.println("VERBOSE: Skipping binary file: " + path);
+        }
+        journal(path, AdocJournal.Decision.BINARY);
+        return true;
+    }
+
+    /**
+     * Writes a rendered section; always called from the thread running {@link #execute()}.
+     */
+    private void writeSection(AdocFileSection section) {
+        if (section.isSkipped()) {
+            journal(section.path(), AdocJournal.Decision.ERROR);
+            skippedFiles.add(section.path().toString());
+            return;
+        }
+        if (!section.hasContent()) {
+            return;
+        }
+        AdocFileWriteEvent writeEvent = new AdocFileWriteEvent();
+        writeEvent.begin();
+        long start = System.nanoTime();
+        List<String> lines = section.lines();
+        int firstLine = section.firstLine();
+        writer.snapshotStats();
+        writer.beginSection(section.relativePath());
+        writer.write("== File: " + section.relativePath() + "\n");
+        for (int[] match : section.matches()) {
+            if (match[0] != 0 || match[1] != lines.size() - 1) {
+                writer.write("\n.lines [" + (match[0] + firstLine) + ", " + (match[1] + firstLine) + "]\n");
+            }
+            writer.write("....\n");
+            StringBuilder content = new StringBuilder();
+            for (int i = match[0]; i <= match[1]; i++) {
+                content.append(lines.get(i)).append('\n');
+            }
+            long tokensBefore = stats.getTotalTokens();
+            writer.writeSection(content.toString());
+            if (tokenEstimator != null) {
+                tokenEstimator.observe(AdocTokenEstimator.extensionOf(section.path()), content,
+                        stats.getTotalTokens() - tokensBefore);
+            }
+            writer.write("....\n");
+        }
+        if (totalHits != null) {
+            writeHits(section.hitCounts());
+        }
+
+        writeFileStats(section.path(), section.bytes(), section.readNanos(), section.processNanos(), start, writeEvent);
+        writer.endSection();
+    }
+
+    /**
+     * Writes the hits of each pattern found in a file, and adds them to the totals.
+     */
+    private void writeHits(int[] hitCounts) {
+        StringBuilder sb = new StringBuilder("Hits:");
+        String sep = " ";
+        for (int i = 0; i < hitCounts.length; i++) {
+            totalHits[i] += hitCounts[i];
+            if (hitCounts[i] > 0) {
+                sb.append(sep).append(searchPatterns.get(i)).append(' ').append(hitCounts[i]);
+                sep = ", ";
+            }
+        }
+        writer.write(sb.append('\n').toString());
+    }
+
+    /**
+     * Writes the line and token summary at the end of each file section, and records the file in the journal;
+     * the caller then ends the section.
+     *
+     * @param writeStart the {@link System#nanoTime()} the write stage started
+     * @param writeEvent the Flight Recorder event begun with the write stage
+     */
+    private void writeFileStats(Path path, long bytes, long readNanos, long processNanos, long writeStart,
+                                AdocFileWriteEvent writeEvent) {
+        // Summarize new lines, tokens
+        long dLines = stats.getDeltaLines();
+        long dTokens = stats.getDeltaTokens();
+
+        writer.write(String.format("Lines %d, Tokens %d\n\n", dLines, dTokens));
+        if (journal != null) {
+            journal.file(path, bytes, dLines, dTokens, readNanos, processNanos, System.nanoTime() - writeStart);
+        }
+        if (metrics != null) {
+            metrics.fileWritten(bytes);
+        }
+        filesWritten++;
+        if (writeEvent.shouldCommit()) {
+            writeEvent.path = path.toString();
+            writeEvent.bytes = bytes;
+            writeEvent.lines = dLines;
+            writeEvent.tokens = dTokens;
+            writeEvent.commit();
+        }
+        if (verbose) {
+            System.out.println("VERBOSE: Finished processing file: " + path +
+                    " (+" + dLines + " lines, +" + dTokens + " tokens)");
+        }
+    }
 }
@@ -4,6 +4,9 @@ import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingType;
 
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
 /**
  * Tracks the total number of lines and GPT-like tokens.
  *
@@ -15,13 +18,32 @@ import com.knuddels.jtokkit.api.EncodingType;
  *
  * <p>The class also provides snapshot/delta functionality so that clients can measure changes
  * (for example, per-file statistics) relative to a snapshot.</p>
+ *
+ * <p>Whole sections of file content can be counted with {@link #updateSectionStats(String)}. When an
+ * {@link AdocTokenCache} is set, sections whose content has been counted before are looked up by
+ * content hash rather than tokenized again.</p>
+ *
+ * <p>By default tokens are counted one line at a time. With {@link #setSectionBatching(boolean)} a
+ * section is tokenized in as few calls as possible, each covering up to {@link #BATCH_CHARS} characters
+ * of whole lines, avoiding the per-call overhead of the encoder. Batched counts are exact for the text
+ * as a whole, but may differ slightly from per-line counts where a token spans a line break, so the
+ * two modes keep separate entries in the token cache.</p>
  */
 public class AdocDocumentStats {
 
     private static final Encoding ENCODER =
             Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.O200K_BASE);
 
+    /**
+     * The largest piece of text passed to the encoder at once in batching mode, unless a single line is longer.
+     */
+    static final int BATCH_CHARS = 64 << 10;
+
     private final StringBuilder lineBuffer = new StringBuilder();
+    private AdocTokenCache tokenCache;
+    private AdocMetrics metrics;
+    private boolean sectionBatching;
+    private boolean inSection;
 
     private long totalLines;
     private long totalTokens;
@@ -42,6 +64,9 @@ public class AdocDocumentStats {
             return;
         }
         lineBuffer.append(text);
+        if (inSection && lineBuffer.length() < BATCH_CHARS) {
+            return;
+        }
         if (containsNewline(text)) {
             String chunk = lineBuffer.toString();
             processChunk(chunk);
@@ -49,6 +74,104 @@ public class AdocDocumentStats {
         }
     }
 
+    /**
+     * Starts a section written a line at a time, e.g. a streamed file. In batching mode the
+     * lines are accumulated and tokenized together at {@link #endSection()}, or whenever
+     * {@link #BATCH_CHARS} characters have built up; otherwise this has no effect.
+     */
+    public void beginSection() {
+        if (sectionBatching) {
+            flush();
+            inSection = true;
+        }
+    }
+
+    /**
+     * Ends a section started with {@link #beginSection()}, counting any accumulated text.
+     */
+    public void endSection() {
+        if (inSection) {
+            inSection = false;
+            flush();
+        }
+    }
+
+    /**
+     * Counts a complete section of content, such as the body of a file. The totals are the same
+     * as calling {@link #updateStats(String)} once per line, but if a token cache is set and the
+     * content has been seen before, its counts are taken from the cache without tokenizing.
+     *
+     * @param content the section content, normally ending with a newline
+     */
+    public void updateSectionStats(String content) {
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        if (tokenCache == null || lineBuffer.length() > 0 || !content.endsWith("\n")) {
+            countSection(content);
+            return;
+        }
+        countSection(AdocTokenCache.keyFor(cacheEncoding(), content), () -> content);
+    }
+
+    /**
+     * Counts a complete section of content held as UTF-8 bytes, as {@link #updateSectionStats(String)}
+     * does. On a token cache hit the content is never decoded.
+     *
+     * @param content the section content as valid UTF-8, normally ending with a newline
+     */
+    public void updateSectionStats(byte[] content) {
+        if (content == null || content.length == 0) {
+            return;
+        }
+        if (tokenCache == null || lineBuffer.length() > 0 || content[content.length - 1] != '\n') {
+            countSection(new String(content, StandardCharsets.UTF_8));
+            return;
+        }
+        countSection(AdocTokenCache.keyFor(cacheEncoding(), content), () -> new String(content, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Selects whether sections are tokenized in large batches rather than one line at a time.
+     *
+     * @param sectionBatching true to batch
+     */
+    public void setSectionBatching(boolean sectionBatching) {
+        this.sectionBatching = sectionBatching;
+    }
+
+    /**
+     * @return true if sections are tokenized in large batches
+     */
+    public boolean isSectionBatching() {
+        return sectionBatching;
+    }
+
+    /**
+     * Sets the cache used by {@link #updateSectionStats(String)}.
+     *
+     * @param tokenCache the cache, or null to always tokenize
+     */
+    public void setTokenCache(AdocTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * Sets metrics to record the time spent tokenizing.
+     *
+     * @param metrics the metrics, or null
+     */
+    public void setMetrics(AdocMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the token cache, or null if none is set
+     */
+    public AdocTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
     /**
      * Takes a snapshot of the current total line and token counts.
      */
@@ -85,6 +208,87 @@ public class AdocDocumentStats {
         return totalTokens - previousTokens;
     }
 
+    /**
+     * The encoding name in token cache keys; batched and per-line counts are cached separately.
+     */
+    private String cacheEncoding() {
+        return sectionBatching ? ENCODER.getName() + "/batch" : ENCODER.getName();
+    }
+
+    /**
+     * Takes the counts of a section from the token cache, or counts it and stores them.
+     */
+    private void countSection(String key, Supplier<String> content) {
+        long packed = tokenCache.lookup(key);
+        if (packed != AdocTokenCache.NOT_FOUND) {
+            totalLines += AdocTokenCache.lines(packed);
+            totalTokens += AdocTokenCache.tokens(packed);
+            return;
+        }
+        long linesBefore = totalLines;
+        long tokensBefore = totalTokens;
+        countSection(content.get());
+        tokenCache.store(key, totalLines - linesBefore, totalTokens - tokensBefore);
+    }
+
+    /**
+     * Counts section content by line, or in batches of whole lines in batching mode.
+     */
+    private void countSection(String content) {
+        if (!sectionBatching || lineBuffer.length() > 0) {
+            updateStatsByLine(content);
+            return;
+        }
+        int start = 0;
+        while (content.length() - start > BATCH_CHARS) {
+            int end = content.lastIndexOf('\n', start + BATCH_CHARS - 1);
+            if (end < start) {
+                // a single line longer than a batch
+                end = content.indexOf('\n', start + BATCH_CHARS);
+                if (end < 0) {
+                    break;
+                }
+            }
+            processChunk(content.substring(start, end + 1));
+            start = end + 1;
+        }
+        String rest = start == 0 ? content : content.substring(start);
+        if (rest.endsWith("\n")) {
+            processChunk(rest);
+        } else {
+            updateStats(rest);
+        }
+    }
+
+    /**
+     * Counts any complete lines held in the buffer.
+     */
+    private void flush() {
+        int end = lineBuffer.lastIndexOf("\n");
+        if (end < 0) {
+            return;
+        }
+        processChunk(lineBuffer.substring(0, end + 1));
+        lineBuffer.delete(0, end + 1);
+    }
+
+    /**
+     * Passes the text to {@link #updateStats(String)} one line at a time.
+     *
+     * @param text the text to count
+     */
+    private void updateStatsByLine(String text) {
+        int start = 0;
+        int end;
+        while ((end = text.indexOf('\n', start)) >= 0) {
+            updateStats(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            updateStats(text.substring(start));
+        }
+    }
+
     /**
      * Processes a complete chunk of text by counting newlines and tokens.
      *
@@ -92,7 +296,11 @@ public class AdocDocumentStats {
      */
     private void processChunk(String chunk) {
         countTotalLines(chunk);
+        long start = metrics == null ? 0 : System.nanoTime();
         long chunkTokens = ENCODER.countTokens(chunk);
+        if (metrics != null) {
+            metrics.recordSince(AdocMetrics.Stage.TOKENIZE, start);
+        }
         totalTokens += chunkTokens;
     }
 
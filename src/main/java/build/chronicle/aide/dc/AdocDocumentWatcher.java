@@ -0,0 +1,288 @@
+package build.chronicle.aide.dc;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps a context file up to date in a long-running process, regenerating it whenever
+ * a file under the input paths changes.
+ *
+ * <p>The JVM, the tokenizer encoding and the file filter are set up once. Rendered sections
+ * are kept in an {@link AdocSectionCache}, so each regeneration only reads the files that
+ * changed, and unchanged content is counted from the token cache of the engine's stats.
+ * Every regeneration is a full run written to a temporary file, which then atomically
+ * replaces the context file, so readers never see a partial file.</p>
+ *
+ * <p>Changes are detected with a {@link WatchService} registered on every directory under
+ * the input paths that the filter would walk, so excluded trees such as {@code .git},
+ * {@code target} or {@code node_modules} are not watched. Events for files the filter excludes,
+ * and which were not written last time, are dropped. Events arriving within
+ * {@link #DEBOUNCE_MILLIS} of each other, such as an editor saving several files, are handled
+ * as one change. A change to an {@code aide.ignore} or {@code .gitignore} file rebuilds the
+ * filter, clears the section cache and registers the directories again.</p>
+ */
+public class AdocDocumentWatcher implements AutoCloseable {
+
+    /**
+     * How long to wait for further events before regenerating.
+     */
+    static final long DEBOUNCE_MILLIS = 50;
+
+    private final Supplier<AdocFileFilter> filterFactory;
+    private final Function<AdocFileFilter, AdocDocumentEngine> engineFactory;
+    private final Path contextFile;
+    private final Path tempFile;
+    private final Path headFile;
+    private final List<Path> inputPaths = new ArrayList<>();
+    private final Set<Path> ignoredPaths = new HashSet<>();
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private final AdocSectionCache sectionCache = new AdocSectionCache();
+    private final WatchService watchService;
+    private AdocFileFilter fileFilter;
+    private boolean verbose;
+    private volatile int regenerations;
+
+    /**
+     * Creates a watcher.
+     *
+     * @param filterFactory creates the file filter, again whenever an ignore file changes
+     * @param engineFactory creates a configured engine for each regeneration, using the given filter
+     * @param contextFile   the context file to keep up to date
+     * @throws IOException if the watch service cannot be created
+     */
+    public AdocDocumentWatcher(Supplier<AdocFileFilter> filterFactory,
+                               Function<AdocFileFilter, AdocDocumentEngine> engineFactory,
+                               Path contextFile) throws IOException {
+        this.filterFactory = filterFactory;
+        this.engineFactory = engineFactory;
+        this.contextFile = contextFile.toAbsolutePath().normalize();
+        this.tempFile = Path.of(this.contextFile + ".tmp");
+        this.headFile = Path.of(this.contextFile + ".head");
+        this.fileFilter = filterFactory.get();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        ignorePath(this.contextFile);
+        ignorePath(tempFile);
+        ignorePath(headFile);
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public void addInputPath(String pathStr) {
+        if (pathStr == null || pathStr.isEmpty()) {
+            return;
+        }
+        inputPaths.add(Paths.get(pathStr).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Ignores changes to a file written by the process itself, e.g. a token cache or manifest,
+     * or to any file in such a directory, e.g. a journal.
+     *
+     * @param path the file or directory to ignore
+     */
+    public void ignorePath(Path path) {
+        ignoredPaths.add(path.toAbsolutePath().normalize());
+    }
+
+    private boolean isIgnored(Path path) {
+        for (Path ignored : ignoredPaths) {
+            if (path.startsWith(ignored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of times the context file has been generated
+     */
+    public int getRegenerations() {
+        return regenerations;
+    }
+
+    /**
+     * Generates the context file, then regenerates it after each change until the
+     * thread is interrupted or the watcher is closed.
+     *
+     * @throws IOException if generating the context file fails
+     */
+    public void run() throws IOException {
+        registerInputPaths();
+        regenerate();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                do {
+                    changed |= handle(key);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                if (changed) {
+                    regenerate();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed by another thread
+        }
+    }
+
+    /**
+     * Writes the context file with a new engine, reusing any cached sections.
+     *
+     * @throws IOException if generating the context file fails
+     */
+    public void regenerate() throws IOException {
+        long start = System.nanoTime();
+        Files.deleteIfExists(tempFile);
+        AdocDocumentEngine engine = engineFactory.apply(fileFilter);
+        engine.setContextAsciidoc(tempFile.toString());
+        // the head belongs to the context file the temporary file replaces
+        engine.setGitHeadFile(headFile);
+        engine.setSectionCache(sectionCache);
+        for (Path inputPath : inputPaths) {
+            engine.addInputPath(inputPath.toString());
+        }
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        Files.move(tempFile, contextFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        regenerations++;
+        System.out.printf("Regenerated %s in %d ms%n", contextFile, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Stops watching; a thread blocked in {@link #run()} returns.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Invalidates the cached sections affected by the events of a key.
+     *
+     * @return true if anything other than an ignored path changed
+     */
+    private boolean handle(WatchKey key) throws IOException {
+        boolean changed = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Watch events overflowed; clearing the section cache.");
+                }
+                sectionCache.clear();
+                changed = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (isIgnored(path)) {
+                continue;
+            }
+            String name = path.getFileName().toString();
+            boolean ignoreFile = name.equals("aide.ignore") || name.equals(".gitignore");
+            if (!ignoreFile && !isRelevant(path)) {
+                if (verbose) {
+                    System.out.println("VERBOSE: Ignoring " + event.kind().name() + " of excluded path: " + path);
+                }
+                continue;
+            }
+            if (verbose) {
+                System.out.println("VERBOSE: " + event.kind().name() + ": " + path);
+            }
+            changed = true;
+            if (ignoreFile) {
+                fileFilter = filterFactory.get();
+                sectionCache.clear();
+                registerInputPaths();
+                continue;
+            }
+            sectionCache.invalidate(path);
+            if (name.endsWith(".ad")) {
+                fileFilter.clearDirectoryListings();
+                // the file this summary overshadows
+                sectionCache.invalidate(Path.of(path.toString().substring(0, path.toString().length() - 3)));
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                register(path);
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Checks whether a changed path can affect the context file: either it was written last time,
+     * or the filter now accepts it, by name and size for a file or as a directory to walk.
+     */
+    private boolean isRelevant(Path path) {
+        if (sectionCache.contains(path)) {
+            return true;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            // deleted, and nothing was written from it
+            return false;
+        }
+        return attrs.isDirectory() ? fileFilter.includeDirectory(path) : fileFilter.include(path, attrs);
+    }
+
+    /**
+     * Registers the directories under the input paths the current filter would walk, replacing any
+     * registered with an earlier filter.
+     */
+    private void registerInputPaths() throws IOException {
+        for (WatchKey key : watchKeys.values()) {
+            key.cancel();
+        }
+        watchKeys.clear();
+        for (Path inputPath : inputPaths) {
+            register(Files.isDirectory(inputPath) ? inputPath : inputPath.getParent());
+        }
+    }
+
+    /**
+     * Registers a directory and the subdirectories under it the filter would walk with the watch service.
+     */
+    private void register(Path root) throws IOException {
+        if (root == null || !Files.isDirectory(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && !fileFilter.includeDirectory(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchKeys.put(dir, dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -3,6 +3,8 @@ package build.chronicle.aide.dc;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Writes text to the current output file and updates statistics accordingly.
@@ -14,6 +16,7 @@ public class AdocDocumentWriter {
 
     private final AdocDocumentStats stats;
     private PrintWriter currentWriter;
+    private AdocMetrics metrics;
 
     /**
      * Constructs a writer with a reference to the stats for counting lines and tokens.
@@ -24,6 +27,15 @@ public class AdocDocumentWriter {
         this.stats = stats;
     }
 
+    /**
+     * Sets metrics to record the time spent writing, excluding the time counting tokens.
+     *
+     * @param metrics the metrics, or null
+     */
+    public void setMetrics(AdocMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Opens or creates the output file for writing.
      *
@@ -47,11 +59,103 @@ public class AdocDocumentWriter {
      * @throws IllegalStateException if no file is open for writing
      */
     public void write(String text) {
+        timedAppend(text);
+        stats.updateStats(text);
+    }
+
+    /**
+     * Writes a complete section of content, such as the body of a file, and counts it as one
+     * unit so its statistics can be served from a token cache.
+     *
+     * @param content the text to write
+     * @throws IllegalStateException if no file is open for writing
+     */
+    public void writeSection(String content) {
+        timedAppend(content);
+        stats.updateSectionStats(content);
+    }
+
+    /**
+     * Copies a complete section of content, such as the body of a file, from a channel and counts
+     * it as {@link #writeSection(String)} would. The caller has already read the content, e.g. to
+     * check it needs no transformation, so its counts can be served from a token cache without
+     * decoding it.
+     *
+     * @param source  the channel to copy from, holding the content from position 0
+     * @param content the same bytes as the channel, which must be valid UTF-8
+     * @throws IOException           if the channel cannot be read
+     * @throws IllegalStateException if no file is open for writing
+     */
+    public void transferSection(FileChannel source, byte[] content) throws IOException {
+        if (metrics == null) {
+            transfer(source, content);
+        } else {
+            long start = System.nanoTime();
+            transfer(source, content);
+            metrics.recordSince(AdocMetrics.Stage.WRITE, start);
+        }
+        stats.updateSectionStats(content);
+    }
+
+    /**
+     * @return true if {@link #transferSection} copies the channel without decoding it; only then is a
+     * file needing no transformation worth copying rather than writing as text.
+     * This writer decodes the content, so returns false.
+     */
+    public boolean canTransfer() {
+        return false;
+    }
+
+    private void timedAppend(String text) {
+        if (metrics == null) {
+            append(text);
+            return;
+        }
+        long start = System.nanoTime();
+        append(text);
+        metrics.recordSince(AdocMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Marks the start of a file section, written until the next {@link #endSection()}.
+     * This writer does nothing; see {@link AdocShardedDocumentWriter}, which keeps sections whole.
+     *
+     * @param name the relative path of the file in the section
+     */
+    public void beginSection(String name) {
+    }
+
+    /**
+     * Marks the end of a file section; a point at which buffered output may be flushed.
+     * This writer leaves flushing to the underlying {@link PrintWriter}.
+     */
+    public void endSection() {
+    }
+
+    /**
+     * Writes text to the open file without updating the statistics.
+     *
+     * @param text the text to write
+     * @throws IllegalStateException if no file is open for writing
+     */
+    protected void append(String text) {
         if (currentWriter == null) {
             throw new IllegalStateException("No file is open for writing.");
         }
         currentWriter.print(text);
-        stats.updateStats(text);
+    }
+
+    /**
+     * Writes the content of a channel to the open file without updating the statistics.
+     * This writer decodes the content and writes it as text.
+     *
+     * @param source  the channel to copy from
+     * @param content the same bytes as the channel
+     * @throws IOException           if the channel cannot be read
+     * @throws IllegalStateException if no file is open for writing
+     */
+    protected void transfer(FileChannel source, byte[] content) throws IOException {
+        append(new String(content, StandardCharsets.UTF_8));
     }
 
     /**
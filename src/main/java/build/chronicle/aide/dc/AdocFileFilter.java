@@ -2,13 +2,24 @@ package build.chronicle.aide.dc;
 
 import build.chronicle.aide.util.GitignoreFilter;
 import build.chronicle.aide.util.GitignoreFilter.MatchResult;
+import build.chronicle.aide.util.GitignoreHierarchy;
+import build.chronicle.aide.util.IgnoreRules;
+import build.chronicle.aide.util.Utf8Validator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * AdocFileFilter encapsulates the rules for including or excluding files in
@@ -18,18 +29,26 @@ import java.util.List;
  *
  * <p>When the -Dverbose option is enabled, extra log messages are printed to aid debugging.</p>
  * <p>See the updated adoc-file-filter.adoc for further details.</p>
+ * <p>While walking a tree, {@link #include(Path, BasicFileAttributes)} makes the same checks with the
+ * attributes supplied by the walk, and leaves the binary check to the reader, which has the bytes anyway.
+ * The number of file system calls made by the filter is counted (see {@link #getFileSystemCalls()}).</p>
  *
  * <h2>Key Steps in {@link #include(Path)}</h2>
  * <ol>
  *   <li>Check if path is a directory (skip)</li>
- *   <li>Check .gitignore/aide.ignore (via {@link GitignoreFilter})</li>
+ *   <li>Check .gitignore/aide.ignore (via {@link GitignoreFilter}, or every ignore file in the
+ *   working tree via {@link GitignoreHierarchy})</li>
  *   <li>Skip hidden or dot files</li>
  *   <li>Skip if overshadowed by .ad</li>
  *   <li>Skip known file extensions (e.g. .asciidoc, images, etc.)</li>
  *   <li>Skip files beginning with "out-" prefix</li>
- *   <li>Skip large files (>128 KB, configable with -Dlarge=N in KiB)</li>
- *   <li>Skip files detected as binary (using a heuristic based on invalid UTF‑8 text)</li>
+ *   <li>Skip large files (>128 KB, configable with -Dlarge=N in KiB), or files whose estimated
+ *   tokens exceed a limit (see {@link #setMaxFileTokens(long, AdocTokenEstimator)})</li>
+ *   <li>Skip files detected as binary (using a heuristic based on invalid UTF‑8 text, or full
+ *   UTF-8 validation, see {@link #setBinaryCheck(BinaryCheck)})</li>
  * </ol>
+ * <p>With a journal set (see {@link #setJournal(AdocJournal)}), the step that excluded each file is recorded.
+ * Every decision is also emitted as an {@link AdocDecisionEvent} while Flight Recorder is recording.</p>
  */
 public class AdocFileFilter {
 
@@ -40,6 +59,9 @@ public class AdocFileFilter {
      * Note: Summary files have a ".ad" extension and are not excluded.
      */
     private static final List<String> SKIP_EXTENSIONS = new ArrayList<>();
+    // Bytes at the start of a file checked for binary content
+    static final int BINARY_CHECK_BYTES = 1024;
+    private static final ThreadLocal<byte[]> SAMPLE_BUFFER = ThreadLocal.withInitial(() -> new byte[BINARY_CHECK_BYTES]);
 
     static {
         SKIP_EXTENSIONS.add(".asciidoc");
@@ -50,6 +72,9 @@ public class AdocFileFilter {
         SKIP_EXTENSIONS.add(".pdf");
         SKIP_EXTENSIONS.add(".class");
         SKIP_EXTENSIONS.add(".ignore");
+        // written next to the output: the git HEAD of a full run, and the index of a sharded output
+        SKIP_EXTENSIONS.add(".asciidoc.head");
+        SKIP_EXTENSIONS.add(".asciidoc.index");
 
         // Mark control characters as invalid (0x00-0x1F)...
         for (int i = 0; i < 32; i++) {
@@ -77,8 +102,35 @@ public class AdocFileFilter {
     /**
      * Manages .gitignore / aide.ignore logic. May be null if no file is provided or parsing fails.
      */
-    private final GitignoreFilter gitignoreFilter;
+    private IgnoreRules gitignoreFilter;
+    // Names of the .ad files in each directory, listed once
+    private final Map<Path, Set<String>> companionListings = new ConcurrentHashMap<>();
+    private final LongAdder fileSystemCalls = new LongAdder();
     private final boolean verbose;
+    /**
+     * Optional limit on the estimated tokens of a file; 0 for no limit.
+     */
+    private long maxFileTokens;
+    private AdocTokenEstimator tokenEstimator;
+    private BinaryCheck binaryCheck = BinaryCheck.SAMPLE;
+    // Records the rule that excluded each file, or null
+    private AdocJournal journal;
+    private AdocMetrics metrics;
+
+    /**
+     * How files are checked for binary content.
+     */
+    public enum BinaryCheck {
+        /**
+         * Look for control characters and bytes never found in UTF-8 in the first 1KB.
+         */
+        SAMPLE,
+        /**
+         * Validate the whole file as UTF-8 text with {@link Utf8Validator}, so a file that would
+         * fail to decode is excluded rather than listed as skipped.
+         */
+        UTF8
+    }
 
     /**
      * Constructs an AdocFileFilter, optionally parsing a .gitignore or aide.ignore file.
@@ -104,6 +156,96 @@ public class AdocFileFilter {
         this.gitignoreFilter = gf;
     }
 
+    /**
+     * Replaces the ignore rules, e.g. with a {@link GitignoreHierarchy} applying every ignore file
+     * in the working tree rather than a single one.
+     *
+     * @param ignoreRules the ignore rules; may be null.
+     */
+    public void setIgnoreRules(IgnoreRules ignoreRules) {
+        this.gitignoreFilter = ignoreRules;
+    }
+
+    /**
+     * Selects how files are checked for binary content.
+     *
+     * @param binaryCheck the check, {@link BinaryCheck#SAMPLE} by default
+     */
+    public void setBinaryCheck(BinaryCheck binaryCheck) {
+        this.binaryCheck = binaryCheck;
+    }
+
+    /**
+     * Records the rule that excluded each file or directory in a journal.
+     *
+     * @param journal the journal, or null
+     */
+    public void setJournal(AdocJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets metrics to record the time spent filtering and checking for binary content.
+     *
+     * @param metrics the metrics, or null
+     */
+    public void setMetrics(AdocMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Excludes files whose estimated token count, from their size and extension, exceeds a limit.
+     * The estimate needs no read, so the check is as cheap as the size check.
+     *
+     * @param maxFileTokens  the most tokens a file may have, or 0 for no limit
+     * @param tokenEstimator the estimator to use
+     */
+    public void setMaxFileTokens(long maxFileTokens, AdocTokenEstimator tokenEstimator) {
+        this.maxFileTokens = maxFileTokens;
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * Determines whether a directory should be walked at all, so a whole subtree can be skipped
+     * rather than filtering each file within it.
+     * <ul>
+     *   <li>A directory excluded by the ignore rules is skipped; as in git, files within it cannot be
+     *   included again.</li>
+     *   <li>A directory explicitly included by the ignore rules is walked.</li>
+     *   <li>A hidden directory is skipped, unless a negation rule might include a file within it.
+     *   {@code .git} is always skipped.</li>
+     * </ul>
+     * Files in a walked directory are still checked with {@link #include(Path)}.
+     *
+     * @param dir the directory
+     * @return true if the directory should be walked
+     */
+    public boolean includeDirectory(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        if (gitignoreFilter != null) {
+            MatchResult matchResult = gitignoreFilter.isExcluded(normalized, true);
+            if (matchResult == MatchResult.IGNORED) {
+                if (isVerbose()) {
+                    System.out.println("VERBOSE: Skipping directory excluded by ignore file: " + normalized);
+                }
+                return excluded(normalized, AdocJournal.Decision.IGNORED_DIRECTORY);
+            }
+            if (matchResult == MatchResult.NOT_IGNORED) {
+                return true;
+            }
+        }
+        Path fileName = normalized.getFileName();
+        String name = fileName == null ? "" : fileName.toString();
+        if (name.startsWith(".")
+                && (name.equals(".git") || gitignoreFilter == null || !gitignoreFilter.mayReinclude(normalized))) {
+            if (isVerbose()) {
+                System.out.println("VERBOSE: Skipping hidden directory: " + normalized);
+            }
+            return excluded(normalized, AdocJournal.Decision.HIDDEN_DIRECTORY);
+        }
+        return true;
+    }
+
     /**
      * Determines whether a given file should be included based on
      * .gitignore/aide.ignore patterns and local skip logic.
@@ -112,13 +254,63 @@ public class AdocFileFilter {
      * @return true if this file is accepted for processing, false otherwise
      */
     public boolean include(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        BasicFileAttributes attrs;
+        try {
+            fileSystemCalls.increment();
+            attrs = Files.readAttributes(normalized, BasicFileAttributes.class);
+        } catch (IOException e) {
+            if (isVerbose()) {
+                System.out.println("VERBOSE: Excluding file due to attribute read error: " + normalized);
+            }
+            return excluded(normalized, AdocJournal.Decision.ERROR);
+        }
+        if (!include(normalized, attrs)) {
+            return false;
+        }
+        // 8) Exclude binary files (using a heuristic based on invalid UTF-8 bytes).
+        if (!isExplicitlyIncluded(normalized) && isBinary(normalized)) {
+            if (isVerbose()) {
+                System.out.println("VERBOSE: Excluding binary file: " + normalized);
+            }
+            return excluded(normalized, AdocJournal.Decision.BINARY);
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether a file should be included using the attributes already read, e.g. by
+     * {@link Files#walkFileTree}, so no system call is needed for the file itself. Companion
+     * {@code .ad} files are found from a listing of each directory made once.
+     *
+     * <p>The binary check needs the content, so it is left to the caller: a file accepted by this
+     * method must be checked with {@link #isBinary(byte[], int)} once read, unless
+     * {@link #isExplicitlyIncluded(Path)}.</p>
+     *
+     * @param path  path to a file (directories are skipped)
+     * @param attrs the attributes of the file
+     * @return true if this file is accepted, subject to the binary check
+     */
+    public boolean include(Path path, BasicFileAttributes attrs) {
+        if (metrics == null) {
+            return check(path, attrs);
+        }
+        long start = System.nanoTime();
+        try {
+            return check(path, attrs);
+        } finally {
+            metrics.recordSince(AdocMetrics.Stage.FILTER, start);
+        }
+    }
+
+    private boolean check(Path path, BasicFileAttributes attrs) {
         try {
             // Normalize the path for consistent processing.
             Path normalized = path.toAbsolutePath().normalize();
             if (isVerbose()) {
                 System.out.println("VERBOSE: Evaluating file: " + normalized);
             }
-            if (Files.isDirectory(normalized)) {
+            if (attrs.isDirectory()) {
                 if (isVerbose()) {
                     System.out.println("VERBOSE: Skipping directory: " + normalized);
                 }
@@ -134,21 +326,22 @@ public class AdocFileFilter {
                     if (isVerbose()) {
                         System.out.println("VERBOSE: Excluded by ignore file: " + normalized);
                     }
-                    return false;
+                    return excluded(normalized, AdocJournal.Decision.IGNORED);
                 }
                 if (matchResult == MatchResult.NOT_IGNORED) {
                     if (isVerbose()) {
                         System.out.println("VERBOSE: Explicitly included by ignore file: " + normalized);
                     }
+                    AdocDecisionEvent.emit(normalized, true, "EXPLICITLY_INCLUDED");
                     return true;
                 }
             }
             // 3) Exclude hidden files and files in hidden directories.
-            if (isHiddenOrInHiddenDirectory(normalized)) {
+            if (isHiddenOrInHiddenDirectory(normalized, attrs)) {
                 if (isVerbose()) {
                     System.out.println("VERBOSE: Excluding hidden file or file in hidden directory: " + normalized);
                 }
-                return false;
+                return excluded(normalized, AdocJournal.Decision.HIDDEN);
             }
 
             // 4) Exclude if a companion summary (.ad) file exists.
@@ -156,7 +349,7 @@ public class AdocFileFilter {
                 if (isVerbose()) {
                     System.out.println("VERBOSE: Excluding file overshadowed by companion .ad: " + normalized);
                 }
-                return false;
+                return excluded(normalized, AdocJournal.Decision.COMPANION);
             }
 
             // 5) Exclude files with disallowed extensions.
@@ -165,7 +358,7 @@ public class AdocFileFilter {
                 if (isVerbose()) {
                     System.out.println("VERBOSE: Excluding file with disallowed extension: " + normalized);
                 }
-                return false;
+                return excluded(normalized, AdocJournal.Decision.EXTENSION);
             }
 
             // 6) Exclude files starting with "out-".
@@ -173,44 +366,77 @@ public class AdocFileFilter {
                 if (isVerbose()) {
                     System.out.println("VERBOSE: Excluding file with out- prefix: " + normalized);
                 }
-                return false;
+                return excluded(normalized, AdocJournal.Decision.PREFIX);
             }
 
-            // 7) Exclude files exceeding the maximum allowed size.
-            try {
-                long size = Files.size(normalized);
-                if (size > maxSizeBytes) {
-                    if (isVerbose()) {
-                        System.out.println("VERBOSE: Excluding large file (" + size + " bytes): " + normalized);
-                    }
-                    return false;
-                }
-            } catch (IOException e) {
+            // 7) Exclude files exceeding the maximum allowed size or estimated tokens.
+            long size = attrs.size();
+            if (size > maxSizeBytes) {
                 if (isVerbose()) {
-                    System.out.println("VERBOSE: Excluding file due to size read error: " + normalized);
+                    System.out.println("VERBOSE: Excluding large file (" + size + " bytes): " + normalized);
                 }
-                return false;
+                return excluded(normalized, AdocJournal.Decision.SIZE);
             }
-
-            // 8) Exclude binary files (using a heuristic based on invalid UTF-8 bytes).
-            if (isBinary(normalized)) {
-                if (isVerbose()) {
-                    System.out.println("VERBOSE: Excluding binary file: " + normalized);
+            if (maxFileTokens > 0) {
+                long tokens = tokenEstimator.estimate(AdocTokenEstimator.extensionOf(normalized), size);
+                if (tokens > maxFileTokens) {
+                    if (isVerbose()) {
+                        System.out.println("VERBOSE: Excluding file with ~" + tokens + " tokens: " + normalized);
+                    }
+                    return excluded(normalized, AdocJournal.Decision.TOKENS);
                 }
-                return false;
             }
             if (isVerbose()) {
                 System.out.println("VERBOSE: Including file: " + normalized);
             }
+            AdocDecisionEvent.emit(normalized, true, "INCLUDED");
             return true;
         } catch (Exception ex) {
             if (isVerbose()) {
                 System.out.println("VERBOSE: Exception in filtering file " + path + " (" + ex.getMessage() + ")");
             }
-            return false;
+            return excluded(path, AdocJournal.Decision.ERROR);
         }
     }
 
+    /**
+     * Checks whether the ignore rules explicitly include a file, in which case it bypasses the
+     * remaining checks, including the binary check.
+     *
+     * @param path the normalized path of the file
+     * @return true if explicitly included
+     */
+    public boolean isExplicitlyIncluded(Path path) {
+        return gitignoreFilter != null && gitignoreFilter.isExcluded(path, false) == MatchResult.NOT_IGNORED;
+    }
+
+    /**
+     * @return the number of file system calls made while filtering, such as reading attributes,
+     * listing directories and opening files for the binary check
+     */
+    public long getFileSystemCalls() {
+        return fileSystemCalls.sum();
+    }
+
+    /**
+     * Forgets the directory listings used to find companion {@code .ad} files, e.g. after files
+     * have been added or removed.
+     */
+    public void clearDirectoryListings() {
+        companionListings.clear();
+    }
+
+    /**
+     * Supplies the companion {@code .ad} files in a directory instead of listing it, for files that
+     * are not on disk, e.g. those read from a git commit. Cleared by {@link #clearDirectoryListings()}.
+     *
+     * @param dir   the directory
+     * @param names the names of the {@code .ad} files in it
+     */
+    public void setDirectoryListing(Path dir, Set<String> names) {
+        companionListings.put(dir.toAbsolutePath().normalize(), Set.copyOf(names));
+    }
+
     /**
      * Checks if the file is overshadowed by a companion summary file.
      * For example, "someFile.txt" is excluded if "someFile.txt.ad" exists.
@@ -219,20 +445,45 @@ public class AdocFileFilter {
      * @return true if a companion .ad file exists, false otherwise
      */
     private boolean isOvershadowedByAd(Path path) {
-        Path companion = Path.of(path.toString() + ".ad");
-        return Files.exists(companion);
+        Path dir = path.getParent();
+        if (dir == null) {
+            return false;
+        }
+        Set<String> companions = companionListings.computeIfAbsent(dir, this::listCompanions);
+        return companions.contains(path.getFileName() + ".ad");
+    }
+
+    /**
+     * Lists the names of the {@code .ad} files in a directory; one directory read per directory.
+     */
+    private Set<String> listCompanions(Path dir) {
+        Set<String> names = new HashSet<>();
+        fileSystemCalls.increment();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.ad")) {
+            for (Path entry : stream) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (IOException e) {
+            if (isVerbose()) {
+                System.out.println("VERBOSE: Failed to list directory " + dir + " (" + e.getMessage() + ")");
+            }
+        }
+        return names;
     }
 
     /**
      * Checks if the file or any of its parent directories have a name starting with a dot.
      *
-     * @param path the file path
+     * On Windows the DOS hidden attribute is also checked, using the attributes already read.
+     *
+     * @param path  the file path
+     * @param attrs the attributes of the file
      * @return true if the file is hidden or is in a hidden directory, false otherwise
-     * @throws IOException if an I/O error occurs
      */
-    private boolean isHiddenOrInHiddenDirectory(Path path) throws IOException {
+    private boolean isHiddenOrInHiddenDirectory(Path path, BasicFileAttributes attrs) {
         // Check the file itself.
-        if (Files.isHidden(path) || path.getFileName().toString().startsWith(".")) {
+        if (path.getFileName().toString().startsWith(".")
+                || (attrs instanceof DosFileAttributes && ((DosFileAttributes) attrs).isHidden())) {
             return true;
         }
         // Walk up the directory hierarchy.
@@ -269,25 +520,98 @@ public class AdocFileFilter {
      * @return true if a byte is found that is marked invalid for UTF-8 text, suggesting binary content; false otherwise
      */
     private boolean isBinary(Path path) {
-        try (InputStream in = Files.newInputStream(path)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead = in.read(buffer);
-            if (bytesRead == -1) {
-                // Empty file; treat as text.
-                return false;
-            }
-            for (int i = 0; i < bytesRead; i++) {
-                if (INVALID_UTF8_TEXT[buffer[i] & 0xFF]) {
-                    return true;
-                }
+        if (metrics == null) {
+            return readIsBinary(path);
+        }
+        long start = System.nanoTime();
+        try {
+            return readIsBinary(path);
+        } finally {
+            metrics.recordSince(AdocMetrics.Stage.BINARY_CHECK, start);
+        }
+    }
+
+    private boolean readIsBinary(Path path) {
+        fileSystemCalls.increment();
+        if (binaryCheck == BinaryCheck.UTF8) {
+            try {
+                return !Utf8Validator.isText(path);
+            } catch (IOException e) {
+                return true;
             }
-            return false;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = SAMPLE_BUFFER.get();
+            int bytesRead = in.readNBytes(buffer, 0, BINARY_CHECK_BYTES);
+            // An empty file is treated as text.
+            return bytesRead > 0 && isBinary(buffer, bytesRead);
         } catch (IOException e) {
             // On error, default to exclusion.
             return true;
         }
     }
 
+    /**
+     * Checks the whole content of a file, already read, as {@link #isBinary(byte[], int, boolean)}.
+     *
+     * @param content the content of the file
+     * @param length  the number of bytes of content
+     * @return true if a byte is found that is marked invalid for UTF-8 text, suggesting binary content; false otherwise
+     */
+    public boolean isBinary(byte[] content, int length) {
+        return isBinary(content, length, true);
+    }
+
+    /**
+     * Checks content already read for bytes marked in the INVALID_UTF8_TEXT table, looking at
+     * the same first 1KB as when the file is opened for the check, or in {@link BinaryCheck#UTF8}
+     * mode, validates all of it. A multibyte sequence cut short at the end is allowed only if the
+     * content is the start of a longer file, as {@link Utf8Validator#isText(Path)} rejects it.
+     *
+     * @param content the content of the file, or its start
+     * @param length  the number of bytes of content
+     * @param whole   true if the content is the whole file
+     * @return true if a byte is found that is marked invalid for UTF-8 text, suggesting binary content; false otherwise
+     */
+    public boolean isBinary(byte[] content, int length, boolean whole) {
+        if (metrics == null) {
+            return scanIsBinary(content, length, whole);
+        }
+        long start = System.nanoTime();
+        try {
+            return scanIsBinary(content, length, whole);
+        } finally {
+            metrics.recordSince(AdocMetrics.Stage.BINARY_CHECK, start);
+        }
+    }
+
+    private boolean scanIsBinary(byte[] content, int length, boolean whole) {
+        if (binaryCheck == BinaryCheck.UTF8) {
+            int incomplete = Utf8Validator.validate(content, 0, length);
+            return incomplete == Utf8Validator.INVALID || (whole && incomplete != 0);
+        }
+        int end = Math.min(length, BINARY_CHECK_BYTES);
+        for (int i = 0; i < end; i++) {
+            if (INVALID_UTF8_TEXT[content[i] & 0xFF]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records why a file or directory was excluded, if journaling or recording Flight Recorder events.
+     *
+     * @return false, the result of the check
+     */
+    private boolean excluded(Path path, AdocJournal.Decision decision) {
+        if (journal != null) {
+            journal.decision(path, decision);
+        }
+        AdocDecisionEvent.emit(path, false, decision.name());
+        return false;
+    }
+
     private boolean isVerbose() {
         return this.verbose;
     }
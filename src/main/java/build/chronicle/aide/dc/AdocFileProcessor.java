@@ -1,18 +1,41 @@
 package build.chronicle.aide.dc;
 
+import build.chronicle.aide.util.Utf8Validator;
+
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Handles reading file lines in UTF-8 and optionally removing a multi-line or
  * single-line copyright comment block if it appears within the first 20 lines.
+ *
+ * <p>Files can also be streamed with {@link #streamWithoutCopyright(BufferedReader, boolean, Consumer)},
+ * which holds at most {@link #LOOKAHEAD_LINES} lines in memory regardless of file size. A copyright
+ * block is only looked for within those lines whether a file is streamed or not, so both give the same
+ * result.</p>
+ *
+ * <p>{@link #isVerbatim(byte[], boolean)} tells whether a file needs no transformation at all,
+ * so it can be copied without being decoded.</p>
  */
 public class AdocFileProcessor {
 
+    /**
+     * The number of lines held back while streaming so a copyright block can be detected;
+     * a block starting in the first 20 lines must close within this many lines, streamed or not.
+     */
+    static final int LOOKAHEAD_LINES = 100;
+
+    private static final byte[] COPYRIGHT = "copyright".getBytes(StandardCharsets.US_ASCII);
+
     /**
      * Reads all lines of a file in UTF-8 encoding.
      *
@@ -24,14 +47,117 @@ public class AdocFileProcessor {
         return Files.readAllLines(file, StandardCharsets.UTF_8);
     }
 
+    /**
+     * Decodes file content as UTF-8 and splits it into lines, with the same rules as
+     * {@link Files#readAllLines(Path)}: a line ends with "\n", "\r\n" or "\r", and malformed
+     * input is rejected rather than replaced.
+     *
+     * @param bytes the file content
+     * @return list of lines
+     * @throws CharacterCodingException if the content is not valid UTF-8
+     */
+    public List<String> readFileLines(byte[] bytes) throws CharacterCodingException {
+        CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes));
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char ch = chars.get(i);
+            if (ch == '\n' || ch == '\r') {
+                lines.add(chars.subSequence(start, i).toString());
+                if (ch == '\r' && i + 1 < length && chars.get(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            lines.add(chars.subSequence(start, length).toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Checks whether content would be written byte for byte as read, so it can be copied without
+     * decoding: it is valid UTF-8, ends with "\n" and has no "\r", so splitting it into lines and
+     * joining them with "\n" changes nothing, and if copyright blocks are removed, it does not
+     * contain "copyright" in any case, so {@link #maybeRemoveCopyright(List)} would find no block.
+     *
+     * @param bytes           the file content
+     * @param removeCopyright true if a copyright block would be removed
+     * @return true if the content needs no transformation
+     */
+    public boolean isVerbatim(byte[] bytes, boolean removeCopyright) {
+        int length = bytes.length;
+        if (length == 0 || bytes[length - 1] != '\n') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b == '\r' || removeCopyright && (b | 0x20) == 'c' && startsCopyright(bytes, i)) {
+                return false;
+            }
+        }
+        return Utf8Validator.validate(bytes, 0, length) == 0;
+    }
+
+    private static boolean startsCopyright(byte[] bytes, int offset) {
+        if (offset + COPYRIGHT.length > bytes.length) {
+            return false;
+        }
+        for (int i = 1; i < COPYRIGHT.length; i++) {
+            // ASCII letters only; any other byte cannot match
+            if ((bytes[offset + i] | 0x20) != COPYRIGHT[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Streams lines from the reader to the sink, removing a copyright block as
+     * {@link #maybeRemoveCopyright(List)} does. Only a bounded look-ahead window is held in
+     * memory; the remaining lines are passed straight through.
+     *
+     * @param reader          the source of lines
+     * @param removeCopyright true to remove a copyright block from the window
+     * @param sink            receives each line to keep, without its line terminator
+     * @return the number of lines removed from the start of the file
+     * @throws IOException if reading fails, including malformed UTF-8
+     */
+    public int streamWithoutCopyright(BufferedReader reader, boolean removeCopyright, Consumer<String> sink) throws IOException {
+        List<String> window = new ArrayList<>();
+        String line;
+        while (window.size() < LOOKAHEAD_LINES && (line = reader.readLine()) != null) {
+            window.add(line);
+        }
+        List<String> head = removeCopyright ? maybeRemoveCopyright(window) : window;
+        head.forEach(sink);
+        while ((line = reader.readLine()) != null) {
+            sink.accept(line);
+        }
+        return window.size() - head.size();
+    }
+
     /**
      * Scans the first 20 lines for a recognized comment style containing "Copyright"
      * and removes that block. If none is found, returns the original list.
+     * The block must end within the first {@link #LOOKAHEAD_LINES} lines, as when streaming.
      */
     public List<String> maybeRemoveCopyright(List<String> lines) {
         if (lines == null || lines.isEmpty()) {
             return lines;
         }
+        if (lines.size() > LOOKAHEAD_LINES) {
+            List<String> head = lines.subList(0, LOOKAHEAD_LINES);
+            List<String> kept = maybeRemoveCopyright(head);
+            if (kept == head) {
+                return lines;
+            }
+            List<String> result = new ArrayList<>(kept);
+            result.addAll(lines.subList(LOOKAHEAD_LINES, lines.size()));
+            return result;
+        }
 
         // We only inspect the first 20 lines.
         int searchLimit = Math.min(lines.size(), 20);
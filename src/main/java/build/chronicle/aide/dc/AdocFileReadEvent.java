@@ -0,0 +1,28 @@
+package build.chronicle.aide.dc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning the read stage of a file rendered by {@link AdocDocumentEngine}:
+ * reading, decoding, copyright removal and searching, on the thread that did it.
+ */
+@Name("build.chronicle.aide.FileRead")
+@Label("File Read")
+@Category({"AIDE", "File"})
+@Description("Reading and rendering a file, on a worker thread when running in parallel")
+@StackTrace(false)
+final class AdocFileReadEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,127 @@
+package build.chronicle.aide.dc;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The rendered form of a single input file, produced by the read stage of the
+ * {@link AdocDocumentEngine} and consumed, in walk order, by its write stage.
+ *
+ * <p>A section is either <em>skipped</em> (the file could not be read and is reported in the
+ * summary), <em>filtered</em> (nothing is written) or carries the lines and match windows to write.
+ * Sections are immutable once created so they can be handed safely from a worker thread to the
+ * single writer thread.</p>
+ */
+final class AdocFileSection {
+
+    private final Path path;
+    private final String relativePath;
+    private final List<String> lines;
+    private final int firstLine;
+    private final List<int[]> matches;
+    private final int[] hitCounts;
+    private final boolean skipped;
+    // Size of the file read and time spent reading and rendering it, for the journal
+    private final long bytes;
+    private final long readNanos;
+    private final long processNanos;
+
+    private AdocFileSection(Path path, String relativePath, List<String> lines, int firstLine,
+                            List<int[]> matches, int[] hitCounts, boolean skipped,
+                            long bytes, long readNanos, long processNanos) {
+        this.path = path;
+        this.relativePath = relativePath;
+        this.lines = lines;
+        this.firstLine = firstLine;
+        this.matches = matches;
+        this.hitCounts = hitCounts;
+        this.skipped = skipped;
+        this.bytes = bytes;
+        this.readNanos = readNanos;
+        this.processNanos = processNanos;
+    }
+
+    /**
+     * Creates a section holding content to write.
+     *
+     * @param path         the absolute path of the source file
+     * @param relativePath the path shown in the "== File:" heading
+     * @param lines        the lines of the file after copyright removal
+     * @param firstLine    the 1-based line number of {@code lines.get(0)} in the original file
+     * @param matches      the 0-indexed, inclusive line ranges to write
+     * @param hitCounts    the number of hits of each search pattern, or null if not searching
+     * @param bytes        the size of the file read
+     * @param readNanos    the time spent reading the file
+     * @param processNanos the time spent decoding, removing the copyright and searching
+     */
+    static AdocFileSection content(Path path, String relativePath, List<String> lines, int firstLine,
+                                   List<int[]> matches, int[] hitCounts,
+                                   long bytes, long readNanos, long processNanos) {
+        return new AdocFileSection(path, relativePath, lines, firstLine, matches, hitCounts, false,
+                bytes, readNanos, processNanos);
+    }
+
+    /**
+     * Creates a section for a file that was filtered out or had nothing to write.
+     */
+    static AdocFileSection filtered(Path path) {
+        return new AdocFileSection(path, null, List.of(), 1, List.of(), null, false, 0, 0, 0);
+    }
+
+    /**
+     * Creates a section for a file that could not be read and is to be listed as skipped.
+     */
+    static AdocFileSection skipped(Path path) {
+        return new AdocFileSection(path, null, List.of(), 1, List.of(), null, true, 0, 0, 0);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    String relativePath() {
+        return relativePath;
+    }
+
+    List<String> lines() {
+        return lines;
+    }
+
+    int firstLine() {
+        return firstLine;
+    }
+
+    List<int[]> matches() {
+        return matches;
+    }
+
+    /**
+     * @return the number of hits of each search pattern, or null if not searching
+     */
+    int[] hitCounts() {
+        return hitCounts;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long readNanos() {
+        return readNanos;
+    }
+
+    long processNanos() {
+        return processNanos;
+    }
+
+    boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return true if this section has content to write
+     */
+    boolean hasContent() {
+        return relativePath != null;
+    }
+}
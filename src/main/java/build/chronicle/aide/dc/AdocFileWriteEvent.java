@@ -0,0 +1,38 @@
+package build.chronicle.aide.dc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning the write stage of a file by {@link AdocDocumentEngine}: writing
+ * its section and counting its lines and tokens. A streamed file is read while it is written, so its
+ * whole processing is in this event.
+ */
+@Name("build.chronicle.aide.FileWrite")
+@Label("File Write")
+@Category({"AIDE", "File"})
+@Description("Writing a file section and counting its tokens")
+@StackTrace(false)
+final class AdocFileWriteEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Streamed")
+    boolean streamed;
+}
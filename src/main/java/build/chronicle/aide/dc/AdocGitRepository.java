@@ -0,0 +1,647 @@
+package build.chronicle.aide.dc;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.patch.FileHeader;
+import org.eclipse.jgit.patch.HunkHeader;
+import org.eclipse.jgit.patch.Patch;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdocGitRepository answers questions about the git repository holding the input paths with JGit,
+ * so the engine can use what git already knows rather than walking the file system.
+ *
+ * <p>{@link #changesSince(String, List)} lists the files changed since a commit: those changed by
+ * later commits, found by comparing trees in the object database, plus those changed in the index
+ * or working tree and untracked files that are not ignored, found by git status.</p>
+ *
+ * <p>{@link #listFiles(List, boolean)} lists the tracked files from the index, in index order, and
+ * optionally the untracked files that are not ignored, so the input paths need not be walked.</p>
+ *
+ * <p>{@link #listBlobs(String, List)} lists the files of any commit, branch or tag from the object
+ * database, and {@link #read(Blob)} reads their content, so no checkout is needed.</p>
+ *
+ * <p>{@link #diff(String, String, List, int)} lists the hunks changed between two commits, or
+ * between a commit and the working tree, as {@code git diff -U<n>} would show them.</p>
+ */
+public class AdocGitRepository implements AutoCloseable {
+
+    private final Repository repository;
+    private final Path workTree;
+
+    private AdocGitRepository(Repository repository) {
+        this.repository = repository;
+        this.workTree = repository.getWorkTree().toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Opens the repository whose working tree contains a directory.
+     *
+     * @param dir a directory in the working tree
+     * @return the repository
+     * @throws IOException if the directory is not in a git working tree, or the repository cannot be read
+     */
+    public static AdocGitRepository forDirectory(Path dir) throws IOException {
+        FileRepositoryBuilder builder = new FileRepositoryBuilder()
+                .readEnvironment()
+                .findGitDir(dir.toAbsolutePath().normalize().toFile());
+        if (builder.getGitDir() == null) {
+            throw new IOException("Not in a git working tree: " + dir);
+        }
+        Repository repository = builder.setMustExist(true).build();
+        if (repository.isBare()) {
+            repository.close();
+            throw new IOException("Not in a git working tree: " + dir);
+        }
+        return new AdocGitRepository(repository);
+    }
+
+    /**
+     * @return the top directory of the working tree
+     */
+    public Path getWorkTree() {
+        return workTree;
+    }
+
+    /**
+     * Resolves a revision, e.g. a branch, tag or abbreviated commit id, to a commit id.
+     *
+     * @param revision the revision
+     * @return the full commit id
+     * @throws IOException if the revision does not name a commit
+     */
+    public String resolveCommit(String revision) throws IOException {
+        ObjectId id = repository.resolve(revision + "^{commit}");
+        if (id == null) {
+            throw new IOException("Unknown revision: " + revision);
+        }
+        return id.name();
+    }
+
+    /**
+     * @return the commit id of HEAD, or null if nothing has been committed
+     * @throws IOException if the repository cannot be read
+     */
+    public String getHead() throws IOException {
+        ObjectId id = repository.resolve(Constants.HEAD + "^{commit}");
+        return id == null ? null : id.name();
+    }
+
+    /**
+     * Lists the files that differ between a commit and the working tree, including untracked files
+     * that are not ignored. Only the given paths are compared, so git status only looks at the
+     * working tree under them.
+     *
+     * @param revision the commit to compare with, or null for HEAD
+     * @param paths    the files or directories to compare, or an empty list for the whole working tree
+     * @return the changed and deleted files, as absolute paths in order
+     * @throws IOException if the revision is unknown or the repository cannot be read
+     */
+    public Changes changesSince(String revision, List<Path> paths) throws IOException {
+        List<String> filters = toGitPaths(paths);
+        Set<String> touched = new TreeSet<>();
+        ObjectId head = repository.resolve(Constants.HEAD + "^{tree}");
+        ObjectId since = revision == null ? head : repository.resolve(revision + "^{tree}");
+        if (revision != null && since == null) {
+            throw new IOException("Unknown revision: " + revision);
+        }
+        if (since != null && head != null && !since.equals(head)) {
+            try (TreeWalk walk = new TreeWalk(repository)) {
+                walk.setRecursive(true);
+                walk.addTree(since);
+                walk.addTree(head);
+                walk.setFilter(filters.isEmpty() ? TreeFilter.ANY_DIFF
+                        : AndTreeFilter.create(PathFilterGroup.createFromStrings(filters), TreeFilter.ANY_DIFF));
+                for (DiffEntry entry : DiffEntry.scan(walk)) {
+                    if (entry.getChangeType() != DiffEntry.ChangeType.ADD) {
+                        touched.add(entry.getOldPath());
+                    }
+                    if (entry.getChangeType() != DiffEntry.ChangeType.DELETE) {
+                        touched.add(entry.getNewPath());
+                    }
+                }
+            }
+        }
+        try (Git git = new Git(repository)) {
+            StatusCommand command = git.status();
+            filters.forEach(command::addPath);
+            Status status = command.call();
+            addAll(touched, status.getAdded(), status.getChanged(), status.getModified(), status.getUntracked(),
+                    status.getRemoved(), status.getMissing());
+        } catch (GitAPIException e) {
+            throw new IOException("Failed to read the status of " + workTree + " (" + e.getMessage() + ")", e);
+        }
+        // whether a file changed or was deleted is decided by what is there now
+        List<Path> changed = new ArrayList<>();
+        List<Path> deleted = new ArrayList<>();
+        for (String gitPath : touched) {
+            Path file = workTree.resolve(gitPath).normalize();
+            (Files.isRegularFile(file) ? changed : deleted).add(file);
+        }
+        return new Changes(changed, deleted);
+    }
+
+    /**
+     * Lists the files in the index, optionally with the untracked files that are not ignored, as
+     * {@code git ls-files [--others --exclude-standard]} does. Tracked files are read from the index
+     * alone, without touching the working tree; only listing untracked files walks it, skipping
+     * ignored directories. Submodules are left out.
+     *
+     * @param paths     the files or directories to list, or an empty list for the whole working tree
+     * @param untracked true to include untracked files that are not ignored
+     * @return the files as absolute paths, in index order
+     * @throws IOException if the index cannot be read
+     */
+    public List<Path> listFiles(List<Path> paths, boolean untracked) throws IOException {
+        List<String> filters = toGitPaths(paths);
+        List<Path> files = new ArrayList<>();
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setRecursive(true);
+            walk.addTree(new DirCacheIterator(repository.readDirCache()));
+            TreeFilter filter = filters.isEmpty() ? TreeFilter.ALL : PathFilterGroup.createFromStrings(filters);
+            if (untracked) {
+                walk.addTree(new FileTreeIterator(repository));
+                filter = filters.isEmpty() ? new TrackedOrNotIgnored() : AndTreeFilter.create(filter, new TrackedOrNotIgnored());
+            }
+            walk.setFilter(filter);
+            while (walk.next()) {
+                FileMode mode = walk.getFileMode(0) == FileMode.MISSING && untracked ? walk.getFileMode(1) : walk.getFileMode(0);
+                if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE || mode == FileMode.SYMLINK) {
+                    files.add(workTree.resolve(walk.getPathString()).normalize());
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Lists the files in the tree of a commit, as {@code git ls-tree -r} does, without checking it out.
+     * Only regular and executable files are listed; symbolic links and submodules are left out.
+     *
+     * @param revision the commit, branch or tag
+     * @param paths    the files or directories to list, as paths in the working tree, or an empty list for all
+     * @return the files in tree order, with paths resolved against the working tree
+     * @throws IOException if the revision is unknown or the repository cannot be read
+     */
+    public List<Blob> listBlobs(String revision, List<Path> paths) throws IOException {
+        List<String> filters = toGitPaths(paths);
+        List<Blob> blobs = new ArrayList<>();
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId id = repository.resolve(revision + "^{commit}");
+            if (id == null) {
+                throw new IOException("Unknown revision: " + revision);
+            }
+            RevCommit commit = revWalk.parseCommit(id);
+            FileTime commitTime = FileTime.from(commit.getCommitTime(), TimeUnit.SECONDS);
+            try (TreeWalk walk = new TreeWalk(repository)) {
+                walk.setRecursive(true);
+                walk.addTree(commit.getTree());
+                if (!filters.isEmpty()) {
+                    walk.setFilter(PathFilterGroup.createFromStrings(filters));
+                }
+                ObjectReader reader = walk.getObjectReader();
+                while (walk.next()) {
+                    FileMode mode = walk.getFileMode(0);
+                    if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                        ObjectId blobId = walk.getObjectId(0);
+                        blobs.add(new Blob(workTree.resolve(walk.getPathString()).normalize(), blobId,
+                                reader.getObjectSize(blobId, Constants.OBJ_BLOB), commitTime));
+                    }
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Reads the content of a file listed by {@link #listBlobs(String, List)}. Safe to call from
+     * several threads at once.
+     *
+     * @param blob the file
+     * @return its content
+     * @throws IOException if the object cannot be read
+     */
+    public byte[] read(Blob blob) throws IOException {
+        return repository.open(blob.id, Constants.OBJ_BLOB).getBytes();
+    }
+
+    /**
+     * Lists the changes between two commits, or between a commit and the working tree, as
+     * {@code git diff -M -U<context>} does: for each changed file, in path order, the hunks with
+     * the given number of unchanged lines around each change. Renames are detected. Compared with
+     * the working tree, the files compared are those {@link #changesSince(String, List)} reports,
+     * so untracked files that are not ignored are shown as added.
+     *
+     * @param from    the commit to compare from
+     * @param to      the commit to compare to, or null for the working tree
+     * @param paths   the files or directories to compare, or an empty list for the whole working tree
+     * @param context the number of unchanged lines shown before and after each change
+     * @return the changed files
+     * @throws IOException if a revision is unknown or the repository cannot be read
+     */
+    public List<FileDiff> diff(String from, String to, List<Path> paths, int context) throws IOException {
+        List<String> filters = toGitPaths(paths);
+        List<FileDiff> diffs = new ArrayList<>();
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        try (RevWalk revWalk = new RevWalk(repository);
+             DiffFormatter formatter = new DiffFormatter(patch)) {
+            RevCommit fromCommit = parseCommit(revWalk, from);
+            RevCommit toCommit = to == null ? null : parseCommit(revWalk, to);
+            formatter.setRepository(repository);
+            formatter.setContext(context);
+            formatter.setDetectRenames(true);
+            List<DiffEntry> entries;
+            if (toCommit != null) {
+                if (!filters.isEmpty()) {
+                    formatter.setPathFilter(PathFilterGroup.createFromStrings(filters));
+                }
+                entries = formatter.scan(fromCommit.getTree(), toCommit.getTree());
+            } else {
+                // git status finds what changed using the index, so only those files are hashed
+                Changes changes = changesSince(fromCommit.name(), paths);
+                List<String> touched = new ArrayList<>();
+                for (Path file : changes.changed()) {
+                    touched.add(toGitPath(workTree.relativize(file)));
+                }
+                for (Path file : changes.deleted()) {
+                    touched.add(toGitPath(workTree.relativize(file)));
+                }
+                if (touched.isEmpty()) {
+                    return diffs;
+                }
+                formatter.setPathFilter(PathFilterGroup.createFromStrings(touched));
+                CanonicalTreeParser fromTree = new CanonicalTreeParser();
+                try (ObjectReader reader = repository.newObjectReader()) {
+                    fromTree.reset(reader, fromCommit.getTree());
+                }
+                entries = formatter.scan(fromTree, new FileTreeIterator(repository));
+            }
+            ObjectReader reader = revWalk.getObjectReader();
+            for (DiffEntry entry : entries) {
+                // parsed back from the formatted patch, as the formatter only builds hunks as it writes them
+                patch.reset();
+                formatter.format(entry);
+                formatter.flush();
+                Patch parsed = new Patch();
+                parsed.parse(new ByteArrayInputStream(patch.toByteArray()));
+                FileHeader header = parsed.getFiles().isEmpty() ? null : parsed.getFiles().get(0);
+                diffs.add(toFileDiff(entry, header, reader,
+                        entry.getChangeType() == DiffEntry.ChangeType.DELETE ? fromCommit : toCommit));
+            }
+        }
+        return diffs;
+    }
+
+    private RevCommit parseCommit(RevWalk revWalk, String revision) throws IOException {
+        ObjectId id = repository.resolve(revision + "^{commit}");
+        if (id == null) {
+            throw new IOException("Unknown revision: " + revision);
+        }
+        return revWalk.parseCommit(id);
+    }
+
+    /**
+     * Splits the patch of a file into hunks, numbered by the lines of the file after the change,
+     * or before it if the file was deleted.
+     *
+     * @param header the parsed patch, or null if there is none
+     * @param commit the commit holding the file, or null if it is in the working tree
+     */
+    private FileDiff toFileDiff(DiffEntry entry, FileHeader header, ObjectReader reader, RevCommit commit) throws IOException {
+        DiffEntry.ChangeType changeType = entry.getChangeType();
+        boolean deleted = changeType == DiffEntry.ChangeType.DELETE;
+        Path path = workTree.resolve(deleted ? entry.getOldPath() : entry.getNewPath()).normalize();
+        ObjectId id = (deleted ? entry.getOldId() : entry.getNewId()).toObjectId();
+        Blob file;
+        if (commit != null) {
+            file = new Blob(path, id, reader.getObjectSize(id, Constants.OBJ_BLOB),
+                    FileTime.from(commit.getCommitTime(), TimeUnit.SECONDS));
+        } else {
+            file = new Blob(path, id, Files.size(path), Files.getLastModifiedTime(path));
+        }
+        String oldPath = changeType == DiffEntry.ChangeType.RENAME || changeType == DiffEntry.ChangeType.COPY
+                ? entry.getOldPath() : null;
+        if (header != null && header.getPatchType() != FileHeader.PatchType.UNIFIED) {
+            return new FileDiff(file, changeType, oldPath, List.of(), true);
+        }
+        List<Hunk> hunks = new ArrayList<>();
+        for (HunkHeader hunk : header == null ? List.<HunkHeader>of() : header.getHunks()) {
+            String text = RawParseUtils.decode(header.getBuffer(), hunk.getStartOffset(), hunk.getEndOffset());
+            // drop the @@ line; the range is given by the line numbers
+            String body = text.substring(text.indexOf('\n') + 1);
+            if (body.endsWith("\n")) {
+                body = body.substring(0, body.length() - 1);
+            }
+            List<String> lines = Arrays.asList(body.split("\n", -1));
+            int firstLine = deleted ? hunk.getOldImage().getStartLine() : hunk.getNewStartLine();
+            int lineCount = deleted ? hunk.getOldImage().getLineCount() : hunk.getNewLineCount();
+            hunks.add(new Hunk(firstLine, Math.max(firstLine, firstLine + lineCount - 1), lines));
+        }
+        return new FileDiff(file, changeType, oldPath, hunks, false);
+    }
+
+    /**
+     * Converts files or directories in the working tree to the paths git uses, relative to its top.
+     */
+    private List<String> toGitPaths(List<Path> paths) throws IOException {
+        List<String> gitPaths = new ArrayList<>();
+        for (Path path : paths) {
+            Path normalized = path.toAbsolutePath().normalize();
+            if (!normalized.startsWith(workTree)) {
+                throw new IOException(path + " is not in the working tree " + workTree);
+            }
+            if (normalized.equals(workTree)) {
+                // the whole working tree
+                return List.of();
+            }
+            gitPaths.add(toGitPath(workTree.relativize(normalized)));
+        }
+        return gitPaths;
+    }
+
+    @SafeVarargs
+    private static void addAll(Set<String> set, Collection<String>... collections) {
+        for (Collection<String> collection : collections) {
+            set.addAll(collection);
+        }
+    }
+
+    static String toGitPath(Path relative) {
+        return relative.toString().replace('\\', '/');
+    }
+
+    /**
+     * Closes the repository.
+     */
+    @Override
+    public void close() {
+        repository.close();
+    }
+
+    /**
+     * Includes what is in the index, and what is only in the working tree unless it is ignored,
+     * so a tracked file in an ignored directory is still listed, as in git.
+     */
+    private static final class TrackedOrNotIgnored extends TreeFilter {
+        @Override
+        public boolean include(TreeWalk walker) throws IOException {
+            if (walker.getRawMode(0) != 0) {
+                return true;
+            }
+            WorkingTreeIterator workingTree = walker.getTree(1, WorkingTreeIterator.class);
+            return workingTree == null || !workingTree.isEntryIgnored();
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+
+    /**
+     * The files changed and deleted since a commit.
+     */
+    public static final class Changes {
+        private final List<Path> changed;
+        private final List<Path> deleted;
+
+        Changes(List<Path> changed, List<Path> deleted) {
+            this.changed = List.copyOf(changed);
+            this.deleted = List.copyOf(deleted);
+        }
+
+        /**
+         * @return the files added or modified, in path order
+         */
+        public List<Path> changed() {
+            return changed;
+        }
+
+        /**
+         * @return the files deleted, in path order
+         */
+        public List<Path> deleted() {
+            return deleted;
+        }
+    }
+
+    /**
+     * A file in the tree of a commit. Its attributes are those it would have if checked out at
+     * that commit: its size, and the commit time as every timestamp.
+     */
+    public static final class Blob implements BasicFileAttributes {
+        private final Path path;
+        private final ObjectId id;
+        private final long size;
+        private final FileTime commitTime;
+
+        Blob(Path path, ObjectId id, long size, FileTime commitTime) {
+            this.path = path;
+            this.id = id;
+            this.size = size;
+            this.commitTime = commitTime;
+        }
+
+        /**
+         * @return where the file would be if checked out, as an absolute path in the working tree
+         */
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * @return the object id of the content
+         */
+        public String id() {
+            return id.name();
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return commitTime;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return commitTime;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return commitTime;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + id.name() + ")";
+        }
+    }
+
+    /**
+     * The changes to one file, as hunks of a unified diff.
+     */
+    public static final class FileDiff {
+        private final Blob file;
+        private final DiffEntry.ChangeType changeType;
+        private final String oldPath;
+        private final List<Hunk> hunks;
+        private final boolean binary;
+
+        FileDiff(Blob file, DiffEntry.ChangeType changeType, String oldPath, List<Hunk> hunks, boolean binary) {
+            this.file = file;
+            this.changeType = changeType;
+            this.oldPath = oldPath;
+            this.hunks = List.copyOf(hunks);
+            this.binary = binary;
+        }
+
+        /**
+         * @return the file after the change, or before it if deleted, as an absolute path in the working tree
+         */
+        public Path path() {
+            return file.path();
+        }
+
+        /**
+         * @return the size and time of the file after the change, or before it if deleted
+         */
+        public BasicFileAttributes attributes() {
+            return file;
+        }
+
+        /**
+         * @return whether the file was added, modified, deleted, renamed or copied
+         */
+        public DiffEntry.ChangeType changeType() {
+            return changeType;
+        }
+
+        /**
+         * @return the path git had for the file before it was renamed or copied, or null
+         */
+        public String oldPath() {
+            return oldPath;
+        }
+
+        /**
+         * @return the hunks in file order; none if binary
+         */
+        public List<Hunk> hunks() {
+            return hunks;
+        }
+
+        /**
+         * @return true if git found the file to be binary, so it has no hunks
+         */
+        public boolean isBinary() {
+            return binary;
+        }
+    }
+
+    /**
+     * A hunk of a unified diff: unchanged lines prefixed with a space, removed lines with {@code -}
+     * and added lines with {@code +}.
+     */
+    public static final class Hunk {
+        private final int firstLine;
+        private final int lastLine;
+        private final List<String> lines;
+
+        Hunk(int firstLine, int lastLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.lines = List.copyOf(lines);
+        }
+
+        /**
+         * @return the 1-based number of the first line the hunk covers in the file
+         */
+        public int firstLine() {
+            return firstLine;
+        }
+
+        /**
+         * @return the 1-based number of the last line the hunk covers in the file, inclusive
+         */
+        public int lastLine() {
+            return lastLine;
+        }
+
+        /**
+         * @return the lines of the hunk, without the {@code @@} line
+         */
+        public List<String> lines() {
+            return lines;
+        }
+    }
+}
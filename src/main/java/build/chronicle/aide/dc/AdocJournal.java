@@ -0,0 +1,191 @@
+package build.chronicle.aide.dc;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.queue.ChronicleQueue;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.wire.DocumentContext;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * AdocJournal records, for every file considered by a run, why it was left out or what writing it
+ * cost, as compact binary events in a Chronicle Queue. It is an audit trail of a run that is far
+ * cheaper than {@code -Dverbose} console output, and can be read back with {@link AdocJournalReader}.
+ *
+ * <p>Each event is a single excerpt of stop bit encoded fields:</p>
+ * <ul>
+ *   <li>a <em>decision</em>: the path of a file or directory left out and the {@link Decision}
+ *   naming the rule that excluded it;</li>
+ *   <li>a <em>file</em>: the path of a file written, its size in bytes, the lines and tokens
+ *   written, and the nanoseconds spent reading, processing and writing it.</li>
+ * </ul>
+ *
+ * <p>Events are written with the appender of the calling thread, so worker threads may record
+ * decisions concurrently.</p>
+ */
+public class AdocJournal implements AutoCloseable {
+
+    // Event types, the first byte of each excerpt
+    static final int DECISION = 'D';
+    static final int FILE = 'F';
+
+    private final ChronicleQueue queue;
+    // One appender per writing thread, each created on first use and closed with the journal
+    private final List<ExcerptAppender> appenders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ExcerptAppender> appender = ThreadLocal.withInitial(this::newAppender);
+
+    /**
+     * Why a file, or directory, was left out. The ordinal is written to the queue, so new
+     * values must be added at the end.
+     */
+    public enum Decision {
+        // The attributes could not be read, or the file could not be read
+        ERROR,
+        // Excluded by a .gitignore or aide.ignore rule
+        IGNORED,
+        // A hidden file, or in a hidden directory
+        HIDDEN,
+        // Summarised by a companion .ad file
+        COMPANION,
+        // A disallowed extension
+        EXTENSION,
+        // An out- prefix
+        PREFIX,
+        // Larger than the size limit
+        SIZE,
+        // More estimated tokens than the limit
+        TOKENS,
+        // Binary content
+        BINARY,
+        // Unchanged in incremental mode
+        UNMODIFIED,
+        // Lacks the trigrams the search requires
+        NO_TRIGRAMS,
+        // No search matches
+        NO_MATCHES,
+        // Dropped to fit the token budget
+        BUDGET,
+        // A directory excluded by an ignore rule, skipped as a whole
+        IGNORED_DIRECTORY,
+        // A hidden directory, skipped as a whole
+        HIDDEN_DIRECTORY
+    }
+
+    /**
+     * Creates a journal writing to the given queue.
+     *
+     * @param queue the queue, closed with the journal
+     */
+    public AdocJournal(ChronicleQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Opens, or creates, a journal in a Chronicle Queue directory; a new run is appended.
+     *
+     * @param dir the queue directory
+     * @return the journal
+     */
+    public static AdocJournal persistedTo(Path dir) {
+        return new AdocJournal(ChronicleQueue.singleBuilder(dir).build());
+    }
+
+    /**
+     * Records that a file or directory was left out.
+     *
+     * @param path     the absolute path
+     * @param decision the rule that excluded it
+     */
+    public void decision(Path path, Decision decision) {
+        try (DocumentContext dc = appender.get().writingDocument()) {
+            Bytes<?> bytes = dc.wire().bytes();
+            bytes.writeUnsignedByte(DECISION);
+            bytes.writeUtf8(path.toString());
+            bytes.writeUnsignedByte(decision.ordinal());
+        }
+    }
+
+    /**
+     * Records a file written to the context file.
+     *
+     * @param path         the absolute path
+     * @param size         the bytes read
+     * @param lines        the lines of the file's section, including its heading and delimiters
+     * @param tokens       the tokens of the file's section
+     * @param readNanos    the time spent reading the file
+     * @param processNanos the time spent decoding, removing the copyright and searching
+     * @param writeNanos   the time spent writing and counting tokens
+     */
+    public void file(Path path, long size, long lines, long tokens, long readNanos, long processNanos, long writeNanos) {
+        try (DocumentContext dc = appender.get().writingDocument()) {
+            Bytes<?> bytes = dc.wire().bytes();
+            bytes.writeUnsignedByte(FILE);
+            bytes.writeUtf8(path.toString());
+            bytes.writeStopBit(size);
+            bytes.writeStopBit(lines);
+            bytes.writeStopBit(tokens);
+            bytes.writeStopBit(readNanos);
+            bytes.writeStopBit(processNanos);
+            bytes.writeStopBit(writeNanos);
+        }
+    }
+
+    private ExcerptAppender newAppender() {
+        ExcerptAppender created = queue.createAppender();
+        appenders.add(created);
+        return created;
+    }
+
+    /**
+     * Receives the events read by {@link #read(ExcerptTailer, Listener)}.
+     */
+    public interface Listener {
+        void decision(String path, Decision decision);
+
+        void file(String path, long size, long lines, long tokens, long readNanos, long processNanos, long writeNanos);
+    }
+
+    /**
+     * Reads the next event, if any.
+     *
+     * @param tailer   the tailer to read from
+     * @param listener the listener for the event
+     * @return false if there was no event to read
+     */
+    public static boolean read(ExcerptTailer tailer, Listener listener) {
+        try (DocumentContext dc = tailer.readingDocument()) {
+            if (!dc.isPresent()) {
+                return false;
+            }
+            Bytes<?> bytes = dc.wire().bytes();
+            int type = bytes.readUnsignedByte();
+            String path = bytes.readUtf8();
+            if (type == DECISION) {
+                int ordinal = bytes.readUnsignedByte();
+                Decision[] decisions = Decision.values();
+                if (ordinal < decisions.length) {
+                    listener.decision(path, decisions[ordinal]);
+                }
+            } else if (type == FILE) {
+                listener.file(path, bytes.readStopBit(), bytes.readStopBit(), bytes.readStopBit(),
+                        bytes.readStopBit(), bytes.readStopBit(), bytes.readStopBit());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Closes the appenders of every thread that wrote, then the queue.
+     */
+    @Override
+    public void close() {
+        for (ExcerptAppender created : appenders) {
+            created.close();
+        }
+        appenders.clear();
+        queue.close();
+    }
+}
@@ -0,0 +1,194 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.dc.AdocJournal.Decision;
+import net.openhft.chronicle.queue.ChronicleQueue;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.threads.Pauser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * AdocJournalReader summarises or tails a journal written by {@link AdocJournal}.
+ *
+ * <p>Usage: {@code AdocJournalReader <journal-dir> [summary|tail|follow]}</p>
+ * <ul>
+ *   <li>{@code summary} (the default) totals the files written, the time spent in each stage,
+ *   the files left out by each rule, and lists the slowest files;</li>
+ *   <li>{@code tail} prints every event, one per line;</li>
+ *   <li>{@code follow} prints every event, then waits for more until the process is stopped.</li>
+ * </ul>
+ */
+public class AdocJournalReader {
+
+    private static final int SLOWEST_FILES = 10;
+
+    /**
+     * Entry point of the reader tool.
+     *
+     * @param args the journal directory, and optionally the mode
+     */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: AdocJournalReader <journal-dir> [summary|tail|follow]");
+            System.exit(1);
+        }
+        Path dir = Path.of(args[0]);
+        if (!Files.isDirectory(dir)) {
+            System.err.println("[WARN] No journal found in " + dir);
+            System.exit(1);
+        }
+        String mode = args.length > 1 ? args[1] : "summary";
+        switch (mode) {
+            case "summary":
+                summarise(dir).forEach(System.out::println);
+                break;
+            case "tail":
+                tail(dir, false, System.out::println);
+                break;
+            case "follow":
+                tail(dir, true, System.out::println);
+                break;
+            default:
+                System.err.println("Unknown mode: " + mode);
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Reads every event in a journal and summarises them.
+     *
+     * @param dir the journal directory
+     * @return the lines of the summary
+     */
+    public static List<String> summarise(Path dir) {
+        Summary summary = new Summary();
+        try (ChronicleQueue queue = ChronicleQueue.singleBuilder(dir).build()) {
+            ExcerptTailer tailer = queue.createTailer();
+            while (AdocJournal.read(tailer, summary)) {
+                // accumulated by the summary
+            }
+        }
+        return summary.lines();
+    }
+
+    /**
+     * Prints every event in a journal, one per line.
+     *
+     * @param dir    the journal directory
+     * @param follow true to keep waiting for new events until the thread is interrupted
+     * @param out    receives each line
+     */
+    public static void tail(Path dir, boolean follow, Consumer<String> out) {
+        AdocJournal.Listener printer = new AdocJournal.Listener() {
+            @Override
+            public void decision(String path, Decision decision) {
+                out.accept(decision + " " + path);
+            }
+
+            @Override
+            public void file(String path, long size, long lines, long tokens, long readNanos, long processNanos, long writeNanos) {
+                out.accept("WRITTEN " + path + " bytes " + size + ", lines " + lines + ", tokens " + tokens
+                        + ", read " + micros(readNanos) + ", process " + micros(processNanos)
+                        + ", write " + micros(writeNanos));
+            }
+        };
+        try (ChronicleQueue queue = ChronicleQueue.singleBuilder(dir).build()) {
+            ExcerptTailer tailer = queue.createTailer();
+            Pauser pauser = Pauser.balanced();
+            while (!Thread.currentThread().isInterrupted()) {
+                if (AdocJournal.read(tailer, printer)) {
+                    pauser.reset();
+                } else if (follow) {
+                    pauser.pause();
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String micros(long nanos) {
+        return (nanos + 500) / 1000 + " us";
+    }
+
+    /**
+     * Totals of the events read.
+     */
+    static final class Summary implements AdocJournal.Listener {
+        private final Map<Decision, Long> decisions = new EnumMap<>(Decision.class);
+        // the slowest files so far, fastest first
+        private final PriorityQueue<FileTime> slowest = new PriorityQueue<>(Comparator.comparingLong(FileTime::nanos));
+        private long files;
+        private long bytes;
+        private long lines;
+        private long tokens;
+        private long readNanos;
+        private long processNanos;
+        private long writeNanos;
+
+        @Override
+        public void decision(String path, Decision decision) {
+            decisions.merge(decision, 1L, Long::sum);
+        }
+
+        @Override
+        public void file(String path, long size, long lines, long tokens, long readNanos, long processNanos, long writeNanos) {
+            files++;
+            this.bytes += size;
+            this.lines += lines;
+            this.tokens += tokens;
+            this.readNanos += readNanos;
+            this.processNanos += processNanos;
+            this.writeNanos += writeNanos;
+            slowest.add(new FileTime(path, readNanos + processNanos + writeNanos));
+            if (slowest.size() > SLOWEST_FILES) {
+                slowest.poll();
+            }
+        }
+
+        List<String> lines() {
+            List<String> out = new ArrayList<>();
+            out.add("Files written " + files + ", bytes " + bytes + ", lines " + lines + ", tokens " + tokens);
+            out.add("Time read " + micros(readNanos) + ", process " + micros(processNanos) + ", write " + micros(writeNanos));
+            if (!decisions.isEmpty()) {
+                out.add("Left out:");
+                decisions.forEach((decision, count) -> out.add(" - " + decision + ": " + count));
+            }
+            if (!slowest.isEmpty()) {
+                List<FileTime> sorted = new ArrayList<>(slowest);
+                sorted.sort(Comparator.comparingLong(FileTime::nanos).reversed());
+                out.add("Slowest files:");
+                for (FileTime file : sorted) {
+                    out.add(" - " + file.path() + " (" + micros(file.nanos()) + ")");
+                }
+            }
+            return out;
+        }
+    }
+
+    private static final class FileTime {
+        private final String path;
+        private final long nanos;
+
+        FileTime(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+
+        String path() {
+            return path;
+        }
+
+        long nanos() {
+            return nanos;
+        }
+    }
+}
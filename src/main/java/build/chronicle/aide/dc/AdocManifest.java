@@ -0,0 +1,219 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.ContentHash;
+import net.openhft.chronicle.map.ChronicleMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the size, modification time and content hash of every file written to the
+ * context file, so an incremental run can tell exactly which files were added, modified
+ * or deleted since then.
+ *
+ * <p>Comparison is stat-first: a file whose size and modification time both match its entry
+ * is unchanged, and one whose size differs is modified, without reading it. Only when the
+ * size matches but the modification time does not (e.g. after a {@code touch} or
+ * {@code git checkout}) is the content hashed; if the hash still matches, the stored
+ * modification time is refreshed so the file is not hashed again next time.</p>
+ *
+ * <p>The manifest is normally persisted in a Chronicle Map file, e.g. next to the context file
+ * (see {@link #persistedTo(Path)}). Methods may be called from worker threads.</p>
+ */
+public class AdocManifest implements AutoCloseable {
+
+    private static final long DEFAULT_ENTRIES = 1 << 17;
+    private static final int AVERAGE_KEY_SIZE = 96;
+    // size + ',' + mtime + ',' + 64 hex characters
+    private static final int AVERAGE_VALUE_SIZE = 96;
+
+    private final Map<CharSequence, CharSequence> entries;
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Set<String> added = ConcurrentHashMap.newKeySet();
+    private final Set<String> modified = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The outcome of comparing a file with its manifest entry.
+     */
+    public enum Change {
+        // No entry for the file
+        ADDED,
+        // Size or content differs from the entry
+        MODIFIED,
+        // Same content as the entry
+        UNCHANGED
+    }
+
+    /**
+     * Creates a manifest backed by the given map.
+     *
+     * @param entries the map of absolute path to encoded entry
+     */
+    public AdocManifest(Map<CharSequence, CharSequence> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Opens, or creates, a manifest persisted to a Chronicle Map file.
+     *
+     * @param file the manifest file
+     * @return the manifest
+     * @throws IOException if the file cannot be created or opened
+     */
+    public static AdocManifest persistedTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        ChronicleMap<CharSequence, CharSequence> map = ChronicleMap
+                .of(CharSequence.class, CharSequence.class)
+                .name("aide-manifest")
+                .averageKeySize(AVERAGE_KEY_SIZE)
+                .averageValueSize(AVERAGE_VALUE_SIZE)
+                .entries(DEFAULT_ENTRIES)
+                .createPersistedTo(file.toFile());
+        return new AdocManifest(map);
+    }
+
+    /**
+     * @return true if no files have been recorded, e.g. before the first full run
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Removes all entries, ready to record a full run.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Records a file written in a full run.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the attributes of the file
+     * @param bytes the content of the file
+     */
+    public void record(Path path, BasicFileAttributes attrs, byte[] bytes) {
+        record(path, attrs, ContentHash.sha256(bytes));
+    }
+
+    /**
+     * Records a file written in a full run whose content has already been hashed.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the attributes of the file
+     * @param hash  the SHA-256 of the content as hex
+     */
+    public void record(Path path, BasicFileAttributes attrs, String hash) {
+        entries.put(path.toString(), encode(attrs.size(), attrs.lastModifiedTime().toMillis(), hash));
+    }
+
+    /**
+     * Compares a file with its entry, hashing the content only if the stat data is ambiguous.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the current attributes of the file
+     * @return how the file has changed since it was recorded
+     * @throws IOException if the file needs hashing and cannot be read
+     */
+    public Change compare(Path path, BasicFileAttributes attrs) throws IOException {
+        String key = path.toString();
+        seen.add(key);
+        CharSequence encoded = entries.get(key);
+        if (encoded == null) {
+            added.add(key);
+            return Change.ADDED;
+        }
+        String[] fields = encoded.toString().split(",", 3);
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        if (Long.parseLong(fields[0]) != size) {
+            modified.add(key);
+            return Change.MODIFIED;
+        }
+        if (Long.parseLong(fields[1]) == mtime) {
+            return Change.UNCHANGED;
+        }
+        String hash = ContentHash.sha256(Files.readAllBytes(path));
+        if (!hash.equals(fields[2])) {
+            modified.add(key);
+            return Change.MODIFIED;
+        }
+        // touched but not changed; remember the new time so it is not hashed again.
+        entries.put(key, encode(size, mtime, hash));
+        return Change.UNCHANGED;
+    }
+
+    /**
+     * @return the sorted paths of files compared as {@link Change#ADDED}
+     */
+    public List<String> getAdded() {
+        return sorted(added);
+    }
+
+    /**
+     * @return the sorted paths of files compared as {@link Change#MODIFIED}
+     */
+    public List<String> getModified() {
+        return sorted(modified);
+    }
+
+    /**
+     * Lists recorded files under the given roots that were not compared in this run and no longer
+     * exist, i.e. have been deleted or renamed; a file now filtered out, or left unread, is not deleted.
+     *
+     * @param roots the input paths of this run
+     * @return the sorted paths of deleted files
+     */
+    public List<String> getDeleted(List<Path> roots) {
+        List<String> deleted = new ArrayList<>();
+        for (CharSequence key : entries.keySet()) {
+            String path = key.toString();
+            if (!seen.contains(path) && isUnder(Path.of(path), roots) && Files.notExists(Path.of(path))) {
+                deleted.add(path);
+            }
+        }
+        Collections.sort(deleted);
+        return deleted;
+    }
+
+    /**
+     * Closes the underlying map if it is a Chronicle Map.
+     */
+    @Override
+    public void close() {
+        if (entries instanceof ChronicleMap) {
+            ((ChronicleMap<?, ?>) entries).close();
+        }
+    }
+
+    private static boolean isUnder(Path path, List<Path> roots) {
+        for (Path root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String encode(long size, long mtime, String hash) {
+        return size + "," + mtime + "," + hash;
+    }
+
+    private static List<String> sorted(Set<String> paths) {
+        List<String> list = new ArrayList<>(paths);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,293 @@
+package build.chronicle.aide.dc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AdocMetrics accumulates the time spent in each stage of a run, walking, filtering, reading,
+ * removing copyright, searching, tokenizing and writing, so a slow run can be attributed to a stage.
+ *
+ * <p>For each stage the number of calls, total and maximum nanoseconds are kept, with a latency
+ * histogram of power of two buckets from which percentiles are read to within a factor of two.
+ * Files and bytes written give the throughput of the run in files/s and MB/s.</p>
+ *
+ * <p>Recording is a few adds to {@link LongAdder}s and an atomic array, so it may be done from worker
+ * threads without contention. Collaborators only record when a metrics instance is set.</p>
+ */
+public class AdocMetrics {
+
+    // A bucket for each bit length of a time in nanoseconds
+    private static final int BUCKETS = 64;
+
+    private final Stage[] stages = Stage.values();
+    private final LongAdder[] counts = new LongAdder[stages.length];
+    private final LongAdder[] totalNanos = new LongAdder[stages.length];
+    private final LongAccumulator[] maxNanos = new LongAccumulator[stages.length];
+    private final AtomicLongArray histograms = new AtomicLongArray(stages.length * BUCKETS);
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private long startNanos;
+    private long elapsedNanos;
+
+    /**
+     * A stage of a run.
+     */
+    public enum Stage {
+        // Listing directories; the time the walk spends outside the engine's callbacks
+        WALK,
+        // Applying the ignore rules and local checks, without the binary check
+        FILTER,
+        // Checking content for binary data
+        BINARY_CHECK,
+        // Reading and decoding a file
+        READ,
+        // Removing a copyright block
+        COPYRIGHT,
+        // Searching a file
+        SEARCH,
+        // Counting the lines and tokens written
+        TOKENIZE,
+        // Writing to the output file
+        WRITE
+    }
+
+    /**
+     * Creates empty metrics.
+     */
+    public AdocMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            counts[i] = new LongAdder();
+            totalNanos[i] = new LongAdder();
+            maxNanos[i] = new LongAccumulator(Math::max, 0);
+        }
+    }
+
+    /**
+     * Clears the metrics of any earlier run, e.g. in watch mode, and starts the clock for this run.
+     */
+    public void start() {
+        for (int i = 0; i < stages.length; i++) {
+            counts[i].reset();
+            totalNanos[i].reset();
+            maxNanos[i].reset();
+        }
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, 0);
+        }
+        files.reset();
+        bytes.reset();
+        elapsedNanos = 0;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops the clock for this run.
+     */
+    public void stop() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Records the time of one call of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the time taken in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        int i = stage.ordinal();
+        long time = Math.max(0, nanos);
+        counts[i].increment();
+        totalNanos[i].add(time);
+        maxNanos[i].accumulate(time);
+        histograms.incrementAndGet(i * BUCKETS + bucket(time));
+    }
+
+    /**
+     * Records the time since a start time taken with {@link System#nanoTime()}.
+     *
+     * @param stage the stage
+     * @param start the start time
+     */
+    public void recordSince(Stage stage, long start) {
+        record(stage, System.nanoTime() - start);
+    }
+
+    /**
+     * Counts a file written.
+     *
+     * @param size the bytes read from the file
+     */
+    public void fileWritten(long size) {
+        files.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * @return the number of calls of a stage recorded
+     */
+    public long getCount(Stage stage) {
+        return counts[stage.ordinal()].sum();
+    }
+
+    /**
+     * @return the total time spent in a stage in nanoseconds
+     */
+    public long getTotalNanos(Stage stage) {
+        return totalNanos[stage.ordinal()].sum();
+    }
+
+    /**
+     * @return the longest call of a stage in nanoseconds
+     */
+    public long getMaxNanos(Stage stage) {
+        return maxNanos[stage.ordinal()].get();
+    }
+
+    /**
+     * Estimates a percentile of the time per call of a stage from its histogram.
+     *
+     * @param stage      the stage
+     * @param percentile the percentile, from 0 to 100
+     * @return an upper bound of the percentile in nanoseconds, at most twice the true value, or 0 if there were no calls
+     */
+    public long getPercentileNanos(Stage stage, double percentile) {
+        long count = getCount(stage);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        int base = stage.ordinal() * BUCKETS;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histograms.get(base + b);
+            if (seen >= rank) {
+                return Math.min(upperBound(b), getMaxNanos(stage));
+            }
+        }
+        return getMaxNanos(stage);
+    }
+
+    /**
+     * @return the number of files written
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * @return the bytes read from the files written
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the time between {@link #start()} and {@link #stop()}, or until now if still running
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return the files written per second of the run
+     */
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    /**
+     * @return the megabytes (10^6 bytes) read from the files written per second of the run
+     */
+    public double getMegabytesPerSecond() {
+        return perSecond(getBytes()) / 1e6;
+    }
+
+    /**
+     * @return a line for the throughput, then one per stage with calls
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Elapsed %s, files %d (%.1f files/s), bytes %d (%.2f MB/s)",
+                duration(getElapsedNanos()), getFiles(), getFilesPerSecond(), getBytes(), getMegabytesPerSecond()));
+        for (Stage stage : stages) {
+            long count = getCount(stage);
+            if (count == 0) {
+                continue;
+            }
+            lines.add(String.format(Locale.ROOT, "%s: %d calls, total %s, mean %s, p50 %s, p99 %s, max %s",
+                    stage, count, duration(getTotalNanos(stage)), duration(getTotalNanos(stage) / count),
+                    duration(getPercentileNanos(stage, 50)), duration(getPercentileNanos(stage, 99)),
+                    duration(getMaxNanos(stage))));
+        }
+        return lines;
+    }
+
+    /**
+     * @return the metrics as a JSON object, times in nanoseconds
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"elapsedNanos\": ").append(getElapsedNanos()).append(",\n");
+        sb.append("  \"files\": ").append(getFiles()).append(",\n");
+        sb.append("  \"bytes\": ").append(getBytes()).append(",\n");
+        sb.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.3f,%n", getFilesPerSecond()));
+        sb.append(String.format(Locale.ROOT, "  \"megabytesPerSecond\": %.3f,%n", getMegabytesPerSecond()));
+        sb.append("  \"stages\": {");
+        String sep = "\n";
+        for (Stage stage : stages) {
+            sb.append(sep).append("    \"").append(stage).append("\": {")
+                    .append("\"count\": ").append(getCount(stage))
+                    .append(", \"totalNanos\": ").append(getTotalNanos(stage))
+                    .append(", \"p50Nanos\": ").append(getPercentileNanos(stage, 50))
+                    .append(", \"p99Nanos\": ").append(getPercentileNanos(stage, 99))
+                    .append(", \"maxNanos\": ").append(getMaxNanos(stage))
+                    .append('}');
+            sep = ",\n";
+        }
+        return sb.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * Writes the metrics to a JSON file.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeJson(Path file) throws IOException {
+        Files.writeString(file, toJson());
+    }
+
+    private double perSecond(long amount) {
+        long elapsed = getElapsedNanos();
+        return elapsed <= 0 ? 0.0 : amount * 1e9 / elapsed;
+    }
+
+    private static int bucket(long time) {
+        // 0 for 0 ns, otherwise the bit length, so bucket b holds [2^(b-1), 2^b)
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(time));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 10_000_000) {
+            return nanos / 1_000 + " us";
+        }
+        if (nanos < 10_000_000_000L) {
+            return nanos / 1_000_000 + " ms";
+        }
+        return nanos / 1_000_000_000 + " s";
+    }
+}
@@ -0,0 +1,38 @@
+package build.chronicle.aide.dc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning a run of {@link AdocDocumentEngine#execute()}, carrying the totals
+ * of its {@link AdocDocumentStats}.
+ */
+@Name("build.chronicle.aide.Run")
+@Label("AIDE Run")
+@Category("AIDE")
+@Description("A run generating a context or increment file")
+@StackTrace(false)
+final class AdocRunEvent extends Event {
+
+    @Label("Output")
+    String output;
+
+    @Label("Incremental")
+    boolean incremental;
+
+    @Label("Files Written")
+    long files;
+
+    @Label("Files Skipped")
+    long skipped;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Tokens")
+    long tokens;
+}
@@ -0,0 +1,87 @@
+package build.chronicle.aide.dc;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory cache of rendered {@link AdocFileSection}s, so a long-running
+ * {@link AdocDocumentWatcher} only reads, filters and searches the files that changed.
+ *
+ * <p>Each entry remembers the size and modification time of the file it was rendered from
+ * and is only returned while both still match. Filtered sections are cached too; since the
+ * decision for a file can depend on its companion {@code .ad} summary or on the ignore rules,
+ * the watcher invalidates entries as those change. Skipped sections are never cached.
+ * Methods may be called from worker threads.</p>
+ */
+final class AdocSectionCache {
+
+    private final Map<Path, Entry> sections = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the section rendered from the file, if the file has not changed since.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the current attributes of the file
+     * @return the cached section, or null
+     */
+    AdocFileSection get(Path path, BasicFileAttributes attrs) {
+        Entry entry = sections.get(path);
+        if (entry == null
+                || entry.size != attrs.size()
+                || entry.lastModified != attrs.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        return entry.section;
+    }
+
+    /**
+     * Caches a section rendered from a file with the given attributes.
+     */
+    void put(Path path, BasicFileAttributes attrs, AdocFileSection section) {
+        if (section.isSkipped()) {
+            return;
+        }
+        sections.put(path, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), section));
+    }
+
+    /**
+     * Removes the entry for a path and, if it is a directory, everything under it.
+     */
+    void invalidate(Path path) {
+        sections.keySet().removeIf(key -> key.startsWith(path));
+    }
+
+    /**
+     * Checks whether a section is cached for a path or, if it is a directory, for anything under it.
+     */
+    boolean contains(Path path) {
+        for (Path key : sections.keySet()) {
+            if (key.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void clear() {
+        sections.clear();
+    }
+
+    int size() {
+        return sections.size();
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final AdocFileSection section;
+
+        Entry(long size, long lastModified, AdocFileSection section) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.section = section;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package build.chronicle.aide.dc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * An {@link AdocDocumentWriter} that splits its output into parts of at most a given number of
+ * tokens, so each part fits a model's context window, and writes an index of where each file is.
+ *
+ * <p>The first part is the output file itself, e.g. {@code context.asciidoc}, so incremental mode
+ * finds it as usual; later parts insert the part number before the extension, e.g.
+ * {@code context-2.asciidoc}. A file section is never split: a section that would take the current
+ * part over the limit starts the next part, and a section larger than the limit has a part to itself.
+ * Text written outside a section, e.g. the heading and summary, stays in the current part.</p>
+ *
+ * <p>Each part is held in memory until it is complete, then written to disk in the background while
+ * the next part is filled, so several parts may be written at once. {@link #close()} waits for them
+ * and writes the index, {@code <output>.index}, with a line per file section:
+ * {@code <relative path> TAB <part file name> TAB <byte offset of its heading>}.</p>
+ *
+ * <p>As with {@link AdocChannelDocumentWriter}, text is always encoded as UTF-8 and I/O errors are
+ * thrown as {@link UncheckedIOException}.</p>
+ */
+public class AdocShardedDocumentWriter extends AdocDocumentWriter {
+
+    private final AdocDocumentStats stats;
+    private final long maxTokens;
+    private final List<CompletableFuture<Void>> pendingParts = new ArrayList<>();
+    private final StringBuilder index = new StringBuilder();
+    private ByteArrayOutputStream part;
+    private ByteArrayOutputStream section;
+    private Path outputFile;
+    private int partNumber;
+    private int sectionsInPart;
+    private long partStartTokens;
+    private long sectionStartTokens;
+    private String sectionName;
+
+    /**
+     * Constructs a writer splitting its output into parts.
+     *
+     * @param stats     the statistics instance to update, also used to count the tokens in each part
+     * @param maxTokens the most tokens in a part, unless it holds a single larger file section
+     */
+    public AdocShardedDocumentWriter(AdocDocumentStats stats, long maxTokens) {
+        super(stats);
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens must be at least 1, was " + maxTokens);
+        }
+        this.stats = stats;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Starts the first part. Appending is not supported, as the parts of an earlier run cannot be
+     * extended without re-reading them, so the output is always replaced.
+     */
+    @Override
+    public void open(String outputFile, boolean append) throws IOException {
+        if (part != null) {
+            // close any existing parts first
+            close();
+        }
+        if (append) {
+            throw new IOException("Sharded output cannot be appended to: " + outputFile);
+        }
+        this.outputFile = Path.of(outputFile).toAbsolutePath().normalize();
+        index.setLength(0);
+        partNumber = 1;
+        part = new ByteArrayOutputStream();
+        sectionsInPart = 0;
+        partStartTokens = stats.getTotalTokens();
+    }
+
+    /**
+     * Holds the section back until it is complete, so it can be moved whole to the next part.
+     */
+    @Override
+    public void beginSection(String name) {
+        if (part == null) {
+            throw new IllegalStateException("No file is open for writing.");
+        }
+        endSection();
+        section = new ByteArrayOutputStream();
+        sectionName = name;
+        sectionStartTokens = stats.getTotalTokens();
+    }
+
+    /**
+     * Adds the completed section to the current part, first starting the next part if the
+     * section would take the current one over the token limit.
+     */
+    @Override
+    public void endSection() {
+        if (section == null) {
+            return;
+        }
+        if (sectionsInPart > 0 && stats.getTotalTokens() - partStartTokens > maxTokens) {
+            nextPart(sectionStartTokens);
+        }
+        index.append(sectionName).append('\t').append(partPath(partNumber).getFileName())
+                .append('\t').append(part.size()).append('\n');
+        part.writeBytes(section.toByteArray());
+        sectionsInPart++;
+        section = null;
+    }
+
+    @Override
+    protected void append(String text) {
+        if (part == null) {
+            throw new IllegalStateException("No file is open for writing.");
+        }
+        (section != null ? section : part).writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the last part, waits for every part to be written, then writes the index and removes
+     * any further parts left by an earlier, larger run.
+     */
+    @Override
+    public void close() {
+        if (part == null) {
+            return;
+        }
+        endSection();
+        submit(partNumber, part);
+        part = null;
+        try {
+            for (CompletableFuture<Void> pending : pendingParts) {
+                pending.join();
+            }
+            pendingParts.clear();
+            Files.writeString(indexPath(), index);
+            for (int n = partNumber + 1; Files.deleteIfExists(partPath(n)); n++) {
+                // stale part
+            }
+        } catch (CompletionException e) {
+            pendingParts.clear();
+            throw e.getCause() instanceof UncheckedIOException ? (UncheckedIOException) e.getCause() : e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of parts started since the output was opened
+     */
+    public int getParts() {
+        return partNumber;
+    }
+
+    /**
+     * @param n the part number, from 1
+     * @return the file holding that part
+     */
+    public Path partPath(int n) {
+        if (n == 1) {
+            return outputFile;
+        }
+        String name = outputFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String partName = dot > 0
+                ? name.substring(0, dot) + "-" + n + name.substring(dot)
+                : name + "-" + n;
+        return outputFile.resolveSibling(partName);
+    }
+
+    /**
+     * @return the index file, mapping each file section to its part and offset
+     */
+    public Path indexPath() {
+        return Path.of(outputFile + ".index");
+    }
+
+    private void nextPart(long startTokens) {
+        submit(partNumber, part);
+        partNumber++;
+        part = new ByteArrayOutputStream();
+        part.writeBytes(("= Directory Content (Part " + partNumber + ")\n\n").getBytes(StandardCharsets.UTF_8));
+        sectionsInPart = 0;
+        partStartTokens = startTokens;
+    }
+
+    /**
+     * Writes a completed part in the background.
+     */
+    private void submit(int n, ByteArrayOutputStream content) {
+        Path file = partPath(n);
+        pendingParts.add(CompletableFuture.runAsync(() -> {
+            try {
+                Files.write(file, content.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+}
@@ -0,0 +1,147 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.ContentHash;
+import net.openhft.chronicle.map.ChronicleMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Caches line and token counts of file sections, keyed by the encoding name and a
+ * SHA-256 hash of the section content, so unchanged content is never tokenized twice.
+ *
+ * <p>The cache is normally persisted in a Chronicle Map file (see {@link #persistedTo(Path)}) so it
+ * survives between runs; any {@link Map} may be used for an in-memory cache. Each value packs the
+ * line count in the upper 32 bits and the token count in the lower 32 bits of a {@code Long}.</p>
+ *
+ * <p>Hit and miss counters are kept so the effectiveness of the cache can be reported in the summary.</p>
+ */
+public class AdocTokenCache implements AutoCloseable {
+
+    static final long NOT_FOUND = -1L;
+    private static final long DEFAULT_ENTRIES = 1 << 20;
+    // encoding name + ':' + 64 hex characters
+    private static final int AVERAGE_KEY_SIZE = 80;
+
+    private final Map<CharSequence, Long> counts;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache backed by the given map.
+     *
+     * @param counts the map holding packed counts by key
+     */
+    public AdocTokenCache(Map<CharSequence, Long> counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Opens, or creates, a cache persisted to a Chronicle Map file.
+     *
+     * @param file the cache file
+     * @return the cache
+     * @throws IOException if the file cannot be created or opened
+     */
+    public static AdocTokenCache persistedTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        ChronicleMap<CharSequence, Long> map = ChronicleMap
+                .of(CharSequence.class, Long.class)
+                .name("aide-token-cache")
+                .averageKeySize(AVERAGE_KEY_SIZE)
+                .entries(DEFAULT_ENTRIES)
+                .createPersistedTo(file.toFile());
+        return new AdocTokenCache(map);
+    }
+
+    /**
+     * Builds the key for some content under a given encoding.
+     *
+     * @param encodingName the tokenizer encoding, e.g. o200k_base
+     * @param content      the content to count
+     * @return the cache key
+     */
+    public static String keyFor(String encodingName, CharSequence content) {
+        return encodingName + ':' + ContentHash.sha256(content);
+    }
+
+    /**
+     * Builds the key for content held as UTF-8 bytes; the same key as {@link #keyFor(String, CharSequence)}
+     * gives for the decoded text.
+     *
+     * @param encodingName the tokenizer encoding, e.g. o200k_base
+     * @param content      the content to count, as UTF-8
+     * @return the cache key
+     */
+    public static String keyFor(String encodingName, byte[] content) {
+        return encodingName + ':' + ContentHash.sha256(content);
+    }
+
+    /**
+     * Looks up the packed counts for a key, updating the hit and miss counters.
+     *
+     * @param key a key from {@link #keyFor(String, CharSequence)}
+     * @return the packed counts, or {@link #NOT_FOUND}
+     */
+    long lookup(String key) {
+        Long packed = counts.get(key);
+        if (packed == null) {
+            misses++;
+            return NOT_FOUND;
+        }
+        hits++;
+        return packed;
+    }
+
+    /**
+     * Stores the counts for a key.
+     *
+     * @param key    a key from {@link #keyFor(String, CharSequence)}
+     * @param lines  the number of lines in the content
+     * @param tokens the number of tokens in the content
+     */
+    void store(String key, long lines, long tokens) {
+        if (lines > Integer.MAX_VALUE || tokens > Integer.MAX_VALUE) {
+            // too large to pack; such content is simply not cached
+            return;
+        }
+        counts.put(key, (lines << 32) | tokens);
+    }
+
+    static long lines(long packed) {
+        return packed >>> 32;
+    }
+
+    static long tokens(long packed) {
+        return packed & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return the number of lookups that found cached counts
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to tokenize the content
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Closes the underlying map if it is a Chronicle Map.
+     */
+    @Override
+    public void close() {
+        if (counts instanceof ChronicleMap) {
+            ((ChronicleMap<?, ?>) counts).close();
+        }
+    }
+}
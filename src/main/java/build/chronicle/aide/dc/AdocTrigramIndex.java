@@ -0,0 +1,303 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.ContentHash;
+import net.openhft.chronicle.map.ChronicleMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent index of the trigrams in each file, used to skip files that cannot match a
+ * search without reading them.
+ *
+ * <p>For each file the index records its size, modification time and content hash, and a
+ * {@value #BITS}-bit set of the hashed, ASCII case-folded trigrams found within its lines.
+ * A {@link Query} lists the trigrams each search pattern requires; a file is only read if,
+ * for at least one pattern, every required trigram may be present. Bit sets can give false
+ * positives but never false negatives, so skipping a file never loses a match.</p>
+ *
+ * <p>An entry is only trusted while the size and modification time of the file match. Stale
+ * or missing entries are rebuilt as the engine reads the files, so the index is maintained
+ * incrementally by every search. If the content hash is unchanged, e.g. after a {@code touch},
+ * only the modification time is refreshed.</p>
+ *
+ * <p>The index is normally persisted in a Chronicle Map file (see {@link #persistedTo(Path)}).
+ * Methods may be called from worker threads.</p>
+ */
+public class AdocTrigramIndex implements AutoCloseable {
+
+    static final int BITS = 1 << 14;
+    private static final int HASH_BYTES = 32;
+    // size, mtime, SHA-256, bit set
+    private static final int VALUE_SIZE = 8 + 8 + HASH_BYTES + BITS / 8;
+    private static final long DEFAULT_ENTRIES = 1 << 17;
+    private static final int AVERAGE_KEY_SIZE = 96;
+
+    private final Map<CharSequence, byte[]> entries;
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Creates an index backed by the given map.
+     *
+     * @param entries the map of absolute path to encoded entry
+     */
+    public AdocTrigramIndex(Map<CharSequence, byte[]> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Opens, or creates, an index persisted to a Chronicle Map file.
+     *
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file cannot be created or opened
+     */
+    public static AdocTrigramIndex persistedTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        ChronicleMap<CharSequence, byte[]> map = ChronicleMap
+                .of(CharSequence.class, byte[].class)
+                .name("aide-trigram-index")
+                .averageKeySize(AVERAGE_KEY_SIZE)
+                .constantValueSizeBySample(new byte[VALUE_SIZE])
+                .entries(DEFAULT_ENTRIES)
+                .createPersistedTo(file.toFile());
+        return new AdocTrigramIndex(map);
+    }
+
+    /**
+     * Decides whether a file may contain a match, counting the outcome.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the current attributes of the file
+     * @param query the trigrams required by the search
+     * @return false only if the entry is current and lacks a required trigram of every pattern
+     */
+    boolean mayMatch(Path path, BasicFileAttributes attrs, Query query) {
+        byte[] entry = entries.get(path.toString());
+        if (entry == null || !isCurrent(ByteBuffer.wrap(entry), attrs) || query.mayMatch(entry)) {
+            candidates.incrementAndGet();
+            return true;
+        }
+        skipped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Brings the entry for a file up to date after it has been read, unless it is already current.
+     *
+     * @param path  the absolute path of the file
+     * @param attrs the attributes of the file when it was read
+     * @param bytes the content of the file
+     * @param lines the lines of the file
+     */
+    void update(Path path, BasicFileAttributes attrs, byte[] bytes, List<String> lines) {
+        String key = path.toString();
+        byte[] entry = entries.get(key);
+        if (entry != null && isCurrent(ByteBuffer.wrap(entry), attrs)) {
+            return;
+        }
+        byte[] hash = ContentHash.digest().digest(bytes);
+        if (entry == null || !Arrays.equals(hash, Arrays.copyOfRange(entry, 16, 16 + HASH_BYTES))) {
+            entry = new byte[VALUE_SIZE];
+            ByteBuffer.wrap(entry, 16, HASH_BYTES).put(hash);
+            for (String line : lines) {
+                addTrigrams(line, entry);
+            }
+        }
+        ByteBuffer.wrap(entry).putLong(0, attrs.size()).putLong(8, attrs.lastModifiedTime().toMillis());
+        entries.put(key, entry);
+    }
+
+    /**
+     * @return the number of files that had to be read
+     */
+    public long getCandidates() {
+        return candidates.get();
+    }
+
+    /**
+     * @return the number of files skipped without reading
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Closes the underlying map if it is a Chronicle Map.
+     */
+    @Override
+    public void close() {
+        if (entries instanceof ChronicleMap) {
+            ((ChronicleMap<?, ?>) entries).close();
+        }
+    }
+
+    private static boolean isCurrent(ByteBuffer entry, BasicFileAttributes attrs) {
+        return entry.getLong(0) == attrs.size() && entry.getLong(8) == attrs.lastModifiedTime().toMillis();
+    }
+
+    private static void addTrigrams(CharSequence text, byte[] entry) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int bit = bit(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2));
+            entry[48 + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    private static int bit(char a, char b, char c) {
+        long trigram = (long) fold(a) << 32 | (long) fold(b) << 16 | fold(c);
+        return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> (64 - 14));
+    }
+
+    private static char fold(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+    /**
+     * The trigrams required by each of a set of search patterns.
+     */
+    static final class Query {
+        private static final String SKIPPABLE_ESCAPES = "dDsSwWbBhHvVRXzZAG";
+
+        // bit numbers per pattern; a file may match if all bits of any pattern are set
+        private final int[][] bits;
+
+        private Query(int[][] bits) {
+            this.bits = bits;
+        }
+
+        /**
+         * Extracts the required trigrams of the patterns.
+         *
+         * @param patterns the search patterns, literals or regular expressions
+         * @return the query, or null if some pattern requires no trigram so every file must be scanned
+         */
+        static Query forPatterns(List<String> patterns) {
+            int[][] bits = new int[patterns.size()][];
+            for (int i = 0; i < patterns.size(); i++) {
+                List<String> runs = requiredLiterals(patterns.get(i));
+                int[] patternBits = runs.stream()
+                        .flatMap(run -> trigramBits(run).stream())
+                        .mapToInt(Integer::intValue)
+                        .distinct()
+                        .toArray();
+                if (patternBits.length == 0) {
+                    return null;
+                }
+                bits[i] = patternBits;
+            }
+            return bits.length == 0 ? null : new Query(bits);
+        }
+
+        boolean mayMatch(byte[] entry) {
+            for (int[] patternBits : bits) {
+                if (allSet(entry, patternBits)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean allSet(byte[] entry, int[] patternBits) {
+            for (int bit : patternBits) {
+                if ((entry[48 + (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static List<Integer> trigramBits(String run) {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0; i + 3 <= run.length(); i++) {
+                list.add(bit(run.charAt(i), run.charAt(i + 1), run.charAt(i + 2)));
+            }
+            return list;
+        }
+
+        /**
+         * Finds the runs of literal text that every match of the pattern must contain.
+         * This is deliberately conservative: alternation and groups give no runs at all.
+         */
+        static List<String> requiredLiterals(String pattern) {
+            List<String> runs = new ArrayList<>();
+            if (pattern.indexOf('|') >= 0 || pattern.indexOf('(') >= 0) {
+                return runs;
+            }
+            StringBuilder run = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                switch (ch) {
+                    case '\\':
+                        if (i + 1 >= pattern.length()) {
+                            return new ArrayList<>();
+                        }
+                        char escaped = pattern.charAt(++i);
+                        if (!Character.isLetterOrDigit(escaped)) {
+                            run.append(escaped);
+                        } else if (SKIPPABLE_ESCAPES.indexOf(escaped) >= 0) {
+                            // a class such as \d or a boundary such as \b
+                            endRun(runs, run);
+                        } else {
+                            // \x41, \p{L}, \Q...\E, back references etc. are not worth parsing
+                            return new ArrayList<>();
+                        }
+                        break;
+                    case '?':
+                    case '*':
+                    case '{':
+                        // the previous character is optional
+                        if (run.length() > 0) {
+                            run.setLength(run.length() - 1);
+                        }
+                        endRun(runs, run);
+                        if (ch == '{') {
+                            i = Math.max(i, pattern.indexOf('}', i));
+                        }
+                        break;
+                    case '+':
+                        endRun(runs, run);
+                        break;
+                    case '[':
+                        // a character class may be followed by a quantifier, so the run ends either way
+                        endRun(runs, run);
+                        int close = pattern.indexOf(']', i + 1);
+                        String body = close < 0 ? "" : pattern.substring(i + 1, close);
+                        if (body.isEmpty() || body.equals("^") || body.indexOf('[') >= 0 || body.indexOf('\\') >= 0) {
+                            // nested classes, escapes or a leading ']' are not worth parsing
+                            return new ArrayList<>();
+                        }
+                        i = close;
+                        break;
+                    case '.':
+                    case '^':
+                    case '$':
+                        endRun(runs, run);
+                        break;
+                    default:
+                        run.append(ch);
+                }
+            }
+            endRun(runs, run);
+            return runs;
+        }
+
+        private static void endRun(List<String> runs, StringBuilder run) {
+            if (run.length() >= 3) {
+                runs.add(run.toString());
+            }
+            run.setLength(0);
+        }
+    }
+}
@@ -6,8 +6,21 @@
  * <ul>
  *   <li>{@link build.chronicle.aide.dc.AdocDocumentEngine} - Orchestrates full vs. incremental mode.</li>
  *   <li>{@link build.chronicle.aide.dc.AdocDocumentApp} - CLI entry point for scanning and merging AsciiDoc.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocDocumentWatcher} - Watch mode keeping the context file up to date after each change.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocBudgetPlanner} - Selects the highest priority files that fit a token budget.</li>
  *   <li>{@link build.chronicle.aide.dc.AdocDocumentStats} - Tracks lines, blanks, and GPT-like tokens.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocManifest} - Size, mtime and content-hash manifest for incremental mode.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocTrigramIndex} - Persistent per-file trigram index used to skip files during a search.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocTokenEstimator} - Fast token estimates calibrated per file extension.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocMetrics} - Time per stage with latency histograms, and throughput, of a run.</li>
+ *   <li>AdocDecisionEvent, AdocFileReadEvent, AdocFileWriteEvent and AdocRunEvent - Flight Recorder events per decision, file and run.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocJournal} - Chronicle Queue journal of why each file was left out and what each file written cost.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocJournalReader} - Summarises or tails a journal.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocTokenCache} - Persistent content-hash cache of line and token counts.</li>
  *   <li>{@link build.chronicle.aide.dc.AdocDocumentWriter} - Writes scanned content, updating statistics.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocChannelDocumentWriter} - FileChannel based writer with a large direct buffer.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocShardedDocumentWriter} - Splits the output into token-bounded parts with an index.</li>
+ *   <li>{@link build.chronicle.aide.dc.AdocGitRepository} - Asks git which files changed or are tracked, reads commits and diffs them, using JGit.</li>
  *   <li>{@link build.chronicle.aide.dc.AdocFileFilter} - Applies .gitignore/aide.ignore filters and skip logic.</li>
  *   <li>{@link build.chronicle.aide.dc.AdocFileProcessor} - Reads files (UTF-8) and optionally removes copyright blocks.</li>
  * </ul>
@@ -0,0 +1,201 @@
+package build.chronicle.aide.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AhoCorasick finds every occurrence of a set of literal strings in a single pass over
+ * the text, in time proportional to the text length regardless of the number of literals.
+ *
+ * <p>Occurrences of each literal are counted without overlapping one another, as successive calls
+ * to {@link java.util.regex.Matcher#find()} would count them, so {@code "aa"} occurs twice in
+ * {@code "aaaaa"}. Occurrences of different literals may overlap, e.g. {@code "he"} within
+ * {@code "she"}.</p>
+ *
+ * <p>Matching is case-insensitive for ASCII letters only, the same as a {@link java.util.regex.Pattern}
+ * compiled with {@code CASE_INSENSITIVE} and without {@code UNICODE_CASE}, so a literal gives the
+ * same hits as the equivalent regular expression.</p>
+ *
+ * <p>Transitions on ASCII characters are precomputed into a dense table; other characters use a
+ * sparse map and follow failure links. Instances are immutable and may be shared between threads.</p>
+ */
+public final class AhoCorasick {
+
+    private static final int ASCII = 128;
+
+    private final int literalCount;
+    private final int[] lengths;
+    // Whether an occurrence of each literal may overlap the previous one, e.g. "aa" in "aaa"
+    private final boolean[] selfOverlapping;
+    // ASCII transitions per state, with failure links already followed
+    private final int[][] asciiNext;
+    // Other transitions, keyed by (long) state << 16 | char, without failure links
+    private final Map<Long, Integer> otherNext = new HashMap<>();
+    private final int[] fail;
+    // Indices of the literals ending at each state, including via failure links
+    private final int[][] output;
+
+    /**
+     * Builds an automaton for the given literals.
+     *
+     * @param literals the non-empty strings to find
+     * @throws IllegalArgumentException if a literal is empty
+     */
+    public AhoCorasick(List<String> literals) {
+        this.literalCount = literals.size();
+        this.lengths = new int[literalCount];
+        this.selfOverlapping = new boolean[literalCount];
+        List<int[]> next = new ArrayList<>();
+        // (char, child) pairs per state, in insertion order
+        List<List<int[]>> edges = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        addState(next, edges, outputs);
+
+        // build the trie
+        for (int i = 0; i < literals.size(); i++) {
+            String literal = literals.get(i);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Literal " + i + " is empty");
+            }
+            lengths[i] = literal.length();
+            selfOverlapping[i] = hasBorder(literal);
+            int state = 0;
+            for (int j = 0; j < literal.length(); j++) {
+                char ch = fold(literal.charAt(j));
+                int target = ch < ASCII ? next.get(state)[ch] : otherNext.getOrDefault(key(state, ch), -1);
+                if (target < 0) {
+                    target = addState(next, edges, outputs);
+                    if (ch < ASCII) {
+                        next.get(state)[ch] = target;
+                    } else {
+                        otherNext.put(key(state, ch), target);
+                    }
+                    edges.get(state).add(new int[]{ch, target});
+                }
+                state = target;
+            }
+            outputs.get(state).add(i);
+        }
+
+        // breadth-first, so failure targets are always complete before they are used
+        int states = next.size();
+        this.asciiNext = next.toArray(new int[0][]);
+        this.fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int state = queue[head++];
+            for (int[] edge : edges.get(state)) {
+                int child = edge[1];
+                fail[child] = state == 0 ? 0 : transition(fail[state], (char) edge[0]);
+                outputs.get(child).addAll(outputs.get(fail[child]));
+                queue[tail++] = child;
+            }
+            int[] row = asciiNext[state];
+            for (int ch = 0; ch < ASCII; ch++) {
+                if (row[ch] < 0) {
+                    row[ch] = state == 0 ? 0 : asciiNext[fail[state]][ch];
+                }
+            }
+        }
+
+        this.output = new int[states][];
+        for (int s = 0; s < states; s++) {
+            output[s] = outputs.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @return the number of literals in the automaton
+     */
+    public int size() {
+        return literalCount;
+    }
+
+    /**
+     * Finds the occurrences of the literals in the text, each literal's without overlapping one another.
+     *
+     * @param text      the text to scan
+     * @param hitCounts incremented by one per occurrence at the index of each literal found; may be null
+     * @return true if any literal occurs in the text
+     */
+    public boolean scan(CharSequence text, int[] hitCounts) {
+        boolean found = false;
+        // where the next counted occurrence of each self-overlapping literal may start, once one is found
+        int[] nextStart = null;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = fold(text.charAt(i));
+            state = transition(state, ch);
+            int[] literals = output[state];
+            if (literals.length > 0) {
+                if (hitCounts == null) {
+                    return true;
+                }
+                found = true;
+                for (int literal : literals) {
+                    if (selfOverlapping[literal]) {
+                        if (nextStart == null) {
+                            nextStart = new int[literalCount];
+                        }
+                        if (i + 1 - lengths[literal] < nextStart[literal]) {
+                            continue;
+                        }
+                        nextStart[literal] = i + 1;
+                    }
+                    hitCounts[literal]++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int transition(int state, char ch) {
+        if (ch < ASCII) {
+            return asciiNext[state][ch];
+        }
+        while (true) {
+            Integer target = otherNext.get(key(state, ch));
+            if (target != null) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int addState(List<int[]> next, List<List<int[]>> edges, List<List<Integer>> outputs) {
+        int[] row = new int[ASCII];
+        Arrays.fill(row, -1);
+        next.add(row);
+        edges.add(new ArrayList<>());
+        outputs.add(new ArrayList<>());
+        return next.size() - 1;
+    }
+
+    /**
+     * Checks whether a proper prefix of a literal is also its suffix, so two occurrences can overlap.
+     */
+    private static boolean hasBorder(String literal) {
+        for (int k = 1; k < literal.length(); k++) {
+            if (literal.regionMatches(true, 0, literal, literal.length() - k, k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long key(int state, char ch) {
+        return (long) state << 16 | ch;
+    }
+
+    private static char fold(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+}
@@ -0,0 +1,89 @@
+package build.chronicle.aide.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ContentHash computes SHA-256 digests of file content as lower-case hex strings,
+ * for use as stable cache and manifest keys.
+ *
+ * <p>A {@link MessageDigest} is kept per thread, so hashing does not allocate a digest per call.</p>
+ */
+public final class ContentHash {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private ContentHash() {
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of the given text.
+     *
+     * @param text the text to hash
+     * @return the SHA-256 digest as 64 hex characters
+     */
+    public static String sha256(CharSequence text) {
+        return sha256(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes the given bytes.
+     *
+     * @param bytes the bytes to hash
+     * @return the SHA-256 digest as 64 hex characters
+     */
+    public static String sha256(byte[] bytes) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return toHex(digest.digest(bytes));
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer without changing its position.
+     *
+     * @param buffer the bytes to hash, e.g. a memory-mapped file
+     * @return the SHA-256 digest as 64 hex characters
+     */
+    public static String sha256(ByteBuffer buffer) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        digest.update(buffer.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns this thread's digest, reset and ready for incremental hashing, e.g. with a
+     * {@link java.security.DigestInputStream}. Finish with {@link #toHex(byte[])}.
+     *
+     * @return the SHA-256 digest of the calling thread
+     */
+    public static MessageDigest digest() {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Formats a digest as lower-case hex.
+     *
+     * @param hash the digest bytes
+     * @return the hex string
+     */
+    public static String toHex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -1,5 +1,6 @@
 package build.chronicle.aide.util;
 
+import org.eclipse.jgit.ignore.FastIgnoreRule;
 import org.eclipse.jgit.ignore.IgnoreNode;
 
 import java.io.FileInputStream;
@@ -11,7 +12,7 @@ import java.nio.file.Path;
  * GitignoreFilter reads a .gitignore file and provides an isExcluded() method
  * to test whether a given file path should be excluded based on the parsed rules.
  */
-public class GitignoreFilter {
+public class GitignoreFilter implements IgnoreRules {
 
     private final Path baseDir;
     private final IgnoreNode ignoreNode;
@@ -41,6 +42,32 @@ public class GitignoreFilter {
         DEFAULT
     }
 
+    @Override
+    public boolean mayReinclude(Path dir) {
+        return hasReincludingRule(ignoreNode);
+    }
+
+    /**
+     * Checks for negation rules that may match a path under a hidden directory: those matching on
+     * the name alone, or with a path element starting with a dot or a wildcard.
+     */
+    static boolean hasReincludingRule(IgnoreNode node) {
+        for (FastIgnoreRule rule : node.getRules()) {
+            if (!rule.getNegation()) {
+                continue;
+            }
+            if (rule.getNameOnly()) {
+                return true;
+            }
+            for (String element : rule.toString().substring(1).split("/")) {
+                if (element.startsWith(".") || element.startsWith("*")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Determines whether the given path is excluded based on the .gitignore rules.
      *
@@ -58,6 +85,7 @@ public class GitignoreFilter {
      * @param isDirectory true if the path is a directory
      * @return MatchResult indicating whether the file is ignored, explicitly included, or default.
      */
+    @Override
     public MatchResult isExcluded(Path file, boolean isDirectory) {
         if (file == null) {
             return MatchResult.DEFAULT;
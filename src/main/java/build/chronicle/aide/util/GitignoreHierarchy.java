@@ -0,0 +1,230 @@
+package build.chronicle.aide.util;
+
+import build.chronicle.aide.util.GitignoreFilter.MatchResult;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.util.SystemReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GitignoreHierarchy applies the ignore files of a whole working tree the way git does:
+ * the {@code .gitignore} and {@code aide.ignore} in every directory, then {@code .git/info/exclude},
+ * then the global excludes file ({@code core.excludesFile}, by default {@code ~/.config/git/ignore}).
+ *
+ * <p>Rules in a deeper directory take precedence over those above it, and within a directory the
+ * rules of {@code aide.ignore} take precedence over {@code .gitignore}. As in git, a file inside an
+ * ignored directory is ignored, whatever the rules for the file itself.</p>
+ *
+ * <p>The ignore files of each directory are parsed once, the first time a path in that directory is
+ * tested, and whether each directory is ignored is cached too, so testing a file costs at most one
+ * match per directory above it. Instances may be shared between threads.</p>
+ */
+public class GitignoreHierarchy implements IgnoreRules {
+
+    private static final String[] IGNORE_FILES = {".gitignore", "aide.ignore"};
+
+    private final Path root;
+    private final IgnoreNode infoExclude;
+    private final IgnoreNode globalExcludes;
+    // Parsed ignore files per directory; empty if the directory has none
+    private final Map<Path, Optional<IgnoreNode>> nodes = new ConcurrentHashMap<>();
+    private final Map<Path, Boolean> ignoredDirectories = new ConcurrentHashMap<>();
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+
+    /**
+     * Creates the rules of a working tree.
+     *
+     * @param root           the top directory of the working tree; rules are not looked for above it
+     * @param globalExcludes the global excludes file, or null
+     * @throws IOException if {@code .git/info/exclude} or the global excludes file cannot be read
+     */
+    public GitignoreHierarchy(Path root, Path globalExcludes) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.infoExclude = parse(this.root.resolve(".git").resolve("info").resolve("exclude"));
+        this.globalExcludes = globalExcludes == null ? null : parse(globalExcludes);
+    }
+
+    /**
+     * Creates the rules for scanning a directory: the working tree is the nearest directory at or
+     * above it containing {@code .git}, or the directory itself if there is none, and the global
+     * excludes file is found from the user's git configuration.
+     *
+     * @param dir the directory being scanned
+     * @return the rules
+     * @throws IOException if an ignore file cannot be read
+     */
+    public static GitignoreHierarchy forDirectory(Path dir) throws IOException {
+        Path start = dir.toAbsolutePath().normalize();
+        Path root = start;
+        for (Path p = start; p != null; p = p.getParent()) {
+            if (Files.exists(p.resolve(".git"))) {
+                root = p;
+                break;
+            }
+        }
+        return new GitignoreHierarchy(root, findGlobalExcludes());
+    }
+
+    /**
+     * Finds the global excludes file named by {@code core.excludesFile} in the user's git
+     * configuration, or the default {@code $XDG_CONFIG_HOME/git/ignore}.
+     *
+     * @return the file, or null if it does not exist
+     */
+    static Path findGlobalExcludes() {
+        String excludesFile = null;
+        try {
+            Config config = SystemReader.getInstance().getUserConfig();
+            excludesFile = config.getString("core", null, "excludesFile");
+        } catch (IOException | ConfigInvalidException e) {
+            System.err.println("[WARN] Failed to read the git user configuration (" + e.getMessage() + ")");
+        }
+        Path path;
+        if (excludesFile != null) {
+            path = excludesFile.startsWith("~/")
+                    ? Paths.get(System.getProperty("user.home"), excludesFile.substring(2))
+                    : Paths.get(excludesFile);
+        } else {
+            String xdg = System.getenv("XDG_CONFIG_HOME");
+            path = xdg == null || xdg.isEmpty()
+                    ? Paths.get(System.getProperty("user.home"), ".config", "git", "ignore")
+                    : Paths.get(xdg, "git", "ignore");
+        }
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * @return the top directory of the working tree
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the number of ignore files parsed so far
+     */
+    public int getParsedFiles() {
+        return parsedFiles.get();
+    }
+
+    /**
+     * Determines whether the given path is excluded by the rules of the working tree.
+     * Paths outside the working tree are never excluded.
+     *
+     * @param file        the file path to test (absolute or relative)
+     * @param isDirectory true if the path is a directory
+     * @return MatchResult indicating whether the file is ignored, explicitly included, or default.
+     */
+    @Override
+    public MatchResult isExcluded(Path file, boolean isDirectory) {
+        if (file == null) {
+            return MatchResult.DEFAULT;
+        }
+        Path absFile = file.toAbsolutePath().normalize();
+        if (!absFile.startsWith(root) || absFile.equals(root)) {
+            return MatchResult.DEFAULT;
+        }
+        if (isDirectoryIgnored(absFile.getParent())) {
+            return MatchResult.IGNORED;
+        }
+        return match(absFile, isDirectory);
+    }
+
+    @Override
+    public boolean mayReinclude(Path dir) {
+        Path absDir = dir.toAbsolutePath().normalize();
+        for (Path p = absDir; p != null && p.startsWith(root); p = p.getParent()) {
+            Optional<IgnoreNode> node = nodes.computeIfAbsent(p, this::parseDirectory);
+            if (node.isPresent() && GitignoreFilter.hasReincludingRule(node.get())) {
+                return true;
+            }
+        }
+        return GitignoreFilter.hasReincludingRule(infoExclude)
+                || (globalExcludes != null && GitignoreFilter.hasReincludingRule(globalExcludes));
+    }
+
+    private boolean isDirectoryIgnored(Path dir) {
+        if (dir.equals(root)) {
+            return false;
+        }
+        Boolean ignored = ignoredDirectories.get(dir);
+        if (ignored == null) {
+            ignored = isDirectoryIgnored(dir.getParent()) || match(dir, true) == MatchResult.IGNORED;
+            ignoredDirectories.put(dir, ignored);
+        }
+        return ignored;
+    }
+
+    /**
+     * Matches a path against the ignore files from its own directory up to the root, then the
+     * repository and global excludes; the first rule that matches decides.
+     */
+    private MatchResult match(Path absFile, boolean isDirectory) {
+        for (Path dir = absFile.getParent(); dir != null && dir.startsWith(root); dir = dir.getParent()) {
+            Optional<IgnoreNode> node = nodes.computeIfAbsent(dir, this::parseDirectory);
+            if (node.isPresent()) {
+                MatchResult result = match(node.get(), dir, absFile, isDirectory);
+                if (result != MatchResult.DEFAULT) {
+                    return result;
+                }
+            }
+        }
+        MatchResult result = match(infoExclude, root, absFile, isDirectory);
+        if (result == MatchResult.DEFAULT && globalExcludes != null) {
+            result = match(globalExcludes, root, absFile, isDirectory);
+        }
+        return result;
+    }
+
+    private static MatchResult match(IgnoreNode node, Path dir, Path absFile, boolean isDirectory) {
+        String relPath = dir.relativize(absFile).toString().replace(File.separatorChar, '/');
+        return switch (node.isIgnored(relPath, isDirectory)) {
+            case IGNORED -> MatchResult.IGNORED;
+            case NOT_IGNORED -> MatchResult.NOT_IGNORED;
+            default -> MatchResult.DEFAULT;
+        };
+    }
+
+    private Optional<IgnoreNode> parseDirectory(Path dir) {
+        IgnoreNode node = null;
+        for (String name : IGNORE_FILES) {
+            Path ignoreFile = dir.resolve(name);
+            if (!Files.isRegularFile(ignoreFile)) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(ignoreFile)) {
+                if (node == null) {
+                    node = new IgnoreNode();
+                }
+                // later rules take precedence, so aide.ignore overrides .gitignore
+                node.parse(in);
+                parsedFiles.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("[WARN] Failed to parse ignore file: " + ignoreFile + " (" + e.getMessage() + ")");
+            }
+        }
+        return Optional.ofNullable(node);
+    }
+
+    private IgnoreNode parse(Path file) throws IOException {
+        IgnoreNode node = new IgnoreNode();
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                node.parse(in);
+            }
+            parsedFiles.incrementAndGet();
+        }
+        return node;
+    }
+}
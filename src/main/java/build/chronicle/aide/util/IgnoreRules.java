@@ -0,0 +1,30 @@
+package build.chronicle.aide.util;
+
+import build.chronicle.aide.util.GitignoreFilter.MatchResult;
+
+import java.nio.file.Path;
+
+/**
+ * A set of ignore rules that decides whether a path is excluded, such as a single ignore file
+ * ({@link GitignoreFilter}) or the ignore files of a whole working tree ({@link GitignoreHierarchy}).
+ */
+public interface IgnoreRules {
+
+    /**
+     * Determines whether the given path is excluded by the rules.
+     *
+     * @param file        the file path to test (absolute or relative)
+     * @param isDirectory true if the path is a directory
+     * @return MatchResult indicating whether the file is ignored, explicitly included, or default.
+     */
+    MatchResult isExcluded(Path file, boolean isDirectory);
+
+    /**
+     * Determines whether a negation rule such as {@code !*.yml} or {@code !.github/ci.yml} might
+     * explicitly include a path under a hidden directory, so the directory cannot be skipped as a whole.
+     *
+     * @param dir the directory about to be skipped
+     * @return false only if no such rule applies
+     */
+    boolean mayReinclude(Path dir);
+}
@@ -0,0 +1,159 @@
+package build.chronicle.aide.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Utf8Validator checks in a single pass that bytes are well-formed UTF-8 text: no malformed,
+ * overlong or surrogate sequences, nothing above U+10FFFF, and no control characters other than
+ * tab, line feed, carriage return and backspace.
+ *
+ * <p>Runs of ASCII are checked eight bytes at a time in a {@code long} (SWAR): one test finds a
+ * non-ASCII byte and another a control character, so plain text is validated at close to memory
+ * bandwidth. Multibyte sequences are checked a byte at a time.</p>
+ *
+ * <p>Files are read into a buffer reused per thread. Methods are thread-safe.</p>
+ */
+public final class Utf8Validator {
+
+    /**
+     * Returned by {@link #validate(byte[], int, int)} for invalid content.
+     */
+    public static final int INVALID = -1;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = 0x2020202020202020L;
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private Utf8Validator() {
+    }
+
+    /**
+     * Checks that bytes are complete, valid UTF-8 text.
+     *
+     * @param bytes  the content
+     * @param offset the first byte to check
+     * @param length the number of bytes to check
+     * @return true if valid
+     */
+    public static boolean isText(byte[] bytes, int offset, int length) {
+        return validate(bytes, offset, length) == 0;
+    }
+
+    /**
+     * Checks a whole file, reading it in chunks into a buffer reused per thread.
+     *
+     * @param file the file
+     * @return true if the file is valid UTF-8 text
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isText(Path file) throws IOException {
+        byte[] buffer = BUFFER.get();
+        try (InputStream in = Files.newInputStream(file)) {
+            int carried = 0;
+            int read;
+            while ((read = in.readNBytes(buffer, carried, buffer.length - carried)) > 0) {
+                int length = carried + read;
+                int incomplete = validate(buffer, 0, length);
+                if (incomplete == INVALID) {
+                    return false;
+                }
+                // move a sequence split by the chunk boundary to the start of the buffer
+                System.arraycopy(buffer, length - incomplete, buffer, 0, incomplete);
+                carried = incomplete;
+            }
+            return carried == 0;
+        }
+    }
+
+    /**
+     * Validates bytes that may end part way through a multibyte sequence, e.g. one chunk of a file.
+     *
+     * @param bytes  the content
+     * @param offset the first byte to check
+     * @param length the number of bytes to check
+     * @return {@link #INVALID}, or the number of bytes at the end that start an incomplete but
+     * so far valid sequence, 0 to 3
+     */
+    public static int validate(byte[] bytes, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            // eight ASCII bytes at a time
+            while (i + Long.BYTES <= end) {
+                long word = (long) LONGS.get(bytes, i);
+                if ((word & HIGH_BITS) != 0) {
+                    break;
+                }
+                // a byte below 0x20 borrows into its high bit; exact as every byte is ASCII
+                if (((word - SPACES) & ~word & HIGH_BITS) != 0 && !allowedControls(bytes, i, Long.BYTES)) {
+                    return INVALID;
+                }
+                i += Long.BYTES;
+            }
+            if (i >= end) {
+                break;
+            }
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                if (b < 0x20 && !isAllowedControl(b)) {
+                    return INVALID;
+                }
+                i++;
+                continue;
+            }
+            int needed;
+            int min;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                needed = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                needed = 2;
+                // no overlong forms or surrogates
+                min = b == 0xE0 ? 0xA0 : 0x80;
+                max = b == 0xED ? 0x9F : 0xBF;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                needed = 3;
+                // no overlong forms or code points above U+10FFFF
+                min = b == 0xF0 ? 0x90 : 0x80;
+                max = b == 0xF4 ? 0x8F : 0xBF;
+            } else {
+                return INVALID;
+            }
+            int available = Math.min(needed, end - i - 1);
+            for (int k = 1; k <= available; k++) {
+                int c = bytes[i + k] & 0xFF;
+                if (k == 1 ? c < min || c > max : c < 0x80 || c > 0xBF) {
+                    return INVALID;
+                }
+            }
+            if (available < needed) {
+                return end - i;
+            }
+            i += needed + 1;
+        }
+        return 0;
+    }
+
+    private static boolean allowedControls(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = bytes[i];
+            if (b < 0x20 && !isAllowedControl(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAllowedControl(int b) {
+        return b == '\t' || b == '\n' || b == '\r' || b == '\b';
+    }
+}
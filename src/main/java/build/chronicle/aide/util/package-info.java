@@ -6,6 +6,11 @@
  * <ul>
  *   <li>{@link build.chronicle.aide.util.GitignoreFilter} - Parses a .gitignore file and
  *       determines inclusion/exclusion of specific paths.</li>
+ *   <li>{@link build.chronicle.aide.util.GitignoreHierarchy} - Applies every ignore file in a working tree,
+ *       parsing each directory's rules once.</li>
+ *   <li>{@link build.chronicle.aide.util.ContentHash} - SHA-256 content hashes used as cache keys.</li>
+ *   <li>{@link build.chronicle.aide.util.Utf8Validator} - Single-pass UTF-8 text validation, eight ASCII bytes at a time.</li>
+ *   <li>{@link build.chronicle.aide.util.AhoCorasick} - Single-pass, case-insensitive multi-literal matcher.</li>
  * </ul>
  */
 package build.chronicle.aide.util;
@@ -0,0 +1,131 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocBudgetPlannerTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testSelectsHighestPriorityFilesThatFit() {
+        AdocBudgetPlanner planner = new AdocBudgetPlanner(100);
+        List<AdocBudgetPlanner.Candidate> candidates = List.of(
+                new AdocBudgetPlanner.Candidate(tempDir.resolve("a"), 60, 3.0),
+                new AdocBudgetPlanner.Candidate(tempDir.resolve("b"), 50, 2.0),
+                new AdocBudgetPlanner.Candidate(tempDir.resolve("c"), 40, 1.0),
+                new AdocBudgetPlanner.Candidate(tempDir.resolve("d"), 0, 0.0));
+
+        AdocBudgetPlanner.Selection selection = planner.select(candidates);
+
+        // b does not fit after a, but the lower priority c does
+        assertEquals(Set.of(tempDir.resolve("a"), tempDir.resolve("c")), selection.selected());
+        assertEquals(100, selection.estimatedTokens());
+        assertEquals(List.of(tempDir.resolve("b"), tempDir.resolve("d")),
+                selection.dropped().stream().map(AdocBudgetPlanner.Candidate::path).collect(Collectors.toList()),
+                "Zero weight files are always dropped");
+    }
+
+    @Test
+    void testWeightsAndPriority() throws IOException {
+        Path weights = tempDir.resolve("aide.weights");
+        Files.write(weights, List.of(
+                "# weights",
+                "src/main/** 2",
+                "*.adoc 0.5",
+                "src/main/legacy/** 0"));
+        Path base = tempDir.toAbsolutePath();
+        AdocBudgetPlanner planner = new AdocBudgetPlanner(1000);
+        planner.loadWeights(weights);
+        planner.setPriority("recency:0,depth:0,density:1");
+
+        assertEquals(2.0, planner.candidate(base.resolve("src/main/java/A.java"), null, 100, 0).priority(), 1e-9);
+        assertEquals(0.5, planner.candidate(base.resolve("src/main/doc.adoc"), null, 100, 0).priority(), 1e-9);
+        assertEquals(0.0, planner.candidate(base.resolve("src/main/legacy/Old.java"), null, 100, 0).priority(), 1e-9);
+        // 10 hits per thousand tokens gives a density of 10 / 11
+        assertEquals(1 + 10.0 / 11, planner.candidate(base.resolve("B.java"), null, 1000, 10).priority(), 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () -> planner.setPriority("size:1"));
+        assertThrows(IllegalArgumentException.class, () -> new AdocBudgetPlanner(0));
+    }
+
+    @Test
+    void testEngineWritesOnlyFilesWithinBudget() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        Files.write(source.resolve("Small.java"), List.of("class Small {}"));
+        StringBuilder large = new StringBuilder("class Large {\n");
+        for (int i = 0; i < 400; i++) {
+            large.append("    int field").append(i).append(";\n");
+        }
+        Files.writeString(source.resolve("Large.java"), large.append("}\n"));
+        Path weights = tempDir.resolve("aide.weights");
+        Files.write(weights, List.of("Large.java 0.5"));
+
+        AdocBudgetPlanner planner = new AdocBudgetPlanner(1000);
+        planner.loadWeights(weights);
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(
+                new AdocFileFilter(null, 128 << 10, false), new AdocDocumentWriter(stats), stats);
+        Path contextFile = tempDir.resolve("context.asciidoc");
+        engine.setContextAsciidoc(contextFile.toString());
+        engine.setBudgetPlanner(planner);
+        engine.addInputPath(source.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+
+        String output = Files.readString(contextFile);
+        assertContains("class Small {}", output, "The file that fits should be written");
+        assertDoesntContain("field399", output, "The file that does not fit should be dropped");
+        assertContains("Token budget: 1000, estimated 20 for 1 of 2 files", output, "The summary should report the budget");
+        assertContains("Dropped Files:", output, "The summary should list dropped files");
+        assertContains("Large.java (~", output, "The summary should list dropped files");
+    }
+
+    @Test
+    void testSearchedFilesAreReadOnceWithBudget() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        Files.write(source.resolve("Alpha.java"), List.of("class Alpha {", "    int needle;", "}"));
+        Files.write(source.resolve("Beta.java"), List.of("class Beta {", "    int needle;", "}"));
+        Files.write(source.resolve("Gamma.java"), List.of("class Gamma {}"));
+
+        AdocMetrics metrics = new AdocMetrics();
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(
+                new AdocFileFilter(null, 128 << 10, false), new AdocDocumentWriter(stats), stats);
+        Path contextFile = tempDir.resolve("context.asciidoc");
+        engine.setContextAsciidoc(contextFile.toString());
+        engine.setBudgetPlanner(new AdocBudgetPlanner(1000));
+        engine.setSearchPattern("needle", 0);
+        engine.setMetrics(metrics);
+        engine.addInputPath(source.toString());
+        try {
+            engine.execute();
+        } finally {
+            engine.close();
+        }
+
+        String output = Files.readString(contextFile);
+        assertContains("Alpha.java", output, "Matching files are written");
+        assertContains("Beta.java", output, "Matching files are written");
+        assertDoesntContain("Gamma.java", output, "Files without matches are not written");
+        assertEquals(3, metrics.getCount(AdocMetrics.Stage.SEARCH),
+                "Each file should be searched once, when planning, and not again when written");
+    }
+}
@@ -0,0 +1,118 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocChannelDocumentWriterTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testWrite_multiByteTextLargerThanBuffer() throws IOException {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocChannelDocumentWriter writer = new AdocChannelDocumentWriter(stats, 16);
+        Path outputFile = tempDir.resolve("output.adoc");
+        writer.open(outputFile.toString(), false);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            String line = "Line " + i + " héllo wörld ✓ 😀\n";
+            writer.write(line);
+            expected.append(line);
+            if (i % 5 == 4) {
+                writer.endSection();
+            }
+        }
+        writer.close();
+
+        assertEquals(expected.toString(), Files.readString(outputFile, StandardCharsets.UTF_8));
+        assertEquals(20, stats.getTotalLines(), "The stats should reflect 20 lines written");
+    }
+
+    @Test
+    void testOpen_appendMode() throws IOException {
+        AdocChannelDocumentWriter writer = new AdocChannelDocumentWriter(new AdocDocumentStats());
+        Path outputFile = tempDir.resolve("append.adoc");
+        writer.open(outputFile.toString(), false);
+        writer.write("First line\n");
+        writer.close();
+        writer.open(outputFile.toString(), true);
+        writer.write("Appended line\n");
+        writer.close();
+
+        assertEquals(List.of("First line", "Appended line"), Files.readAllLines(outputFile));
+    }
+
+    @Test
+    void testWrite_noFileOpen_throwsException() {
+        AdocChannelDocumentWriter writer = new AdocChannelDocumentWriter(new AdocDocumentStats());
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> writer.write("Should fail"));
+        assertEquals("No file is open for writing.", exception.getMessage());
+    }
+
+    @Test
+    void testEngineOutputMatchesPrintWriter() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        for (int i = 0; i < 10; i++) {
+            Files.write(source.resolve("File" + i + ".txt"), List.of("Line " + i, "", "Last line"));
+        }
+        AdocDocumentStats printStats = new AdocDocumentStats();
+        String print = runEngine(source, "print", new AdocDocumentWriter(printStats), printStats);
+        AdocDocumentStats nioStats = new AdocDocumentStats();
+        String nio = runEngine(source, "nio", new AdocChannelDocumentWriter(nioStats), nioStats);
+
+        assertEquals(print, nio, "Both writers should produce identical output");
+    }
+
+    @Test
+    void testEngineTransfersOnlyToChannelWriter() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        Files.write(source.resolve("Verbatim.txt"), List.of("Line", "Last line"));
+        int[] transfers = new int[2];
+        AdocDocumentStats printStats = new AdocDocumentStats();
+        String print = runEngine(source, "print", new AdocDocumentWriter(printStats) {
+            @Override
+            public void transferSection(FileChannel channel, byte[] content) throws IOException {
+                transfers[0]++;
+                super.transferSection(channel, content);
+            }
+        }, printStats);
+        AdocDocumentStats nioStats = new AdocDocumentStats();
+        String nio = runEngine(source, "nio", new AdocChannelDocumentWriter(nioStats) {
+            @Override
+            public void transferSection(FileChannel channel, byte[] content) throws IOException {
+                transfers[1]++;
+                super.transferSection(channel, content);
+            }
+        }, nioStats);
+
+        assertEquals(0, transfers[0], "A writer that would decode the content writes it as text");
+        assertEquals(1, transfers[1], "A file needing no transformation is copied to a channel");
+        assertEquals(print, nio, "Both writers should produce identical output");
+    }
+
+    private String runEngine(Path source, String name, AdocDocumentWriter writer, AdocDocumentStats stats) throws IOException {
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false), writer, stats);
+        Path contextFile = tempDir.resolve(name + ".asciidoc");
+        engine.setContextAsciidoc(contextFile.toString());
+        engine.addInputPath(source.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return Files.readString(contextFile, StandardCharsets.UTF_8);
+    }
+}
@@ -78,4 +78,53 @@ class AdocContextualSearchTest {
         List<int[]> matches = search.searchFile(content);
         assertTrue(matches.isEmpty(), "Expected no matches when the pattern is not found");
     }
+
+    @Test
+    void testMultiplePatternsMatchLikeAnAlternation() {
+        List<String> content = List.of(
+                "public class Example {",
+                "   private final Map<String, Integer> counts;",
+                "",
+                "   void add(String key) {",
+                "       counts.merge(key, 1, Integer::sum);",
+                "   }",
+                "",
+                "   int total() {",
+                "       return counts.values().stream().mapToInt(i -> i).sum();",
+                "   }",
+                "}"
+        );
+        List<String> patterns = List.of("merge", "SUM", "value[s]?\\(");
+
+        AdocContextualSearch search = new AdocContextualSearch(patterns, 1);
+        AdocContextualSearch alternation = new AdocContextualSearch(String.join("|", patterns), 1);
+        int[] hits = new int[patterns.size()];
+        List<int[]> matches = search.searchFile(content, hits);
+
+        assertEquals(alternation.searchFile(content).stream().map(Arrays::toString).toList(),
+                matches.stream().map(Arrays::toString).toList(),
+                "Context windows should be merged exactly as for a single pattern");
+        assertArrayEquals(new int[]{1, 2, 1}, hits, "Hits should be counted per pattern");
+        assertTrue(search.matches(Path.of("src/Summary.java")), "Any pattern may match the path");
+    }
+
+    @Test
+    void testLiteralsAndRegexesCountHitsAlike() {
+        List<String> lines = List.of("aaaaa", "ababa");
+        // a literal and the equivalent regular expression
+        AdocContextualSearch search = new AdocContextualSearch(List.of("aa", "a[a]", "aba", "ab[a]"), 0);
+        int[] hits = new int[4];
+        search.searchFile(lines, hits);
+
+        assertArrayEquals(new int[]{2, 2, 1, 1}, hits, "Overlapping occurrences should not be counted");
+    }
+
+    @Test
+    void testIsLiteral() {
+        assertTrue(AdocContextualSearch.isLiteral("AdocDocumentEngine"));
+        assertTrue(AdocContextualSearch.isLiteral("set-up #1"));
+        assertFalse(AdocContextualSearch.isLiteral("count\\+\\+"));
+        assertFalse(AdocContextualSearch.isLiteral("a.b"));
+        assertFalse(AdocContextualSearch.isLiteral(""));
+    }
 }
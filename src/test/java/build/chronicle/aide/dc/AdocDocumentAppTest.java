@@ -21,12 +21,14 @@ class AdocDocumentAppTest {
     Path tempDir;
 
     private final PrintStream originalOut = System.out;
+    private final PrintStream originalErr = System.err;
     private ByteArrayOutputStream outContent;
 
     @AfterEach
     void cleanup() {
         // Reset system output if modified.
         System.setOut(originalOut);
+        System.setErr(originalErr);
     }
 
     @Test
@@ -116,4 +118,40 @@ class AdocDocumentAppTest {
         assertContains("VERBOSE:", consoleOutput, "Verbose mode should output detailed processing logs");
         System.getProperties().remove("verbose");
     }
+
+    @Test
+    void testUnknownBinaryCheckFallsBackToSampling() throws IOException {
+        ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errContent));
+        Files.write(tempDir.resolve("sample.txt"), List.of("Sampled content."));
+        System.setProperty(AdocDocumentApp.PROP_CONTEXT, tempDir.resolve("context.asciidoc").toString());
+        System.setProperty(AdocDocumentApp.PROP_BINARY_CHECK, "full");
+        try {
+            AdocDocumentApp.main(tempDir.toString());
+        } finally {
+            System.getProperties().remove(AdocDocumentApp.PROP_BINARY_CHECK);
+        }
+
+        assertContains("[WARN] Unknown binaryCheck mode: full; expected one of sample, utf8", errContent.toString(),
+                "The valid modes should be listed");
+        assertContains("Sampled content.", Files.readString(tempDir.resolve("context.asciidoc")),
+                "The run should go ahead with the default check");
+    }
+
+    @Test
+    void testGitRevisionAndDiffAreRejectedTogether() {
+        System.setProperty(AdocDocumentApp.PROP_CONTEXT, tempDir.resolve("context.asciidoc").toString());
+        System.setProperty(AdocDocumentApp.PROP_GIT_REVISION, "v1");
+        System.setProperty(AdocDocumentApp.PROP_GIT_DIFF, "v0");
+        try {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> AdocDocumentApp.main(tempDir.toString()));
+            assertContains("-DgitRevision and -DgitDiff cannot be combined; use -DgitDiff=<from>..v1", e.getMessage(),
+                    "The message should say how to compare with the revision");
+        } finally {
+            System.getProperties().remove(AdocDocumentApp.PROP_GIT_REVISION);
+            System.getProperties().remove(AdocDocumentApp.PROP_GIT_DIFF);
+        }
+        assertFalse(Files.exists(tempDir.resolve("context.asciidoc")), "Nothing should be written");
+    }
 }
@@ -9,9 +9,13 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static build.chronicle.aide.util.TestUtil.assertContains;
 import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
@@ -219,4 +223,179 @@ class AdocDocumentEngineTest {
         // Verify that the output contains a marker (">>") for the matched line.
         assertContains(".lines [", output,  "Output should contain match marker for search pattern");
     }
+
+    @Test
+    void testExecute_withSearchPatterns() throws IOException {
+        Path file = tempDir.resolve("Example.java");
+        Files.write(file, List.of(
+                "public class Example {",
+                "    private int count;",
+                "    private String label;",
+                "    public void increment() { count++; }",
+                "}"));
+        engine.setSearchPatterns(List.of("count", "label", "missing"), 0);
+        engine.addInputPath(file.toString());
+        engine.execute();
+        engine.printSummary();
+        engine.close();
+
+        String output = Files.readString(tempDir.resolve("context.asciidoc"));
+        assertContains("Hits: count 2, label 1\n", output, "Each file should list the hits of each pattern");
+        assertContains(" - missing: 0\n", output, "The summary should list the total hits of each pattern");
+        assertDoesntContain("Hits: count 2, label 1, missing", output, "Patterns without hits should not be listed per file");
+    }
+
+    @Test
+    void testExecute_parallelOutputMatchesSequential() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        for (int d = 0; d < 5; d++) {
+            Path dir = Files.createDirectories(source.resolve("dir" + d).resolve("sub"));
+            for (int f = 0; f < 20; f++) {
+                Files.write(dir.resolve("File" + f + ".java"), List.of(
+                        "/*",
+                        " * Copyright " + f,
+                        " */",
+                        "class File" + f + " {",
+                        "    int count = " + d + ";",
+                        "}"));
+            }
+            Files.write(dir.resolve("binary" + d + ".dat"), new byte[]{0, 1, 2, 3});
+        }
+
+        String sequential = runEngine(source, "sequential", 1, false);
+        String parallel = runEngine(source, "parallel", 4, false);
+
+        assertContains("File19.java", parallel, "All files should be rendered in parallel mode");
+        assertEquals(sequential, parallel, "Parallel output should be identical to the sequential output");
+    }
+
+    @Test
+    void testExecute_streamingOutputMatchesBuffered() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        List<String> longFile = new ArrayList<>(List.of("// Copyright 2024 chronicle.software", "class Long {"));
+        for (int i = 0; i < 500; i++) {
+            longFile.add("    int field" + i + " = " + i + ";");
+        }
+        longFile.add("}");
+        Files.write(source.resolve("Long.java"), longFile);
+        Files.write(source.resolve("Short.java"), List.of("/*", " * Copyright", " */", "class Short {}"));
+        Files.write(source.resolve("Empty.java"), new byte[0]);
+        Files.write(source.resolve("NoNewline.java"), "class NoNewline {}\r\n\r\nint x;".getBytes(StandardCharsets.UTF_8));
+
+        String buffered = runEngine(source, "buffered", 1, false);
+        String streamed = runEngine(source, "streamed", 1, true);
+
+        assertContains("field499", streamed, "The whole file should be streamed");
+        assertDoesntContain("Copyright", streamed, "The copyright block should be removed when streaming");
+        assertEquals(buffered, streamed, "Streamed output should be identical to the buffered output");
+    }
+
+    @Test
+    void testStreamingClosesMalformedFile() throws IOException {
+        Path source = tempDir.resolve("malformed-source");
+        Files.createDirectories(source);
+        // valid in the bytes read for the binary check and the first buffers decoded, malformed after them
+        byte[] lateInvalid = ("class LateInvalid {}\n" + ("x".repeat(99) + "\n").repeat(400)).getBytes(StandardCharsets.UTF_8);
+        lateInvalid[lateInvalid.length - 2] = (byte) 0xC3;
+        Files.write(source.resolve("LateInvalid.java"), lateInvalid);
+        Files.write(source.resolve("Valid.java"), List.of("class Valid {}"));
+
+        String buffered = runEngine(source, "malformed-buffered", 1, false);
+        String streamed = runEngine(source, "malformed-streamed", 1, true);
+
+        assertDoesntContain("class LateInvalid", buffered, "A rendered file that fails to decode is left out");
+        assertContains("class LateInvalid {}\n", streamed, "A streamed file is written until it fails to decode");
+        assertContains("....\n\n== File: ", streamed, "and its block is closed");
+        for (String output : List.of(buffered, streamed)) {
+            assertContains("class Valid {}", output, "Later files are still written");
+            assertContains("Skipped Files:\n\n - " + source.resolve("LateInvalid.java").toAbsolutePath(), output,
+                    "The file is listed as skipped");
+        }
+    }
+
+    @Test
+    void testExecute_transferredOutputMatchesRendered() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        Files.write(source.resolve("Plain.java"), List.of("class Plain {", "    String s = \"héllo ✓ 😀\";", "}"));
+        Files.write(source.resolve("Licensed.java"), List.of("/*", " * COPYRIGHT 2024", " */", "class Licensed {}"));
+        Files.write(source.resolve("Windows.java"), "class Windows {}\r\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("NoNewline.java"), "class NoNewline {}".getBytes(StandardCharsets.UTF_8));
+        Files.write(source.resolve("Empty.java"), new byte[0]);
+        Files.write(source.resolve("Invalid.txt"), new byte[]{'a', (byte) 0xC3, '\n'});
+
+        AdocTokenCache tokenCache = new AdocTokenCache(new ConcurrentHashMap<>());
+        String rendered = runWriter(source, "rendered", 2, tokenCache);
+        String transferred = runWriter(source, "transferred", 1, tokenCache);
+        String uncached = runWriter(source, "uncached", 1, null);
+
+        assertContains("héllo ✓ 😀", transferred, "Verbatim files should be copied");
+        assertDoesntContain("COPYRIGHT", transferred, "Files with a copyright block should be rendered");
+        assertEquals(rendered, transferred, "Transferred output should be identical to the rendered output");
+        assertEquals(rendered, uncached, "Output counted without a token cache should be identical too");
+        assertTrue(tokenCache.getHits() > 0, "The counts of verbatim files should come from the cache");
+    }
+
+    @Test
+    void testIgnoredAndHiddenDirectoriesAreNotWalked() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("pruned"));
+        Files.write(source.resolve(".gitignore"), List.of("target/"));
+        Files.createDirectories(source.resolve("target/classes"));
+        Files.createDirectories(source.resolve(".git/objects"));
+        Files.write(source.resolve("target/classes/Generated.java"), List.of("class Generated {}"));
+        Files.write(source.resolve(".git/objects/pack.txt"), List.of("pack"));
+        Files.write(source.resolve("Main.java"), List.of("class Main {}"));
+        Files.write(source.resolve("data.txt"), new byte[]{'d', 0x00, 0x01});
+        List<Path> filtered = new ArrayList<>();
+        filter = new AdocFileFilter(source.resolve(".gitignore"), 128 << 10, false) {
+            @Override
+            public boolean include(Path path, BasicFileAttributes attrs) {
+                filtered.add(path.getFileName());
+                return super.include(path, attrs);
+            }
+        };
+
+        String output = runEngine(source, "pruned", 1, false);
+
+        assertContains("class Main {}", output, "Files outside skipped directories are written");
+        assertDoesntContain("Generated", output, "Files in ignored directories are not written");
+        assertDoesntContain("data.txt", output, "Binary files are checked once read");
+        assertEquals(List.of(Path.of(".gitignore"), Path.of("Main.java"), Path.of("data.txt")), filtered.stream().sorted().toList(),
+                "Files in ignored and hidden directories should never be filtered one by one");
+        assertDoesntContain("data.txt", runEngine(source, "pruned-streamed", 1, true),
+                "Binary files are checked before streaming");
+    }
+
+    private String runEngine(Path source, String name, int threads, boolean streaming) throws IOException {
+        AdocDocumentStats localStats = new AdocDocumentStats();
+        AdocDocumentEngine localEngine = new AdocDocumentEngine(filter, new AdocDocumentWriter(localStats), localStats);
+        Path contextFile = tempDir.resolve(name + ".asciidoc");
+        localEngine.setContextAsciidoc(contextFile.toString());
+        localEngine.setIncrementalAsciidoc(tempDir.resolve(name + "-increment.asciidoc").toString());
+        localEngine.setThreads(threads);
+        localEngine.setStreaming(streaming);
+        localEngine.addInputPath(source.toString());
+        try {
+            localEngine.execute();
+            localEngine.printSummary();
+        } finally {
+            localEngine.close();
+        }
+        return Files.readString(contextFile);
+    }
+
+    private String runWriter(Path source, String name, int threads, AdocTokenCache tokenCache) throws IOException {
+        AdocDocumentStats localStats = new AdocDocumentStats();
+        localStats.setTokenCache(tokenCache);
+        AdocDocumentEngine localEngine = new AdocDocumentEngine(filter, new AdocChannelDocumentWriter(localStats), localStats);
+        Path contextFile = tempDir.resolve(name + ".asciidoc");
+        localEngine.setContextAsciidoc(contextFile.toString());
+        localEngine.setThreads(threads);
+        localEngine.addInputPath(source.toString());
+        try {
+            localEngine.execute();
+        } finally {
+            localEngine.close();
+        }
+        return Files.readString(contextFile);
+    }
 }
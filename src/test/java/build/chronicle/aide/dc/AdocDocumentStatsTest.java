@@ -81,4 +81,52 @@ class AdocDocumentStatsTest {
         assertEquals(4, stats.getDeltaLines(), "Delta line count should be 4 after additional updates");
         assertTrue(stats.getDeltaTokens() > 0, "Delta tokens should be positive after new input");
     }
+
+    @Test
+    void testSectionBatchingCountsWholeSectionOnce() {
+        String section = "class A {\n    int x;\n}\n";
+        AdocDocumentStats whole = new AdocDocumentStats();
+        whole.updateStats(section);
+
+        stats.setSectionBatching(true);
+        stats.updateSectionStats(section);
+
+        assertEquals(3, stats.getTotalLines());
+        assertEquals(whole.getTotalTokens(), stats.getTotalTokens(), "A batched section should be tokenized as one piece");
+    }
+
+    @Test
+    void testSectionBatchingSplitsLargeSectionsAtLineBreaks() {
+        StringBuilder section = new StringBuilder();
+        while (section.length() <= 3 * AdocDocumentStats.BATCH_CHARS) {
+            section.append("int field").append(section.length()).append(" = 0;\n");
+        }
+        AdocDocumentStats perLine = new AdocDocumentStats();
+        perLine.updateSectionStats(section.toString());
+
+        stats.setSectionBatching(true);
+        stats.updateSectionStats(section.toString());
+
+        assertEquals(perLine.getTotalLines(), stats.getTotalLines());
+        assertTrue(stats.getTotalTokens() > 0);
+    }
+
+    @Test
+    void testBeginAndEndSectionMatchSectionStats() {
+        List<String> lines = List.of("first line\n", "second line\n", "\n", "last line\n");
+        AdocDocumentStats section = new AdocDocumentStats();
+        section.setSectionBatching(true);
+        section.updateSectionStats(String.join("", lines));
+
+        stats.setSectionBatching(true);
+        stats.updateStats("== File: A.java\n");
+        long headerTokens = stats.getTotalTokens();
+        stats.beginSection();
+        lines.forEach(stats::updateStats);
+        assertEquals(1, stats.getTotalLines(), "Lines are held until the section ends");
+        stats.endSection();
+
+        assertEquals(5, stats.getTotalLines());
+        assertEquals(section.getTotalTokens(), stats.getTotalTokens() - headerTokens);
+    }
 }
@@ -0,0 +1,143 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocDocumentWatcherTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    private Path source;
+    private Path contextFile;
+    private final AtomicInteger filtered = new AtomicInteger();
+    private final Function<AdocFileFilter, AdocDocumentEngine> engineFactory = filter -> {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        return new AdocDocumentEngine(filter, new AdocDocumentWriter(stats), stats);
+    };
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = Files.createDirectory(tempDir.resolve("source"));
+        contextFile = tempDir.resolve("context.asciidoc");
+        Files.write(source.resolve("Alpha.java"), List.of("class Alpha {}"));
+        Files.write(source.resolve("Beta.java"), List.of("class Beta {}"));
+    }
+
+    private AdocFileFilter countingFilter() {
+        return new AdocFileFilter(null, 128 << 10, false) {
+            @Override
+            public boolean include(Path path, BasicFileAttributes attrs) {
+                filtered.incrementAndGet();
+                return super.include(path, attrs);
+            }
+        };
+    }
+
+    @Test
+    void testRegenerateOnlyRereadsChangedFiles() throws IOException {
+        try (AdocDocumentWatcher watcher = new AdocDocumentWatcher(this::countingFilter, engineFactory, contextFile)) {
+            watcher.addInputPath(source.toString());
+            watcher.regenerate();
+            assertEquals(2, filtered.get());
+            assertContains("class Alpha {}", Files.readString(contextFile), "The first run should render every file");
+
+            Files.write(source.resolve("Alpha.java"), List.of("class Alpha { int changed; }"));
+            watcher.regenerate();
+
+            assertEquals(3, filtered.get(), "Only the changed file should be filtered and read again");
+            String output = Files.readString(contextFile);
+            assertContains("class Alpha { int changed; }", output, "The changed file should be re-rendered");
+            assertContains("class Beta {}", output, "The unchanged file should come from the cache");
+            assertFalse(Files.exists(Path.of(contextFile + ".tmp")), "The temporary file should replace the context file");
+        }
+    }
+
+    @Test
+    void testRunRegeneratesAfterChange() throws Exception {
+        AdocDocumentWatcher watcher = new AdocDocumentWatcher(this::countingFilter, engineFactory, contextFile);
+        watcher.addInputPath(source.toString());
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }, "watcher");
+        thread.start();
+        try {
+            awaitRegenerations(watcher, 1);
+            Files.write(source.resolve("Gamma.java"), List.of("class Gamma {}"));
+            Files.delete(source.resolve("Beta.java"));
+            awaitRegenerations(watcher, 2);
+            // the second change may be seen in a later regeneration
+            long deadline = System.currentTimeMillis() + 10_000;
+            String output = Files.readString(contextFile);
+            while (output.contains("class Beta {}") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                output = Files.readString(contextFile);
+            }
+
+            assertContains("class Gamma {}", output, "A new file should be added");
+            assertDoesntContain("class Beta {}", output, "A deleted file should be removed");
+        } finally {
+            watcher.close();
+            thread.join(10_000);
+        }
+        assertFalse(thread.isAlive(), "Closing the watcher should stop run()");
+    }
+
+    @Test
+    void testRunIgnoresExcludedPaths() throws Exception {
+        Path hidden = Files.createDirectory(source.resolve(".cache"));
+        AdocDocumentWatcher watcher = new AdocDocumentWatcher(this::countingFilter, engineFactory, contextFile);
+        watcher.addInputPath(source.toString());
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }, "watcher");
+        thread.start();
+        try {
+            awaitRegenerations(watcher, 1);
+            Files.write(hidden.resolve("Cached.java"), List.of("class Cached {}"));
+            Files.write(source.resolve(".env"), List.of("SECRET=1"));
+            Files.createDirectory(source.resolve(".build"));
+            Thread.sleep(20 * AdocDocumentWatcher.DEBOUNCE_MILLIS);
+            assertEquals(1, watcher.getRegenerations(), "Changes to excluded paths should not regenerate");
+
+            Files.write(source.resolve("Gamma.java"), List.of("class Gamma {}"));
+            awaitRegenerations(watcher, 2);
+            String output = Files.readString(contextFile);
+            assertContains("class Gamma {}", output, "A change to an included file should regenerate");
+            assertDoesntContain("class Cached {}", output, "Excluded directories are not written");
+        } finally {
+            watcher.close();
+            thread.join(10_000);
+        }
+    }
+
+    private static void awaitRegenerations(AdocDocumentWatcher watcher, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (watcher.getRegenerations() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for regeneration " + count);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -8,8 +8,10 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -319,5 +321,81 @@ class AdocFileFilterTest {
         assertTrue(filter.include(normalFile),
                 "Without explicit ignore rules, local checks should allow a normal file");
     }
-}
 
+    @Test
+    void testIncludeDirectory() throws IOException {
+        Files.write(gitignoreFile, List.of("target/"));
+        filter = new AdocFileFilter(gitignoreFile, 128 << 10, false);
+        Path target = Files.createDirectories(tempDir.resolve("module/target"));
+        Path git = Files.createDirectories(tempDir.resolve(".git"));
+        Path idea = Files.createDirectories(tempDir.resolve(".idea"));
+        Path src = Files.createDirectories(tempDir.resolve("module/src"));
+
+        assertFalse(filter.includeDirectory(target), "Ignored directories are skipped");
+        assertFalse(filter.includeDirectory(git), ".git is always skipped");
+        assertFalse(filter.includeDirectory(idea), "Hidden directories are skipped");
+        assertTrue(filter.includeDirectory(src));
+    }
+
+    @Test
+    void testHiddenDirectoryWalkedWhenANegationMayIncludeAFile() throws IOException {
+        Files.write(gitignoreFile, List.of("!.config/settings.txt", "!.github/"));
+        filter = new AdocFileFilter(gitignoreFile, 128 << 10, false);
+        Path github = Files.createDirectories(tempDir.resolve(".github"));
+        assertTrue(filter.includeDirectory(github), "Explicitly included hidden directories are walked");
+        Path config = Files.createDirectories(tempDir.resolve(".config"));
+        Path settings = Files.write(config.resolve("settings.txt"), List.of("key=value"));
+
+        assertTrue(filter.includeDirectory(config), "A negation rule may include a file in the hidden directory");
+        assertTrue(filter.include(settings), "The file is explicitly included");
+    }
+
+    @Test
+    void testIncludeWithWalkAttributesListsEachDirectoryOnce() throws IOException {
+        Path dir = Files.createDirectory(tempDir.resolve("walked"));
+        for (int i = 0; i < 10; i++) {
+            Files.write(dir.resolve("File" + i + ".java"), List.of("class File" + i + " {}"));
+        }
+        Files.write(dir.resolve("File0.java.ad"), List.of("summary"));
+        Path binary = Files.write(dir.resolve("data.bin"), new byte[]{0x00, 0x01, 0x02});
+
+        assertFalse(filter.include(dir.resolve("File0.java"), Files.readAttributes(dir.resolve("File0.java"), BasicFileAttributes.class)),
+                "Overshadowed => false");
+        for (int i = 1; i < 10; i++) {
+            Path file = dir.resolve("File" + i + ".java");
+            assertTrue(filter.include(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        }
+        assertTrue(filter.include(binary, Files.readAttributes(binary, BasicFileAttributes.class)),
+                "The binary check is left to the reader");
+        assertEquals(1, filter.getFileSystemCalls(), "Only the directory listing should need a call");
+
+        byte[] content = Files.readAllBytes(binary);
+        assertTrue(filter.isBinary(content, content.length));
+        assertFalse(filter.include(binary), "The path-only check still reads the file");
+        assertEquals(3, filter.getFileSystemCalls(), "Reading the attributes and opening the file");
+    }
+
+    @Test
+    void testUtf8BinaryCheckRejectsMalformedText() throws IOException {
+        // an overlong sequence is not caught by sampling for invalid bytes, but fails to decode
+        Path file = Files.write(tempDir.resolve("malformed.txt"), new byte[]{'a', (byte) 0xE0, (byte) 0x80, (byte) 0xAF, '\n'});
+        assertTrue(filter.include(file), "Sampling only looks for bytes never found in UTF-8");
+
+        filter.setBinaryCheck(AdocFileFilter.BinaryCheck.UTF8);
+        assertFalse(filter.include(file), "Full validation rejects the malformed sequence");
+        byte[] content = Files.readAllBytes(file);
+        assertTrue(filter.isBinary(content, content.length));
+    }
+
+    @Test
+    void testUtf8BinaryCheckRejectsTruncatedFile() throws IOException {
+        // the euro sign cut short by the end of the file
+        Path file = Files.write(tempDir.resolve("truncated.txt"), new byte[]{'a', (byte) 0xE2, (byte) 0x82});
+        filter.setBinaryCheck(AdocFileFilter.BinaryCheck.UTF8);
+        byte[] content = Files.readAllBytes(file);
+
+        assertFalse(filter.include(file), "Validating the file rejects the truncated sequence");
+        assertTrue(filter.isBinary(content, content.length), "and so does validating the whole content");
+        assertFalse(filter.isBinary(content, content.length, false), "The start of a file may end mid-sequence");
+    }
+}
@@ -1,13 +1,21 @@
 package build.chronicle.aide.dc;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class AdocFileProcessorTest {
 
@@ -135,4 +143,64 @@ class AdocFileProcessorTest {
         List<String> result = processor.maybeRemoveCopyright(input);
         assertEquals(expected, result, () -> "Failed scenario: " + scenario);
     }
+
+    @Test
+    void testReadFileLinesFromBytes() throws CharacterCodingException {
+        byte[] bytes = "first\nsecond\r\nthird\r\nfourth\rlast".getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of("first", "second", "", "third", "fourth", "last"),
+                processor.readFileLines("first\nsecond\r\n\nthird\r\nfourth\rlast".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of("first", "second", "third", "fourth", "last"), processor.readFileLines(bytes));
+        assertEquals(List.of("only"), processor.readFileLines("only\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of(), processor.readFileLines(new byte[0]));
+    }
+
+    @Test
+    void testReadFileLinesRejectsMalformedUtf8() {
+        assertThrows(CharacterCodingException.class, () -> processor.readFileLines(new byte[]{'a', (byte) 0xC3, '\n'}));
+    }
+
+    @Test
+    void testStreamWithoutCopyright() throws IOException {
+        List<String> input = new ArrayList<>(List.of("/*", " * Copyright 2024", " */", "package a;"));
+        for (int i = 0; i < 2 * AdocFileProcessor.LOOKAHEAD_LINES; i++) {
+            input.add("line " + i);
+        }
+        List<String> streamed = new ArrayList<>();
+        int removed = processor.streamWithoutCopyright(
+                new BufferedReader(new StringReader(String.join("\n", input))), true, streamed::add);
+
+        assertEquals(processor.maybeRemoveCopyright(input), streamed);
+        assertEquals(input.size() - streamed.size(), removed);
+
+        streamed.clear();
+        assertEquals(0, processor.streamWithoutCopyright(
+                new BufferedReader(new StringReader(String.join("\n", input))), false, streamed::add));
+        assertEquals(input, streamed);
+    }
+
+    @Test
+    void testCopyrightBlockLongerThanLookAhead() throws IOException {
+        List<String> unclosed = new ArrayList<>(List.of("/*", " * Copyright 2024"));
+        List<String> lineComments = new ArrayList<>(List.of("// Copyright 2024"));
+        for (int i = 0; i < AdocFileProcessor.LOOKAHEAD_LINES; i++) {
+            unclosed.add(" * term " + i);
+            lineComments.add("// term " + i);
+        }
+        unclosed.addAll(List.of(" */", "package a;"));
+        lineComments.add("package a;");
+
+        assertEquals(unclosed, processor.maybeRemoveCopyright(unclosed),
+                "A block that does not close within the look-ahead is kept");
+        assertEquals(streamed(unclosed), processor.maybeRemoveCopyright(unclosed));
+        List<String> kept = processor.maybeRemoveCopyright(lineComments);
+        assertEquals(lineComments.subList(AdocFileProcessor.LOOKAHEAD_LINES, lineComments.size()), kept,
+                "Only the comment lines within the look-ahead are removed");
+        assertEquals(streamed(lineComments), kept);
+    }
+
+    private List<String> streamed(List<String> input) throws IOException {
+        List<String> streamed = new ArrayList<>();
+        processor.streamWithoutCopyright(new BufferedReader(new StringReader(String.join("\n", input))), true, streamed::add);
+        return streamed;
+    }
 }
@@ -0,0 +1,124 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocFlightRecorderEventsTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testEventsForEachFileAndRun() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        Files.writeString(src.resolve("Main.java"), "class Main {\n}\n");
+        Files.writeString(src.resolve("image.png"), "not really an image\n");
+
+        Path recordingFile = tempDir.resolve("run.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("FileDecision", "FileRead", "FileWrite", "Run")) {
+                recording.enable("build.chronicle.aide." + name);
+            }
+            recording.start();
+            AdocDocumentStats stats = new AdocDocumentStats();
+            AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                    new AdocDocumentWriter(stats), stats);
+            engine.setContextAsciidoc(tempDir.resolve("context.asciidoc").toString());
+            engine.addInputPath(src.toString());
+            try {
+                engine.execute();
+            } finally {
+                engine.close();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        List<RecordedEvent> decisions = ofType(events, "FileDecision");
+        assertTrue(decisions.stream().anyMatch(e -> e.getString("path").endsWith("image.png")
+                && !e.getBoolean("included") && e.getString("rule").equals("EXTENSION")), decisions.toString());
+        assertTrue(decisions.stream().anyMatch(e -> e.getString("path").endsWith("Main.java")
+                && e.getBoolean("included") && e.getString("rule").equals("INCLUDED")), decisions.toString());
+
+        List<RecordedEvent> reads = ofType(events, "FileRead");
+        assertEquals(1, reads.size(), reads.toString());
+        assertEquals(15, reads.get(0).getLong("bytes"));
+
+        List<RecordedEvent> writes = ofType(events, "FileWrite");
+        assertEquals(1, writes.size(), writes.toString());
+        assertTrue(writes.get(0).getLong("tokens") > 0);
+
+        List<RecordedEvent> runs = ofType(events, "Run");
+        assertEquals(1, runs.size(), runs.toString());
+        assertEquals(1, runs.get(0).getLong("files"));
+        assertTrue(runs.get(0).getLong("tokens") > writes.get(0).getLong("tokens"),
+                "The run totals include the headings");
+    }
+
+    @Test
+    void testWriteEventsCountEachFileOnly() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        Files.writeString(src.resolve("A.java"), "class A {\n}\n");
+        Files.writeString(src.resolve("B.java"), "class B {\n    int b;\n}\n");
+
+        Path recordingFile = tempDir.resolve("run.jfr");
+        Path context = tempDir.resolve("context.asciidoc");
+        try (Recording recording = new Recording()) {
+            recording.enable("build.chronicle.aide.FileWrite");
+            recording.start();
+            AdocDocumentStats stats = new AdocDocumentStats();
+            AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                    new AdocDocumentWriter(stats), stats);
+            engine.setContextAsciidoc(context.toString());
+            engine.addInputPath(src.toString());
+            try {
+                engine.execute();
+            } finally {
+                engine.close();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        Map<String, RecordedEvent> writes = ofType(RecordingFile.readAllEvents(recordingFile), "FileWrite").stream()
+                .collect(Collectors.toMap(e -> Path.of(e.getString("path")).getFileName().toString(), e -> e));
+        assertEquals(2, writes.size(), writes.toString());
+        // the heading, two delimiters and the content
+        assertEquals(5, writes.get("A.java").getLong("lines"));
+        assertEquals(6, writes.get("B.java").getLong("lines"));
+        Matcher footer = Pattern.compile("== File: \\S+/(\\S+)\n(?s:.*?)Lines (\\d+), Tokens (\\d+)\n")
+                .matcher(Files.readString(context));
+        int sections = 0;
+        while (footer.find()) {
+            RecordedEvent write = writes.get(footer.group(1));
+            assertEquals(Long.parseLong(footer.group(2)), write.getLong("lines"), footer.group());
+            assertEquals(Long.parseLong(footer.group(3)), write.getLong("tokens"), footer.group());
+            sections++;
+        }
+        assertEquals(2, sections);
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals("build.chronicle.aide." + name))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,415 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocGitRepositoryTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testChangesSinceCommit() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve(".gitignore"), "*.log\n");
+            Files.createDirectories(repo.resolve("src"));
+            Files.writeString(repo.resolve("src/A.java"), "class A {}\n");
+            Files.writeString(repo.resolve("src/B.java"), "class B {}\n");
+            Files.writeString(repo.resolve("src/C.java"), "class C {}\n");
+            commit(git, "first");
+
+            Files.writeString(repo.resolve("src/A.java"), "class A { int a; }\n");
+            commit(git, "second");
+            Files.writeString(repo.resolve("src/B.java"), "class B { int b; }\n");
+            Files.delete(repo.resolve("src/C.java"));
+            Files.writeString(repo.resolve("src/D.java"), "class D {}\n");
+            Files.writeString(repo.resolve("src/debug.log"), "ignored\n");
+        }
+
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo.resolve("src"))) {
+            assertEquals(repo.normalize(), git.getWorkTree());
+            String first = git.resolveCommit("HEAD~1");
+
+            AdocGitRepository.Changes sinceFirst = git.changesSince(first, List.of(repo.resolve("src")));
+            assertEquals(List.of(repo.resolve("src/A.java"), repo.resolve("src/B.java"), repo.resolve("src/D.java")),
+                    sinceFirst.changed(), "Committed, modified and untracked files, but not ignored ones");
+            assertEquals(List.of(repo.resolve("src/C.java")), sinceFirst.deleted());
+
+            AdocGitRepository.Changes sinceHead = git.changesSince(null, List.of());
+            assertEquals(List.of(repo.resolve("src/B.java"), repo.resolve("src/D.java")), sinceHead.changed(),
+                    "Only uncommitted changes since HEAD");
+            assertThrows(IOException.class, () -> git.changesSince("no-such-tag", List.of()));
+        }
+    }
+
+    @Test
+    void testIncrementalRunWritesOnlyChangedFiles() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        Path context = tempDir.resolve("context.asciidoc");
+        Path increment = tempDir.resolve("increment.asciidoc");
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Kept.java"), "class Kept {}\n");
+            Files.writeString(repo.resolve("Edited.java"), "class Edited {}\n");
+            Files.writeString(repo.resolve("Removed.java"), "class Removed {}\n");
+            commit(git, "first");
+
+            run(repo, context, increment);
+            assertContains("class Kept {}", Files.readString(context), "The full run writes every file");
+            assertTrue(Files.exists(Path.of(context + ".head")), "The full run records HEAD");
+
+            Files.writeString(repo.resolve("Edited.java"), "class Edited { int x; }\n");
+            commit(git, "second");
+            Files.delete(repo.resolve("Removed.java"));
+            // a newer modification time alone is not a change to git
+            Files.setLastModifiedTime(repo.resolve("Kept.java"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        }
+
+        run(repo, context, increment);
+        String output = Files.readString(increment);
+        assertContains("class Edited { int x; }", output, "Files changed since the full run are written");
+        assertDoesntContain("class Kept", output, "Unchanged files are not written");
+        assertContains("Git changes: 1 changed, 1 deleted", output, "The changes are summarised");
+        assertContains(" - " + repo.resolve("Removed.java"), output, "Deleted files are listed");
+    }
+
+    @Test
+    void testIncrementalRunWithoutRecordedCommitComparesTimes() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        Path context = tempDir.resolve("context.asciidoc");
+        Path increment = tempDir.resolve("increment.asciidoc");
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Kept.java"), "class Kept {}\n");
+            Files.writeString(repo.resolve("Edited.java"), "class Edited {}\n");
+            commit(git, "first");
+            run(repo, context, increment);
+            Files.delete(Path.of(context + ".head"));
+
+            Files.writeString(repo.resolve("Edited.java"), "class Edited { int x; }\n");
+            Files.setLastModifiedTime(repo.resolve("Edited.java"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            // comparing with HEAD would miss this commit
+            commit(git, "second");
+        }
+
+        run(repo, context, increment);
+        String output = Files.readString(increment);
+        assertContains("class Edited { int x; }", output, "Falls back to comparing modification times");
+        assertDoesntContain("class Kept", output, "Unchanged files are not written");
+        assertDoesntContain("Git changes:", output, "git is not asked what changed");
+    }
+
+    @Test
+    void testBudgetIsPlannedOverTheFilesGitLists() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        Path context = tempDir.resolve("context.asciidoc");
+        Path increment = tempDir.resolve("increment.asciidoc");
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Kept.java"), fields(400, 0, 0));
+            Files.writeString(repo.resolve("Edited.java"), "class Edited {}\n");
+            commit(git, "first");
+            run(repo, context, increment);
+
+            Files.writeString(repo.resolve("Edited.java"), "class Edited { int x; }\n");
+            commit(git, "second");
+        }
+
+        String changes = runWithBudget(repo, context, increment, false);
+        assertContains("class Edited { int x; }", changes, "The changed file is written");
+        assertContains("for 1 of 1 files", changes, "Only the changed file is planned");
+        assertDoesntContain("Kept.java", changes, "Unchanged files use none of the budget");
+
+        Files.delete(context);
+        Files.writeString(repo.resolve("Untracked.java"), fields(400, 0, 0));
+        String index = runWithBudget(repo, context, increment, true);
+        assertContains("class Edited { int x; }", index, "Tracked files are written");
+        assertContains("for 1 of 2 files", index, "Only tracked files are planned");
+        assertContains("Kept.java (~", index, "A tracked file that does not fit is dropped");
+        assertDoesntContain("Untracked.java", index, "Untracked files use none of the budget");
+    }
+
+    @Test
+    void testFilesListedFromIndex() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve(".gitignore"), "build/\n");
+            Files.createDirectories(repo.resolve("src/main"));
+            Files.createDirectories(repo.resolve(".github"));
+            Files.createDirectories(repo.resolve("build"));
+            Files.writeString(repo.resolve("src/main/Main.java"), "class Main {}\n");
+            Files.writeString(repo.resolve("src/Util.java"), "class Util {}\n");
+            Files.writeString(repo.resolve(".github/ci.yml"), "on: push\n");
+            commit(git, "first");
+        }
+        Files.writeString(repo.resolve("src/New.java"), "class New {}\n");
+        Files.writeString(repo.resolve("build/Generated.java"), "class Generated {}\n");
+
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            assertEquals(List.of(repo.resolve(".github/ci.yml"), repo.resolve(".gitignore"),
+                            repo.resolve("src/Util.java"), repo.resolve("src/main/Main.java")),
+                    git.listFiles(List.of(), false), "Tracked files in index order");
+            assertEquals(List.of(repo.resolve("src/New.java"), repo.resolve("src/Util.java"), repo.resolve("src/main/Main.java")),
+                    git.listFiles(List.of(repo.resolve("src")), true), "Untracked files that are not ignored are added");
+        }
+
+        Path context = tempDir.resolve("context.asciidoc");
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(context.toString());
+        engine.addInputPath(repo.toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitFiles(true, true);
+            engine.execute();
+        } finally {
+            engine.close();
+        }
+        String output = Files.readString(context);
+        assertDoesntContain("ci.yml", output, "Hidden directories are skipped as in a walk");
+        assertDoesntContain("Generated", output, "Ignored files are not listed");
+        assertTrue(output.indexOf("New.java") < output.indexOf("Util.java")
+                && output.indexOf("Util.java") < output.indexOf("Main.java"), "Files are written in index order");
+    }
+
+    @Test
+    void testFilesReadFromRevision() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.createDirectories(repo.resolve("src"));
+            Files.writeString(repo.resolve("src/Main.java"), "/*\n * Copyright 2020 Example\n */\nclass Main { int v1; }\n");
+            Files.writeString(repo.resolve("src/Notes.txt"), "long notes\n");
+            Files.writeString(repo.resolve("src/Notes.txt.ad"), "short notes\n");
+            Files.writeString(repo.resolve("src/Old.java"), "class Old {}\n");
+            commit(git, "first");
+            git.tag().setName("v1").setAnnotated(false).call();
+
+            Files.writeString(repo.resolve("src/Main.java"), "class Main { int v2; }\n");
+            Files.delete(repo.resolve("src/Notes.txt.ad"));
+            Files.delete(repo.resolve("src/Old.java"));
+            commit(git, "second");
+        }
+
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            List<AdocGitRepository.Blob> blobs = git.listBlobs("v1", List.of(repo.resolve("src")));
+            assertEquals(List.of(repo.resolve("src/Main.java"), repo.resolve("src/Notes.txt"),
+                    repo.resolve("src/Notes.txt.ad"), repo.resolve("src/Old.java")),
+                    blobs.stream().map(AdocGitRepository.Blob::path).collect(Collectors.toList()));
+            assertEquals("class Old {}\n", new String(git.read(blobs.get(3)), StandardCharsets.UTF_8));
+            assertEquals(13, blobs.get(3).size());
+            assertThrows(IOException.class, () -> git.listBlobs("no-such-tag", List.of()));
+        }
+
+        Path context = tempDir.resolve("context.asciidoc");
+        Files.writeString(context, "an earlier run\n");
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(context.toString());
+        engine.addInputPath(repo.resolve("src").toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitRevision("v1");
+            engine.execute();
+            engine.printSummary();
+            assertEquals(git.resolveCommit("v1") + "\n", Files.readString(Path.of(context + ".head")),
+                    "The revision is recorded for later incremental runs");
+        } finally {
+            engine.close();
+        }
+        String output = Files.readString(context);
+        assertContains("= Directory Content\n", output, "Always a full run");
+        assertContains("class Main { int v1; }", output, "Files are read as of the revision");
+        assertDoesntContain("Copyright", output, "Copyright notices are removed");
+        assertContains("class Old {}", output, "Files deleted since are written");
+        assertDoesntContain("long notes", output, "Companion .ad files in the revision are honoured");
+        assertContains("Git revision: v1 (", output, "The revision is summarised");
+    }
+
+    @Test
+    void testDiffHunksBetweenRevisions() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Main.java"), fields(50, 0, 0));
+            Files.writeString(repo.resolve("Removed.java"), "class Removed {}\n");
+            commit(git, "first");
+            git.tag().setName("v1").setAnnotated(false).call();
+
+            Files.writeString(repo.resolve("Main.java"), fields(50, 5, 25));
+            Files.delete(repo.resolve("Removed.java"));
+            Files.writeString(repo.resolve("Added.java"), "class Added { String s = \"café\"; }\n");
+            commit(git, "second");
+        }
+        Files.writeString(repo.resolve("Main.java"), fields(50, 5, 25).replace("int line15;", "int edited15;"));
+        long hunkBytes = 0;
+
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            List<AdocGitRepository.FileDiff> committed = git.diff("v1", "HEAD", List.of(), 3);
+            assertEquals(List.of(repo.resolve("Added.java"), repo.resolve("Main.java"), repo.resolve("Removed.java")),
+                    committed.stream().map(AdocGitRepository.FileDiff::path).collect(Collectors.toList()));
+            List<AdocGitRepository.Hunk> hunks = committed.get(1).hunks();
+            assertEquals(2, hunks.size());
+            assertEquals(2, hunks.get(0).firstLine());
+            assertEquals(8, hunks.get(0).lastLine());
+            assertEquals(List.of("     int line2;", "     int line3;", "     int line4;", "-    int line5;",
+                    "+    int changed5;", "     int line6;", "     int line7;", "     int line8;"), hunks.get(0).lines());
+            assertEquals(22, hunks.get(1).firstLine());
+
+            List<AdocGitRepository.FileDiff> uncommitted = git.diff("HEAD", null, List.of(), 1);
+            assertEquals(1, uncommitted.size(), "Only the working tree change");
+            assertEquals(14, uncommitted.get(0).hunks().get(0).firstLine());
+            assertEquals(16, uncommitted.get(0).hunks().get(0).lastLine());
+
+            for (AdocGitRepository.FileDiff diff : git.diff("v1", null, List.of(), 3)) {
+                for (AdocGitRepository.Hunk hunk : diff.hunks()) {
+                    for (String line : hunk.lines()) {
+                        hunkBytes += (line + "\n").getBytes(StandardCharsets.UTF_8).length;
+                    }
+                }
+            }
+        }
+
+        Path context = tempDir.resolve("review.asciidoc");
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        AdocMetrics metrics = new AdocMetrics();
+        engine.setContextAsciidoc(context.toString());
+        engine.setMetrics(metrics);
+        engine.addInputPath(repo.toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitDiff("v1", null, 3);
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        String output = Files.readString(context);
+        assertContains("\n.lines [2, 8]\n....\n     int line2;\n", output, "Hunks are numbered by the lines after the change");
+        assertContains("+    int edited15;", output, "The working tree is compared");
+        assertContains("\n....\nHunk Lines 8, Tokens ", output, "Each hunk has its stats");
+        assertContains("Added.java\n\nAdded\n", output, "Added files are marked");
+        assertContains("Removed.java\n\nDeleted\n", output, "Deleted files are marked");
+        assertDoesntContain("int line40;", output, "Unchanged lines away from a change are left out");
+        assertContains("Git diff: v1..working tree, 3 files, 5 hunks", output, "The diff is summarised");
+        assertFalse(Files.exists(Path.of(context + ".head")), "A diff is not a base for incremental runs");
+        assertEquals(hunkBytes, metrics.getBytes(), "The UTF-8 size of the hunks is recorded");
+    }
+
+    @Test
+    void testRevisionAndDiffAreRejectedTogether() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Main.java"), "class Main {}\n");
+            commit(git, "first");
+        }
+
+        Path context = tempDir.resolve("context.asciidoc");
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(context.toString());
+        engine.addInputPath(repo.toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitRevision("HEAD");
+            engine.setGitDiff("HEAD", null, 3);
+            IllegalStateException e = assertThrows(IllegalStateException.class, engine::execute);
+            assertContains("not both", e.getMessage(), "Neither is silently ignored");
+        } finally {
+            engine.close();
+        }
+        assertFalse(Files.exists(context), "Nothing is written");
+    }
+
+    @Test
+    void testWatcherRecordsHeadOfContextFile() throws IOException, GitAPIException {
+        Path repo = tempDir.resolve("repo").toAbsolutePath();
+        Path context = tempDir.resolve("context.asciidoc").toAbsolutePath();
+        try (Git git = Git.init().setDirectory(repo.toFile()).call()) {
+            Files.writeString(repo.resolve("Main.java"), "class Main {}\n");
+            commit(git, "first");
+        }
+
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo);
+             AdocDocumentWatcher watcher = new AdocDocumentWatcher(() -> new AdocFileFilter(null, 128 << 10, false), filter -> {
+                 AdocDocumentStats stats = new AdocDocumentStats();
+                 AdocDocumentEngine engine = new AdocDocumentEngine(filter, new AdocDocumentWriter(stats), stats);
+                 engine.setGitRepository(git);
+                 return engine;
+             }, context)) {
+            watcher.addInputPath(repo.toString());
+            watcher.regenerate();
+            assertEquals(git.getHead() + "\n", Files.readString(Path.of(context + ".head")),
+                    "HEAD is recorded for the context file");
+        }
+        assertFalse(Files.exists(Path.of(context + ".tmp.head")), "Not for the temporary file");
+    }
+
+    private static String fields(int count, int changed1, int changed2) {
+        StringBuilder sb = new StringBuilder("class Main {\n");
+        for (int i = 2; i < count; i++) {
+            sb.append(i == changed1 || i == changed2 ? "    int changed" : "    int line").append(i).append(";\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static void run(Path repo, Path context, Path increment) throws IOException {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(context.toString());
+        engine.setIncrementalAsciidoc(increment.toString());
+        engine.addInputPath(repo.toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitIncremental(true);
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+    }
+
+    private static String runWithBudget(Path repo, Path context, Path increment, boolean gitFiles) throws IOException {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false),
+                new AdocDocumentWriter(stats), stats);
+        engine.setContextAsciidoc(context.toString());
+        engine.setIncrementalAsciidoc(increment.toString());
+        engine.setBudgetPlanner(new AdocBudgetPlanner(1000));
+        engine.addInputPath(repo.toString());
+        try (AdocGitRepository git = AdocGitRepository.forDirectory(repo)) {
+            engine.setGitRepository(git);
+            engine.setGitIncremental(!gitFiles);
+            engine.setGitFiles(gitFiles, false);
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return Files.readString(gitFiles ? context : increment);
+    }
+
+    private static void commit(Git git, String message) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        git.add().addFilepattern(".").setUpdate(true).call();
+        git.commit().setMessage(message).setSign(false)
+                .setAuthor("Test", "test@example.com").setCommitter("Test", "test@example.com").call();
+    }
+}
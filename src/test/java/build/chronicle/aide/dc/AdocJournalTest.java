@@ -0,0 +1,103 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdocJournalTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testEventsRoundTrip() {
+        Path journalDir = tempDir.resolve("journal");
+        Path source = tempDir.resolve("Source.java").toAbsolutePath();
+        try (AdocJournal journal = AdocJournal.persistedTo(journalDir)) {
+            journal.decision(tempDir.resolve("image.png").toAbsolutePath(), AdocJournal.Decision.EXTENSION);
+            journal.file(source, 1234, 40, 300, 5_000, 20_000, 7_000);
+        }
+
+        List<String> events = new ArrayList<>();
+        AdocJournalReader.tail(journalDir, false, events::add);
+        assertEquals(2, events.size(), events.toString());
+        assertContains("EXTENSION ", events.get(0), "The rule should be recorded");
+        assertContains("image.png", events.get(0), "The path should be recorded");
+        assertContains("WRITTEN " + source + " bytes 1234, lines 40, tokens 300, read 5 us, process 20 us, write 7 us",
+                events.get(1), "Every field should be recorded");
+
+        String summary = String.join("\n", AdocJournalReader.summarise(journalDir));
+        assertContains("Files written 1, bytes 1234, lines 40, tokens 300", summary, "Files are totalled");
+        assertContains(" - EXTENSION: 1", summary, "Decisions are counted by rule");
+        assertContains(" - " + source + " (32 us)", summary, "The slowest files are listed");
+    }
+
+    @Test
+    void testEngineRecordsEveryDecision() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src.resolve(".hidden"));
+        Files.createDirectories(src.resolve("target"));
+        Files.writeString(src.resolve("aide.ignore"), "target/\n*.log\n");
+        Files.writeString(src.resolve("Main.java"), "class Main {\n}\n");
+        Files.writeString(src.resolve("Other.java"), "class Other {\n    int other;\n}\n");
+        Files.writeString(src.resolve("app.log"), "log line\n");
+        Files.writeString(src.resolve("image.png"), "not really an image\n");
+        Files.writeString(src.resolve("out-old.txt"), "old output\n");
+        Files.write(src.resolve("data.bin"), new byte[]{1, 2, 3, 0});
+        Files.writeString(src.resolve(".hidden/Secret.java"), "class Secret {}\n");
+        Files.writeString(src.resolve("target/Gen.java"), "class Gen {}\n");
+
+        Path journalDir = tempDir.resolve("journal");
+        try (AdocJournal journal = AdocJournal.persistedTo(journalDir)) {
+            AdocFileFilter filter = new AdocFileFilter(src.resolve("aide.ignore"), 128 << 10, false);
+            filter.setJournal(journal);
+            AdocDocumentStats stats = new AdocDocumentStats();
+            AdocDocumentEngine engine = new AdocDocumentEngine(filter, new AdocDocumentWriter(stats), stats);
+            engine.setJournal(journal);
+            engine.setContextAsciidoc(tempDir.resolve("context.asciidoc").toString());
+            engine.addInputPath(src.toString());
+            try {
+                engine.execute();
+            } finally {
+                engine.close();
+            }
+        }
+
+        List<String> events = new ArrayList<>();
+        AdocJournalReader.tail(journalDir, false, events::add);
+        String all = String.join("\n", events);
+        assertContains("IGNORED " + src.resolve("app.log").toAbsolutePath(), all, "Ignored files are recorded");
+        assertContains("IGNORED_DIRECTORY " + src.resolve("target").toAbsolutePath(), all, "Ignored directories are recorded");
+        assertContains("HIDDEN_DIRECTORY " + src.resolve(".hidden").toAbsolutePath(), all, "Hidden directories are recorded");
+        assertContains("EXTENSION " + src.resolve("image.png").toAbsolutePath(), all, "Extensions are recorded");
+        assertContains("PREFIX " + src.resolve("out-old.txt").toAbsolutePath(), all, "Prefixes are recorded");
+        assertContains("BINARY " + src.resolve("data.bin").toAbsolutePath(), all, "Binary files are recorded");
+        // each file counts its own heading, delimiters and content, as in its footer
+        String context = Files.readString(tempDir.resolve("context.asciidoc"));
+        assertContains("WRITTEN " + src.resolve("Main.java").toAbsolutePath() + " bytes 15, lines 5, tokens "
+                + footerTokens(context, "Main.java", 5) + ",", all, "Files written are recorded");
+        assertContains("WRITTEN " + src.resolve("Other.java").toAbsolutePath() + " bytes 31, lines 6, tokens "
+                + footerTokens(context, "Other.java", 6) + ",", all, "Each file is counted on its own");
+        assertTrue(events.stream().noneMatch(e -> e.contains("Gen.java") || e.contains("Secret.java")),
+                "Files in skipped directories are never visited: " + all);
+    }
+
+    private static String footerTokens(String context, String name, int lines) {
+        Matcher footer = Pattern.compile("== File: \\S+/" + Pattern.quote(name)
+                + "\n(?s:.*?)Lines " + lines + ", Tokens (\\d+)\n").matcher(context);
+        assertTrue(footer.find(), context);
+        return footer.group(1);
+    }
+}
@@ -0,0 +1,111 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdocManifestTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    private ConcurrentHashMap<CharSequence, CharSequence> entries;
+    private AdocManifest manifest;
+    private Path source;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        entries = new ConcurrentHashMap<>();
+        manifest = new AdocManifest(entries);
+        source = Files.createDirectory(tempDir.resolve("source"));
+    }
+
+    @Test
+    void testIncrementalRunReportsAddedModifiedAndDeleted() throws IOException {
+        Path touched = source.resolve("touched.txt");
+        Path changed = source.resolve("changed.txt");
+        Path deleted = source.resolve("deleted.txt");
+        Files.write(touched, List.of("Touched but unchanged"));
+        Files.write(changed, List.of("Original content"));
+        Files.write(deleted, List.of("Deleted content"));
+        runEngine();
+        assertEquals(3, entries.size(), "Full run should record every written file");
+
+        FileTime later = FileTime.fromMillis(System.currentTimeMillis() + 60_000);
+        Files.setLastModifiedTime(touched, later);
+        Files.write(changed, List.of("Updated content, longer"));
+        Files.delete(deleted);
+        Files.write(source.resolve("added.txt"), List.of("New content"));
+
+        String increment = runEngine();
+
+        assertContains("Updated content, longer", increment, "Modified file should be written");
+        assertContains("New content", increment, "Added file should be written");
+        assertDoesntContain("Touched but unchanged", increment, "Touched file with the same hash should be skipped");
+        assertContains("Added Files:\n\n - " + source.resolve("added.txt").toAbsolutePath(), increment, "Added files should be listed");
+        assertContains("Modified Files:\n\n - " + changed.toAbsolutePath(), increment, "Modified files should be listed");
+        assertContains("Deleted Files:\n\n - " + deleted.toAbsolutePath(), increment, "Deleted files should be listed");
+    }
+
+    @Test
+    void testFilteredFileIsNotDeleted() throws IOException {
+        Path large = source.resolve("large.txt").toAbsolutePath();
+        Files.write(large, List.of("Small for now"));
+        runEngine();
+
+        // now over the size limit, so filtered out rather than compared
+        Files.writeString(large, "x".repeat(200 << 10));
+        String increment = runEngine();
+
+        assertDoesntContain("Deleted Files:", increment, "A file that still exists should not be listed as deleted");
+        assertEquals(List.of(), manifest.getDeleted(List.of(source.toAbsolutePath())));
+    }
+
+    @Test
+    void testTouchedFileRefreshesModificationTime() throws IOException {
+        Path touched = source.resolve("touched.txt").toAbsolutePath();
+        Files.write(touched, List.of("Content"));
+        runEngine();
+
+        FileTime later = FileTime.fromMillis(System.currentTimeMillis() + 60_000);
+        Files.setLastModifiedTime(touched, later);
+        AdocManifest.Change change = manifest.compare(touched, Files.readAttributes(touched, BasicFileAttributes.class));
+
+        assertEquals(AdocManifest.Change.UNCHANGED, change, "Same content should be unchanged");
+        assertContains("," + later.toMillis() + ",", entries.get(touched.toString()).toString(),
+                "The new modification time should be stored so the file is not hashed again");
+    }
+
+    private String runEngine() throws IOException {
+        AdocFileFilter filter = new AdocFileFilter(null, 128 << 10, false);
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(filter, new AdocDocumentWriter(stats), stats);
+        Path context = tempDir.resolve("context.asciidoc");
+        Path increment = tempDir.resolve("increment.asciidoc");
+        engine.setContextAsciidoc(context.toString());
+        engine.setIncrementalAsciidoc(increment.toString());
+        engine.setManifest(manifest);
+        engine.addInputPath(source.toString());
+        boolean incremental = Files.exists(context);
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return Files.readString(incremental ? increment : context);
+    }
+}
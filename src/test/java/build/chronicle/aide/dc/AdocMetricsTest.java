@@ -0,0 +1,94 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.dc.AdocMetrics.Stage;
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static build.chronicle.aide.util.TestUtil.assertDoesntContain;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocMetricsTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testHistogramPercentiles() {
+        AdocMetrics metrics = new AdocMetrics();
+        metrics.start();
+        for (int i = 0; i < 99; i++) {
+            metrics.record(Stage.READ, 1_000);
+        }
+        metrics.record(Stage.READ, 1_000_000);
+        metrics.fileWritten(2_000_000);
+        metrics.stop();
+
+        assertEquals(100, metrics.getCount(Stage.READ));
+        assertEquals(99 * 1_000 + 1_000_000, metrics.getTotalNanos(Stage.READ));
+        assertEquals(1_000_000, metrics.getMaxNanos(Stage.READ));
+        long p50 = metrics.getPercentileNanos(Stage.READ, 50);
+        assertTrue(p50 >= 1_000 && p50 < 2_000, "p50 is within a factor of two: " + p50);
+        assertEquals(1_000_000, metrics.getPercentileNanos(Stage.READ, 100));
+        assertEquals(0, metrics.getPercentileNanos(Stage.WRITE, 50), "No calls");
+        assertTrue(metrics.getMegabytesPerSecond() > 0);
+
+        String report = String.join("\n", metrics.report());
+        assertContains("files 1 (", report, "Throughput is reported");
+        assertContains("READ: 100 calls", report, "Stages with calls are reported");
+        assertDoesntContain("WRITE:", report, "Stages without calls are not reported");
+
+        metrics.start();
+        assertEquals(0, metrics.getCount(Stage.READ), "Starting a run clears the metrics");
+    }
+
+    @Test
+    void testEngineReportsEachStage() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(src.resolve("File" + i + ".java"), "// Copyright 2025\nclass File" + i + " {\n}\n");
+        }
+        Path json = tempDir.resolve("metrics.json");
+
+        AdocMetrics metrics = new AdocMetrics();
+        AdocFileFilter filter = new AdocFileFilter(null, 128 << 10, false);
+        filter.setMetrics(metrics);
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.setMetrics(metrics);
+        AdocDocumentWriter writer = new AdocDocumentWriter(stats);
+        writer.setMetrics(metrics);
+        AdocDocumentEngine engine = new AdocDocumentEngine(filter, writer, stats);
+        engine.setMetrics(metrics);
+        engine.setPerformanceSection(true);
+        engine.setMetricsJson(json);
+        Path context = tempDir.resolve("context.asciidoc");
+        engine.setContextAsciidoc(context.toString());
+        engine.addInputPath(src.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+
+        assertEquals(5, metrics.getFiles());
+        for (Stage stage : List.of(Stage.WALK, Stage.FILTER, Stage.BINARY_CHECK, Stage.READ, Stage.COPYRIGHT,
+                Stage.TOKENIZE, Stage.WRITE)) {
+            assertTrue(metrics.getCount(stage) > 0, stage + " should be recorded");
+        }
+        String output = Files.readString(context);
+        assertContains("== Performance", output, "The Performance section is written");
+        assertContains("files 5 (", output, "The files written are counted");
+        assertContains("READ: 5 calls", output, "Each file is read once");
+        String jsonText = Files.readString(json);
+        assertContains("\"files\": 5,", jsonText, "The JSON file is written");
+        assertContains("\"TOKENIZE\": {\"count\": ", jsonText, "Every stage is in the JSON file");
+    }
+}
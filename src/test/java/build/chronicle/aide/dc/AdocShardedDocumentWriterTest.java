@@ -0,0 +1,77 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocShardedDocumentWriterTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testSectionsAreKeptWholeAndIndexed() throws IOException {
+        Path src = tempDir.resolve("src");
+        Files.createDirectories(src);
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(src.resolve("File" + i + ".java"), "class File" + i + " {\n    int value = " + i + ";\n}\n");
+        }
+        Files.writeString(src.resolve("Large.java"), "class Large {\n" + "    int field;\n".repeat(100) + "}\n");
+
+        String single = run(src, "single", 0);
+        String sharded = run(src, "sharded", 150);
+
+        List<String> index = Files.readAllLines(tempDir.resolve("sharded.asciidoc.index"));
+        assertEquals(21, index.size(), "Every file section is indexed");
+        int parts = 0;
+        StringBuilder sections = new StringBuilder();
+        for (String entry : index) {
+            String[] fields = entry.split("\t");
+            byte[] part = Files.readAllBytes(tempDir.resolve(fields[1]));
+            String rest = new String(Arrays.copyOfRange(part, Integer.parseInt(fields[2]), part.length), StandardCharsets.UTF_8);
+            assertTrue(rest.startsWith("== File: " + fields[0] + "\n"), "The offset is the start of the section: " + entry);
+            assertContains("\n....\nLines ", rest, "The section is whole: " + entry);
+            parts = Math.max(parts, fields[1].equals("sharded.asciidoc") ? 1 : Integer.parseInt(fields[1].replaceAll("\\D", "")));
+            sections.append(rest, 0, rest.indexOf("\nLines ")).append('\n');
+        }
+        assertTrue(parts > 2, "The output is split into parts: " + parts);
+        assertTrue(Files.exists(tempDir.resolve("sharded-" + parts + ".asciidoc")));
+        assertFalse(Files.exists(tempDir.resolve("sharded-" + (parts + 1) + ".asciidoc")));
+        assertContains("== Summary", Files.readString(tempDir.resolve("sharded-" + parts + ".asciidoc")),
+                "The summary is in the last part");
+        assertContains("= Directory Content (Part 2)", Files.readString(tempDir.resolve("sharded-2.asciidoc")),
+                "Later parts have a heading");
+        for (String section : sections.toString().split("\n== File: ")) {
+            assertContains(section.substring(section.indexOf("....")), single, "Sections are unchanged");
+        }
+        assertContains("== File: ", sharded, "The first part holds sections");
+    }
+
+    private String run(Path src, String name, long shardTokens) throws IOException {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentWriter writer = shardTokens > 0
+                ? new AdocShardedDocumentWriter(stats, shardTokens)
+                : new AdocDocumentWriter(stats);
+        AdocDocumentEngine engine = new AdocDocumentEngine(new AdocFileFilter(null, 128 << 10, false), writer, stats);
+        Path context = tempDir.resolve(name + ".asciidoc");
+        engine.setContextAsciidoc(context.toString());
+        engine.addInputPath(src.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return Files.readString(context);
+    }
+}
@@ -0,0 +1,71 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdocTokenCacheTest {
+
+    private static final String CONTENT = "public class Example {\n\n    private int count;\n}\n";
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testCachedCountsMatchTokenizedCounts() {
+        AdocDocumentStats uncached = new AdocDocumentStats();
+        uncached.updateSectionStats(CONTENT);
+
+        AdocTokenCache cache = new AdocTokenCache(new ConcurrentHashMap<>());
+        AdocDocumentStats first = new AdocDocumentStats();
+        first.setTokenCache(cache);
+        first.updateSectionStats(CONTENT);
+        AdocDocumentStats second = new AdocDocumentStats();
+        second.setTokenCache(cache);
+        second.updateSectionStats(CONTENT);
+
+        assertEquals(uncached.getTotalLines(), first.getTotalLines(), "Lines should match on a miss");
+        assertEquals(uncached.getTotalTokens(), first.getTotalTokens(), "Tokens should match on a miss");
+        assertEquals(uncached.getTotalLines(), second.getTotalLines(), "Lines should match on a hit");
+        assertEquals(uncached.getTotalTokens(), second.getTotalTokens(), "Tokens should match on a hit");
+        assertEquals(1, cache.getHits(), "Second lookup should hit");
+        assertEquals(1, cache.getMisses(), "First lookup should miss");
+    }
+
+    @Test
+    void testSectionStatsMatchLineByLineStats() {
+        AdocDocumentStats byLine = new AdocDocumentStats();
+        for (String line : CONTENT.split("(?<=\n)")) {
+            byLine.updateStats(line);
+        }
+        AdocDocumentStats bySection = new AdocDocumentStats();
+        bySection.updateSectionStats(CONTENT);
+
+        assertEquals(byLine.getTotalLines(), bySection.getTotalLines());
+        assertEquals(byLine.getTotalTokens(), bySection.getTotalTokens());
+    }
+
+    @Test
+    void testPersistedCacheSurvivesReopen() throws IOException {
+        Path file = tempDir.resolve("tokens.cm");
+        try (AdocTokenCache cache = AdocTokenCache.persistedTo(file)) {
+            AdocDocumentStats stats = new AdocDocumentStats();
+            stats.setTokenCache(cache);
+            stats.updateSectionStats(CONTENT);
+            assertEquals(1, cache.getMisses());
+        }
+        try (AdocTokenCache cache = AdocTokenCache.persistedTo(file)) {
+            AdocDocumentStats stats = new AdocDocumentStats();
+            stats.setTokenCache(cache);
+            stats.updateSectionStats(CONTENT);
+            assertEquals(1, cache.getHits(), "Counts should be read back from the cache file");
+            assertEquals(0, cache.getMisses());
+        }
+    }
+}
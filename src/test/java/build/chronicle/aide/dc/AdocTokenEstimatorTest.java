@@ -0,0 +1,110 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocTokenEstimatorTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    private static String javaChunk(int n) {
+        StringBuilder sb = new StringBuilder("public class Example" + n + " {\n");
+        for (int i = 0; i < 20; i++) {
+            sb.append("    private final long fieldNumber").append(i * n).append(" = ").append(i * 1234 + n).append(";\n");
+            sb.append("    public long getFieldNumber").append(i).append("() { return fieldNumber").append(i * n).append("; }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static long exactTokens(String text) {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        stats.updateSectionStats(text);
+        return stats.getTotalTokens();
+    }
+
+    @Test
+    void testUncalibratedSizeEstimate() {
+        AdocTokenEstimator estimator = new AdocTokenEstimator();
+        assertEquals(100, estimator.estimate(".java", 400));
+        assertEquals(".java", AdocTokenEstimator.extensionOf(Path.of("src", "Example.JAVA")));
+        assertEquals("", AdocTokenEstimator.extensionOf(Path.of(".gitignore")));
+        assertEquals("", AdocTokenEstimator.extensionOf(Path.of("Makefile")));
+        assertTrue(estimator.report().isEmpty(), "Nothing to report without samples");
+    }
+
+    @Test
+    void testCalibrationBoundsError() {
+        AdocTokenEstimator estimator = new AdocTokenEstimator();
+        for (int n = 1; n <= 5; n++) {
+            String chunk = javaChunk(n);
+            estimator.observe(".java", chunk, exactTokens(chunk));
+        }
+        String unseen = javaChunk(7);
+        long exact = exactTokens(unseen);
+        assertEquals(exact, estimator.estimate(".java", unseen), exact * 0.1,
+                "The calibrated estimate should be close to the exact count");
+        assertEquals(exact, estimator.estimate(".java", unseen.length()), exact * 0.1,
+                "The calibrated size estimate should be close to the exact count");
+
+        List<String> report = estimator.report();
+        assertEquals(1, report.size());
+        assertContains(".java: ", report.get(0), "The report should name the extension");
+        assertContains("(5 samples)", report.get(0), "The report should count the samples");
+    }
+
+    @Test
+    void testReportMeasuresSizeEstimate() {
+        AdocTokenEstimator estimator = new AdocTokenEstimator();
+        estimator.observe(".txt", "aaaa", 1);
+        estimator.observe(".txt", "bbbbbbbb", 6);
+        // uncalibrated, 4 bytes are estimated as 1 token and 8 bytes as 2
+        assertContains("size error mean 33.3% max 66.7%", estimator.report().get(0),
+                "The error of the size estimate used for decisions should be reported");
+    }
+
+    @Test
+    void testReportMeasuresLoadedCalibration() throws IOException {
+        Path calibration = Files.writeString(tempDir.resolve("calibration.properties"), ".txt=4,4,1\n");
+        AdocTokenEstimator estimator = new AdocTokenEstimator();
+        estimator.load(calibration);
+        estimator.observe(".txt", "a".repeat(100), 50);
+        estimator.observe(".txt", "a".repeat(200), 100);
+
+        // refitted to the samples the estimates would be exact, but the run started at 0.25 tokens/byte
+        assertEquals(100, estimator.estimate(".txt", 200));
+        assertContains("size error mean 50.0% max 50.0%", estimator.report().get(0),
+                "The error of the loaded calibration should be reported");
+    }
+
+    @Test
+    void testSaveLoadAndFilter() throws IOException {
+        AdocTokenEstimator estimator = new AdocTokenEstimator();
+        String chunk = javaChunk(3);
+        estimator.observe(".java", chunk, exactTokens(chunk));
+        Path calibration = tempDir.resolve("calibration.properties");
+        estimator.save(calibration);
+
+        AdocTokenEstimator loaded = new AdocTokenEstimator();
+        loaded.load(calibration);
+        assertEquals(estimator.estimate(".java", 10_000), loaded.estimate(".java", 10_000));
+        assertTrue(loaded.report().isEmpty(), "Loaded calibration has no samples from this run");
+
+        Path file = tempDir.resolve("Large.txt");
+        Files.writeString(file, "word ".repeat(800));
+        AdocFileFilter filter = new AdocFileFilter(null, 128 << 10, false);
+        filter.setMaxFileTokens(2000, loaded);
+        assertTrue(filter.include(file), "About 1000 estimated tokens is under the limit");
+        filter.setMaxFileTokens(500, loaded);
+        assertFalse(filter.include(file), "About 1000 estimated tokens is over the limit");
+    }
+}
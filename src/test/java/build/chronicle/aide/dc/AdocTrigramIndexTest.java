@@ -0,0 +1,97 @@
+package build.chronicle.aide.dc;
+
+import build.chronicle.aide.util.LocalTempDirFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static build.chronicle.aide.util.TestUtil.assertContains;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdocTrigramIndexTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    @Test
+    void testRequiredLiterals() {
+        assertEquals(List.of("AdocDocumentEngine"), AdocTrigramIndex.Query.requiredLiterals("AdocDocumentEngine"));
+        assertEquals(List.of("count++"), AdocTrigramIndex.Query.requiredLiterals("count\\+\\+"));
+        assertEquals(List.of("foo", "bar"), AdocTrigramIndex.Query.requiredLiterals("foo.*bar"));
+        assertEquals(List.of("colo", "mapper"), AdocTrigramIndex.Query.requiredLiterals("colou?r\\s+mapper"));
+        assertEquals(List.of("item", "List"), AdocTrigramIndex.Query.requiredLiterals("item[0-9]+List"));
+        assertEquals(List.of(), AdocTrigramIndex.Query.requiredLiterals("foo|bar"));
+        assertEquals(List.of(), AdocTrigramIndex.Query.requiredLiterals("(foo)?bar"));
+        assertEquals(List.of(), AdocTrigramIndex.Query.requiredLiterals("\\x41BCD"));
+        assertNull(AdocTrigramIndex.Query.forPatterns(List.of("Engine", "a.b")), "Any pattern without trigrams needs a full scan");
+    }
+
+    @Test
+    void testSkipsOnlyFilesThatCannotMatch() throws IOException {
+        AdocTrigramIndex index = new AdocTrigramIndex(new HashMap<>());
+        Path file = tempDir.resolve("Example.java");
+        List<String> lines = List.of("class Example {", "    private int counter;", "}");
+        Files.write(file, lines);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        index.update(file, attrs, Files.readAllBytes(file), lines);
+
+        assertTrue(index.mayMatch(file, attrs, AdocTrigramIndex.Query.forPatterns(List.of("COUNTER"))));
+        assertTrue(index.mayMatch(file, attrs, AdocTrigramIndex.Query.forPatterns(List.of("missing", "int count"))));
+        assertFalse(index.mayMatch(file, attrs, AdocTrigramIndex.Query.forPatterns(List.of("missing"))));
+
+        Files.write(file, "class Missing {}\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(attrs.lastModifiedTime().toMillis() + 2000));
+        BasicFileAttributes changed = Files.readAttributes(file, BasicFileAttributes.class);
+        assertTrue(index.mayMatch(file, changed, AdocTrigramIndex.Query.forPatterns(List.of("missing"))),
+                "A changed file must be read again");
+        assertEquals(1, index.getSkipped());
+        assertEquals(3, index.getCandidates());
+    }
+
+    @Test
+    void testEngineSkipsIndexedFilesWithSameOutput() throws IOException {
+        Path source = Files.createDirectory(tempDir.resolve("source"));
+        for (int i = 0; i < 10; i++) {
+            Files.write(source.resolve("File" + i + ".java"), List.of(
+                    "class File" + i + " {",
+                    i == 3 ? "    int needle;" : "    int hay;",
+                    "}"));
+        }
+        Map<CharSequence, byte[]> entries = new HashMap<>();
+        String unindexed = search(source, "plain", null);
+        String first = search(source, "first", new AdocTrigramIndex(entries));
+        String second = search(source, "second", new AdocTrigramIndex(entries));
+
+        assertContains("Trigram index: skipped 0 of 10 files", first, "The first search reads every file");
+        assertContains("Trigram index: skipped 9 of 10 files", second, "Indexed files without the trigrams are skipped");
+        assertContains("int needle;", second, "The matching file is still found");
+        assertEquals(unindexed, second.replace("Trigram index: skipped 9 of 10 files\n", ""));
+    }
+
+    private String search(Path source, String name, AdocTrigramIndex index) throws IOException {
+        AdocDocumentStats stats = new AdocDocumentStats();
+        AdocDocumentEngine engine = new AdocDocumentEngine(
+                new AdocFileFilter(null, 128 << 10, false), new AdocDocumentWriter(stats), stats);
+        Path contextFile = tempDir.resolve(name + ".asciidoc");
+        engine.setContextAsciidoc(contextFile.toString());
+        engine.setSearchPattern("needle", 1);
+        engine.setTrigramIndex(index);
+        engine.addInputPath(source.toString());
+        try {
+            engine.execute();
+            engine.printSummary();
+        } finally {
+            engine.close();
+        }
+        return Files.readString(contextFile);
+    }
+}
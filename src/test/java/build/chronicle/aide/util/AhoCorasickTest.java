@@ -0,0 +1,73 @@
+package build.chronicle.aide.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AhoCorasickTest {
+
+    @Test
+    void testCountsNestedLiterals() {
+        AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "his", "hers"));
+        int[] hits = new int[4];
+
+        assertTrue(automaton.scan("ushers and HIS sheep", hits));
+        // "ushers": she, he, hers; "HIS": his; "sheep": she, he
+        assertArrayEquals(new int[]{2, 2, 1, 1}, hits);
+        assertFalse(automaton.scan("nothing to see", null));
+    }
+
+    @Test
+    void testMatchesNonAsciiCharacters() {
+        AhoCorasick automaton = new AhoCorasick(List.of("été", "télé"));
+        int[] hits = new int[2];
+
+        assertTrue(automaton.scan("un été sans téléphone", hits));
+        assertArrayEquals(new int[]{1, 1}, hits);
+        // only ASCII letters are case-insensitive, as with Pattern.CASE_INSENSITIVE
+        assertFalse(automaton.scan("ÉTÉ", null));
+    }
+
+    @Test
+    void testAgreesWithRegularExpressions() {
+        List<String> literals = List.of("ab", "bab", "abba", "b", "aab", "baa");
+        AhoCorasick automaton = new AhoCorasick(literals);
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                text.append("abAB".charAt(random.nextInt(4)));
+            }
+            int[] hits = new int[literals.size()];
+            automaton.scan(text, hits);
+            for (int i = 0; i < literals.size(); i++) {
+                // successive finds do not overlap
+                Matcher matcher = Pattern.compile(literals.get(i), Pattern.CASE_INSENSITIVE).matcher(text);
+                int expected = 0;
+                while (matcher.find()) {
+                    expected++;
+                }
+                assertEquals(expected, hits[i], literals.get(i) + " in " + text);
+            }
+        }
+    }
+
+    @Test
+    void testDoesNotCountOverlappingOccurrences() {
+        AhoCorasick automaton = new AhoCorasick(List.of("aa", "aba", "a"));
+        int[] hits = new int[3];
+
+        assertTrue(automaton.scan("aaaaa ababa", hits));
+        assertArrayEquals(new int[]{2, 1, 8}, hits);
+    }
+
+    @Test
+    void testRejectsEmptyLiteral() {
+        assertThrows(IllegalArgumentException.class, () -> new AhoCorasick(List.of("a", "")));
+    }
+}
@@ -0,0 +1,70 @@
+package build.chronicle.aide.util;
+
+import build.chronicle.aide.util.GitignoreFilter.MatchResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GitignoreHierarchyTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    private Path root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = tempDir.toAbsolutePath();
+        Files.createDirectories(root.resolve(".git/info"));
+        Files.createDirectories(root.resolve("module/src"));
+        Files.createDirectories(root.resolve("module/generated/deep"));
+        Files.write(root.resolve(".gitignore"), List.of("*.log", "build/"));
+        Files.write(root.resolve("module/.gitignore"), List.of("generated/", "!keep.log"));
+        Files.write(root.resolve("module/aide.ignore"), List.of("*.tmp"));
+        Files.write(root.resolve(".git/info/exclude"), List.of("local.txt"));
+    }
+
+    @Test
+    void testNestedRules() throws IOException {
+        GitignoreHierarchy rules = new GitignoreHierarchy(root, null);
+
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("app.log"), false));
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("module/src/app.log"), false),
+                "Rules apply in subdirectories");
+        assertEquals(MatchResult.NOT_IGNORED, rules.isExcluded(root.resolve("module/keep.log"), false),
+                "A deeper rule overrides the root rules");
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("module/src/Main.tmp"), false),
+                "aide.ignore in a subdirectory applies");
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("module/generated/deep/Gen.java"), false),
+                "Files in an ignored directory are ignored");
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("module/local.txt"), false),
+                ".git/info/exclude applies");
+        assertEquals(MatchResult.DEFAULT, rules.isExcluded(root.resolve("module/src/Main.java"), false));
+        assertEquals(MatchResult.DEFAULT, rules.isExcluded(root.resolve("Main.tmp"), false),
+                "Rules do not apply above their directory");
+    }
+
+    @Test
+    void testGlobalExcludesAndParsedOnce() throws IOException {
+        Path global = root.resolve("global-ignore");
+        Files.write(global, List.of("*.bak", "local.txt"));
+        Files.write(root.resolve("module/.gitignore"), List.of("!local.txt"));
+        GitignoreHierarchy rules = new GitignoreHierarchy(root, global);
+
+        assertEquals(MatchResult.IGNORED, rules.isExcluded(root.resolve("module/src/Old.bak"), false));
+        assertEquals(MatchResult.NOT_IGNORED, rules.isExcluded(root.resolve("module/local.txt"), false),
+                "Ignore files in the tree take precedence over the excludes files");
+        int parsed = rules.getParsedFiles();
+        for (int i = 0; i < 100; i++) {
+            rules.isExcluded(root.resolve("module/src/File" + i + ".java"), false);
+        }
+        assertEquals(parsed, rules.getParsedFiles(), "Each ignore file is parsed once");
+    }
+}
@@ -0,0 +1,65 @@
+package build.chronicle.aide.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8ValidatorTest {
+
+    @TempDir(factory = LocalTempDirFactory.class)
+    Path tempDir;
+
+    private static boolean isText(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return Utf8Validator.isText(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void testValidText() {
+        byte[] text = "class Example {\n\tString s = \"café € 😀\";\r\n}\n".getBytes(StandardCharsets.UTF_8);
+        assertTrue(Utf8Validator.isText(text, 0, text.length));
+        assertTrue(isText());
+        assertTrue(isText(0xF4, 0x8F, 0xBF, 0xBF), "U+10FFFF is the last code point");
+    }
+
+    @Test
+    void testInvalidSequences() {
+        assertFalse(isText('a', 0x00, 'b'), "NUL is binary");
+        assertFalse(isText('a', 'b', 'c', 'd', 'e', 'f', 'g', 0x01), "A control character in an ASCII word");
+        assertFalse(isText(0xC0, 0xAF), "Overlong two byte form");
+        assertFalse(isText(0xE0, 0x80, 0xAF), "Overlong three byte form");
+        assertFalse(isText(0xED, 0xA0, 0x80), "Surrogate");
+        assertFalse(isText(0xF4, 0x90, 0x80, 0x80), "Above U+10FFFF");
+        assertFalse(isText(0x80), "Unexpected continuation byte");
+        assertFalse(isText(0xE2, 0x82, 'a'), "Missing continuation byte");
+        assertFalse(isText(0xE2, 0x82), "Truncated sequence");
+        assertEquals(2, Utf8Validator.validate(new byte[]{'a', (byte) 0xE2, (byte) 0x82}, 0, 3),
+                "A truncated sequence is reported as incomplete");
+    }
+
+    @Test
+    void testFileWithSequenceAcrossChunks() throws IOException {
+        // the euro sign straddles the 64 KiB chunk boundary
+        byte[] content = new byte[(64 << 10) + 2];
+        Arrays.fill(content, (byte) 'x');
+        content[(64 << 10) - 1] = (byte) 0xE2;
+        content[64 << 10] = (byte) 0x82;
+        content[(64 << 10) + 1] = (byte) 0xAC;
+        Path file = Files.write(tempDir.resolve("large.txt"), content);
+        assertTrue(Utf8Validator.isText(file));
+
+        content[(64 << 10) + 1] = 'x';
+        Files.write(file, content);
+        assertFalse(Utf8Validator.isText(file));
+    }
+}